@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link SpeedCalculator} counted by the block threads and read by the callbacks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpeedCalculatorBenchmark {
+
+    private SpeedCalculator calculator;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        calculator = new SpeedCalculator();
+    }
+
+    @Benchmark
+    public void downloading() {
+        calculator.downloading(4096);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void downloadingFromBlocks() {
+        calculator.downloading(4096);
+    }
+
+    @Benchmark
+    public long getBytesPerSecondAndFlush() {
+        calculator.downloading(4096);
+        return calculator.getBytesPerSecondAndFlush();
+    }
+
+    @Benchmark
+    public long getEtaMillis() {
+        calculator.downloading(4096);
+        return calculator.getEtaMillis(1L << 30);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download;
+
+import android.support.annotation.NonNull;
+
+import com.download.benchmark.BenchmarkOkDownload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fan-out of the progress from the host listener of the {@link UnifiedListenerManager} to
+ * the {@link #listenerCount} listeners attached to the task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UnifiedListenerManagerBenchmark {
+
+    @Param({"1", "8", "64"})
+    int listenerCount;
+
+    private UnifiedListenerManager manager;
+    private DownloadListener hostListener;
+    private DownloadTask task;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkOkDownload.install();
+
+        manager = new UnifiedListenerManager();
+        task = BenchmarkOkDownload.createTask("unified.example.com", listenerCount);
+        for (int i = 0; i < listenerCount; i++) {
+            manager.attachListener(task, new ProgressListener());
+        }
+        // the other tasks with the listeners attached.
+        for (int i = 0; i < 100; i++) {
+            manager.attachListener(BenchmarkOkDownload.createTask("other.example.com", i),
+                    new ProgressListener());
+        }
+        hostListener = manager.getHostListener();
+    }
+
+    @Benchmark
+    public void fetchProgress() {
+        hostListener.fetchProgress(task, 0, 4096);
+    }
+
+    /**
+     * The progress of the blocks are callback from the block threads at the same time.
+     */
+    @Benchmark
+    @Threads(4)
+    public void fetchProgressFromBlocks() {
+        hostListener.fetchProgress(task, 0, 4096);
+    }
+
+    static class ProgressListener extends BenchmarkOkDownload.EmptyListener {
+        volatile long increaseBytes;
+
+        @Override
+        public void fetchProgress(@NonNull DownloadTask task, int blockIndex, long increaseBytes) {
+            this.increaseBytes = increaseBytes;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.benchmark;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.OkDownload;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+import com.download.core.cause.EndCause;
+import com.download.core.connection.DownloadConnection;
+import com.download.core.file.DownloadOutputStream;
+import com.download.core.listener.DownloadListener2;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * The {@link OkDownload} for the benchmarks, the breakpoints are only on the memory, there isn't
+ * any network and the data written is discarded, so only the cost of the download core itself is
+ * measured.
+ */
+public class BenchmarkOkDownload {
+
+    private static File parentFile;
+    private static BreakpointStoreOnCache store;
+
+    private BenchmarkOkDownload() {
+    }
+
+    /**
+     * Install the {@link OkDownload} for the benchmarks once for the forked JVM.
+     */
+    public static synchronized void install() {
+        if (parentFile != null) return;
+
+        parentFile = new File(System.getProperty("java.io.tmpdir"), "okdownload-benchmark");
+        if (!parentFile.exists() && !parentFile.mkdirs()) {
+            throw new IllegalStateException("Create " + parentFile + " failed!");
+        }
+
+        store = new BreakpointStoreOnCache();
+        final OkDownload okDownload = new OkDownload.Builder(new Context(parentFile))
+                .downloadStore(store)
+                .connectionFactory(new NoNetworkConnectionFactory())
+                .outputStreamFactory(new DiscardOutputStream.Factory())
+                .build();
+        OkDownload.setSingletonInstance(okDownload);
+    }
+
+    @NonNull public static File parentFile() {
+        install();
+        return parentFile;
+    }
+
+    @NonNull public static BreakpointStoreOnCache store() {
+        install();
+        return store;
+    }
+
+    /**
+     * Create the builder of the task to the {@code host}, it's distinct by the {@code index}.
+     */
+    @NonNull public static DownloadTask.Builder taskBuilder(@NonNull String host, int index) {
+        return new DownloadTask.Builder("https://" + host + "/file/" + index, parentFile())
+                .setFilename("file-" + index);
+    }
+
+    @NonNull public static DownloadTask createTask(@NonNull String host, int index) {
+        return taskBuilder(host, index).build();
+    }
+
+    static class NoNetworkConnectionFactory implements DownloadConnection.Factory {
+        @Override
+        public DownloadConnection create(String url) throws IOException {
+            throw new IOException("There isn't any network on the benchmark: " + url);
+        }
+    }
+
+    static class DiscardOutputStream implements DownloadOutputStream {
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void flushAndSync() {
+        }
+
+        @Override
+        public void seek(long offset) {
+        }
+
+        @Override
+        public void setLength(long newLength) {
+        }
+
+        static class Factory implements DownloadOutputStream.Factory {
+            @Override
+            public DownloadOutputStream create(Context context, File file, int flushBufferSize)
+                    throws FileNotFoundException {
+                return new DiscardOutputStream();
+            }
+
+            @Override
+            public DownloadOutputStream create(Context context, Uri uri, int flushBufferSize)
+                    throws FileNotFoundException {
+                return new DiscardOutputStream();
+            }
+
+            @Override
+            public boolean supportSeek() {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The listener which ignores all callbacks.
+     */
+    public static class EmptyListener extends DownloadListener2 {
+        @Override
+        public void taskStart(@NonNull DownloadTask task) {
+        }
+
+        @Override
+        public void taskEnd(@NonNull DownloadTask task, @NonNull EndCause cause,
+                            @Nullable Exception realCause) {
+        }
+    }
+}
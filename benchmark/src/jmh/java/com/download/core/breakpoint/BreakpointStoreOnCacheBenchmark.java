@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.breakpoint;
+
+import com.download.DownloadTask;
+import com.download.benchmark.BenchmarkOkDownload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link BreakpointStoreOnCache#findOrCreateId(DownloadTask)} on the store which has known
+ * {@link #storedCount} tasks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BreakpointStoreOnCacheBenchmark {
+
+    private static final String SAME_URL = "https://same.example.com/file";
+    private static final int SAME_URL_KNOWN_COUNT = 100;
+
+    @Param({"100", "10000"})
+    int storedCount;
+
+    private BreakpointStoreOnCache store;
+    private DownloadTask[] knownTasks;
+    private int knownIndex;
+    private DownloadTask sameUrlTask;
+    private DownloadTask newTask;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // the tasks are known by the store once they are created.
+        store = BenchmarkOkDownload.store();
+
+        knownTasks = new DownloadTask[storedCount];
+        for (int i = 0; i < storedCount; i++) {
+            knownTasks[i] = BenchmarkOkDownload.createTask("host" + (i % 20) + ".example.com", i);
+            // half of them have the breakpoint, the others haven't been started.
+            if (i % 2 == 0) store.createAndInsert(knownTasks[i]);
+        }
+
+        // the tasks to the same url but to the different files.
+        for (int i = 0; i < SAME_URL_KNOWN_COUNT; i++) {
+            final DownloadTask task = new DownloadTask.Builder(SAME_URL,
+                    BenchmarkOkDownload.parentFile()).setFilename("same-" + i).build();
+            if (i % 2 == 0) store.createAndInsert(task);
+        }
+        sameUrlTask = new DownloadTask.Builder(SAME_URL, BenchmarkOkDownload.parentFile())
+                .setFilename("same-" + SAME_URL_KNOWN_COUNT).build();
+        // its key is forgotten, but it's still known as the task not started.
+        store.remove(sameUrlTask.getId());
+
+        // created at last, so its id is the lowest free one after it's removed.
+        newTask = BenchmarkOkDownload.createTask("new.example.com", 0);
+        store.createAndInsert(newTask);
+        store.remove(newTask.getId());
+    }
+
+    @Benchmark
+    public int findKnown() {
+        final DownloadTask task = knownTasks[knownIndex];
+        knownIndex = (knownIndex + 1) % knownTasks.length;
+        return store.findOrCreateId(task);
+    }
+
+    /**
+     * The task is found after comparing with all tasks known to the same url.
+     */
+    @Benchmark
+    public int findSameUrl() {
+        return store.findOrCreateId(sameUrlTask);
+    }
+
+    /**
+     * The id of the new task is created, then it's started and removed, so the same id is created
+     * for it next time.
+     */
+    @Benchmark
+    public int createInsertAndRemove() {
+        final int id = store.findOrCreateId(newTask);
+        store.createAndInsert(newTask);
+        store.remove(id);
+        return id;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.dispatcher;
+
+import com.download.DownloadTask;
+import com.download.benchmark.BenchmarkOkDownload;
+import com.download.core.IdentifiedTask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue the tasks to the {@link DownloadDispatcher} and cancel all of them, none of them is
+ * run, so only the cost of the ready queue and the index of the calls is measured.
+ * <p>
+ * The cancel by id, the same task queries and the conflicted enqueue scanned all calls on the
+ * queues before the {@link CallIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadDispatcherBenchmark {
+
+    private static final int HOST_COUNT = 20;
+
+    @Param({"10000"})
+    int taskCount;
+
+    private DownloadDispatcher dispatcher;
+    private DownloadTask[] tasks;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkOkDownload.install();
+
+        dispatcher = new DownloadDispatcher();
+        dispatcher.setDownloadStore(BenchmarkOkDownload.store());
+        // all tasks are kept on the ready queue.
+        dispatcher.maxParallelRunningCount = 0;
+
+        final BenchmarkOkDownload.EmptyListener listener = new BenchmarkOkDownload.EmptyListener();
+        tasks = new DownloadTask[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            tasks[i] = BenchmarkOkDownload.taskBuilder("host" + (i % HOST_COUNT) + ".example.com",
+                    i).setPriority(i % 10).build();
+            tasks[i].replaceListener(listener);
+        }
+    }
+
+    @Benchmark
+    public void enqueueAndCancelBunch() {
+        dispatcher.enqueue(tasks);
+        dispatcher.cancel((IdentifiedTask[]) tasks);
+    }
+
+    @Benchmark
+    public void enqueueAndCancelOneByOne() {
+        for (DownloadTask task : tasks) dispatcher.enqueue(task);
+        for (DownloadTask task : tasks) dispatcher.cancel(task);
+    }
+
+    @Benchmark
+    public void enqueueAndCancelById() {
+        dispatcher.enqueue(tasks);
+        for (DownloadTask task : tasks) dispatcher.cancel(task.getId());
+    }
+
+    // the queries behind StatusUtil#isSameTaskPendingOrRunning.
+    @Benchmark
+    public int enqueueFindSameTaskAndCancel() {
+        dispatcher.enqueue(tasks);
+        int found = 0;
+        for (DownloadTask task : tasks) {
+            if (dispatcher.findSameTask(task) != null) found++;
+        }
+        dispatcher.cancel((IdentifiedTask[]) tasks);
+        return found;
+    }
+
+    // all tasks enqueued again are dropped as the same task busy.
+    @Benchmark
+    public void enqueueConflictAndCancel() {
+        dispatcher.enqueue(tasks);
+        dispatcher.enqueue(tasks);
+        dispatcher.cancel((IdentifiedTask[]) tasks);
+    }
+}
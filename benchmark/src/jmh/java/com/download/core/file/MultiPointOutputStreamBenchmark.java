@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.file;
+
+import com.download.DownloadTask;
+import com.download.benchmark.BenchmarkOkDownload;
+import com.download.core.Util;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link MultiPointOutputStream#write(int, byte[], int, int)} of the blocks writing
+ * concurrently, each operation writes {@link #WRITES_PER_OPERATION} buffers split to the blocks,
+ * so the more operations per second the better the blocks are scaled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MultiPointOutputStreamBenchmark {
+
+    private static final int WRITES_PER_OPERATION = 4096;
+    private static final int BUFFER_SIZE = 8192;
+
+    @Param({"1", "2", "4", "8", "16"})
+    int blockCount;
+
+    private MultiPointOutputStream outputStream;
+    private ExecutorService blockThreads;
+    private List<Callable<Void>> blockWrites;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkOkDownload.install();
+        // the file isn't written actually, so never allocate its length.
+        final DownloadTask task = BenchmarkOkDownload.taskBuilder("write.example.com", blockCount)
+                .setPreAllocateLength(false)
+                .build();
+        final BreakpointStoreOnCache store = BenchmarkOkDownload.store();
+        final BreakpointInfo info = store.createAndInsert(task);
+        final List<Integer> blockIndexes = new ArrayList<>();
+        for (int i = 0; i < blockCount; i++) {
+            // large enough to be never completed.
+            info.addBlock(new BlockInfo((long) i << 40, 1L << 40));
+            blockIndexes.add(i);
+        }
+
+        outputStream = new MultiPointOutputStream(task, info, store);
+        outputStream.setRequireStreamBlocks(blockIndexes);
+
+        blockThreads = Executors.newFixedThreadPool(blockCount,
+                Util.threadFactory("OkDownload Block", true));
+        blockWrites = new ArrayList<>(blockCount);
+        final int writesPerBlock = WRITES_PER_OPERATION / blockCount;
+        for (int i = 0; i < blockCount; i++) {
+            final int blockIndex = i;
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            blockWrites.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < writesPerBlock; j++) {
+                        outputStream.write(blockIndex, buffer, 0, BUFFER_SIZE);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outputStream.cancel();
+        blockThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        for (Future<Void> future : blockThreads.invokeAll(blockWrites)) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.load;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.OkDownload;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+import com.download.core.breakpoint.DownloadStore;
+import com.download.core.cause.EndCause;
+import com.download.core.connection.SharedOkHttp3ConnectionFactory;
+import com.download.core.dispatcher.DownloadDispatcher;
+import com.download.core.listener.DownloadListener2;
+import com.download.core.metrics.DownloadMetrics;
+import com.download.core.metrics.Histogram;
+import com.download.db.BreakpointStoreOnJournal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The load test which downloads thousands of tasks with {@link OkDownload} from the
+ * {@link ScriptedServer} on the localhost, so the trial, the remote check of the breakpoint, the
+ * retry and the multi-block path are exercised with the faults scripted, without any external
+ * network.
+ * <p>
+ * The task ended with the error is enqueued again to resume from its breakpoint as the app does,
+ * and all downloaded files are verified with the content of the resources at last. It exits with
+ * {@code 1} if any task is failed or any file is corrupted.
+ * <p>
+ * The arguments are {@code key=value}, such as {@code tasks=2000 resetRate=0.1}, see
+ * {@link Options} for all of them.
+ */
+public class LoadHarness {
+
+    private static final int KB = 1024;
+    private static final int MB = 1024 * 1024;
+
+    static class Options {
+        int tasks = 1000;
+        // the count of the tasks running at the same time.
+        int concurrency = 16;
+        // the count of the blocks of each task, 0 to be determined by the strategy.
+        int blocks = 3;
+        long minSize = 64 * KB;
+        long maxSize = 2 * MB;
+        int maxAttempts = 5;
+        long retryDelayMillis = 100;
+        long timeoutSeconds = 600;
+        // journal or memory.
+        String store = "journal";
+        @Nullable String dir;
+        final ScriptedServer.Config server = new ScriptedServer.Config();
+
+        static Options parse(String[] args) {
+            final Options options = new Options();
+            for (String arg : args) {
+                final int equal = arg.indexOf('=');
+                if (equal <= 0) throw new IllegalArgumentException("Not key=value: " + arg);
+                options.set(arg.substring(0, equal), arg.substring(equal + 1));
+            }
+            return options;
+        }
+
+        private void set(String key, String value) {
+            switch (key) {
+                case "tasks": tasks = Integer.parseInt(value); break;
+                case "concurrency": concurrency = Integer.parseInt(value); break;
+                case "blocks": blocks = Integer.parseInt(value); break;
+                case "minSize": minSize = parseSize(value); break;
+                case "maxSize": maxSize = parseSize(value); break;
+                case "maxAttempts": maxAttempts = Integer.parseInt(value); break;
+                case "retryDelayMillis": retryDelayMillis = Long.parseLong(value); break;
+                case "timeoutSeconds": timeoutSeconds = Long.parseLong(value); break;
+                case "store": store = value; break;
+                case "dir": dir = value; break;
+                case "seed": server.seed = Long.parseLong(value); break;
+                case "rangeSupport": server.rangeSupport = Boolean.parseBoolean(value); break;
+                case "bandwidth": server.bandwidthPerConnection = parseSize(value); break;
+                case "latencyMillis": server.latencyMillis = Long.parseLong(value); break;
+                case "jitterMillis": server.latencyJitterMillis = Long.parseLong(value); break;
+                case "resetRate": server.resetRate = Double.parseDouble(value); break;
+                case "maxResets": server.maxResetsPerResource = Integer.parseInt(value); break;
+                case "etagChangeRate": server.etagChangeRate = Double.parseDouble(value); break;
+                case "redirectRate": server.redirectRate = Double.parseDouble(value); break;
+                case "chunkedRate": server.chunkedRate = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+
+        // such as 512, 64k or 2m.
+        static long parseSize(String value) {
+            final String lower = value.toLowerCase(Locale.ENGLISH);
+            final String number = lower.substring(0, lower.length() - 1);
+            if (lower.endsWith("k")) return Long.parseLong(number) * KB;
+            if (lower.endsWith("m")) return Long.parseLong(number) * MB;
+            return Long.parseLong(lower);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = Options.parse(args);
+        final Report report = new LoadHarness(options).run();
+        System.out.println(report);
+        System.exit(report.isPassed() ? 0 : 1);
+    }
+
+    @NonNull private final Options options;
+
+    LoadHarness(@NonNull Options options) {
+        this.options = options;
+    }
+
+    @NonNull Report run() throws Exception {
+        final File dir = options.dir != null ? new File(options.dir)
+                : new File(System.getProperty("java.io.tmpdir"),
+                "okdownload-load-" + System.currentTimeMillis());
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Create " + dir + " failed!");
+
+        final ScriptedServer.Resource[] resources = createResources();
+        final ScriptedServer server = new ScriptedServer(options.server, resources);
+        server.start();
+
+        final DownloadMetrics metrics = new DownloadMetrics();
+        final DownloadStore store = "memory".equals(options.store)
+                ? new BreakpointStoreOnCache()
+                : new BreakpointStoreOnJournal(new File(dir, "breakpoint.journal"));
+        OkDownload.setSingletonInstance(new OkDownload.Builder(new Context(dir))
+                .downloadStore(store)
+                .connectionFactory(new SharedOkHttp3ConnectionFactory())
+                .metrics(metrics)
+                .build());
+        DownloadDispatcher.setMaxParallelRunningCount(options.concurrency);
+        DownloadDispatcher.setMaxParallelRunningCountPerHost(options.concurrency);
+
+        final DownloadTask[] tasks = new DownloadTask[resources.length];
+        for (int i = 0; i < resources.length; i++) {
+            final DownloadTask.Builder builder = new DownloadTask.Builder(
+                    server.urlOf(resources[i]), dir)
+                    .setFilename("task-" + i)
+                    .setPassIfAlreadyCompleted(false);
+            if (options.blocks > 0) builder.setConnectionCount(options.blocks);
+            tasks[i] = builder.build();
+            tasks[i].setTag(i);
+        }
+
+        final LoadListener listener = new LoadListener(resources.length);
+        final long startNanos = System.nanoTime();
+        DownloadTask.enqueue(tasks, listener);
+        final boolean finished = listener.finishedLatch.await(options.timeoutSeconds,
+                TimeUnit.SECONDS);
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        if (!finished) OkDownload.with().downloadDispatcher().cancelAll();
+
+        final Report report = new Report(options, elapsedNanos, finished);
+        for (int i = 0; i < resources.length; i++) {
+            report.add(resources[i], tasks[i], listener.results[i]);
+        }
+        report.serverStats = server.stats.toString();
+        report.metrics = metrics.snapshot().toString();
+
+        listener.retryScheduler.shutdownNow();
+        server.shutdown();
+        return report;
+    }
+
+    @NonNull private ScriptedServer.Resource[] createResources() {
+        final ScriptedServer.Config config = options.server;
+        final Random random = new Random(config.seed);
+        final ScriptedServer.Resource[] resources = new ScriptedServer.Resource[options.tasks];
+        for (int i = 0; i < resources.length; i++) {
+            final long length = options.minSize
+                    + (long) (random.nextDouble() * (options.maxSize - options.minSize + 1));
+            final boolean chunked = random.nextDouble() < config.chunkedRate;
+            final boolean redirected = random.nextDouble() < config.redirectRate;
+            resources[i] = new ScriptedServer.Resource(i, length, chunked, redirected);
+        }
+        return resources;
+    }
+
+    static class TaskResult {
+        long enqueueNanos;
+        long startNanos;
+        long activeNanos;
+        long completedNanos;
+        int failedAttempts;
+        @Nullable EndCause endCause;
+        @Nullable Exception realCause;
+    }
+
+    class LoadListener extends DownloadListener2 {
+        final TaskResult[] results;
+        final CountDownLatch finishedLatch;
+        final ScheduledExecutorService retryScheduler =
+                Executors.newSingleThreadScheduledExecutor();
+
+        LoadListener(int taskCount) {
+            results = new TaskResult[taskCount];
+            final long nowNanos = System.nanoTime();
+            for (int i = 0; i < taskCount; i++) {
+                results[i] = new TaskResult();
+                results[i].enqueueNanos = nowNanos;
+            }
+            finishedLatch = new CountDownLatch(taskCount);
+        }
+
+        @Override
+        public void taskStart(@NonNull DownloadTask task) {
+            results[(Integer) task.getTag()].startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void taskEnd(@NonNull final DownloadTask task, @NonNull EndCause cause,
+                            @Nullable Exception realCause) {
+            final TaskResult result = results[(Integer) task.getTag()];
+            final long nowNanos = System.nanoTime();
+            if (result.startNanos != 0) result.activeNanos += nowNanos - result.startNanos;
+            result.startNanos = 0;
+
+            // the last run of the task may be still finishing on the dispatcher.
+            if (cause == EndCause.SAME_TASK_BUSY) {
+                scheduleRetry(task);
+                return;
+            }
+
+            if (cause == EndCause.ERROR && ++result.failedAttempts < options.maxAttempts) {
+                scheduleRetry(task);
+                return;
+            }
+
+            result.endCause = cause;
+            result.realCause = realCause;
+            if (cause == EndCause.COMPLETED) result.completedNanos = nowNanos - result.enqueueNanos;
+            finishedLatch.countDown();
+        }
+
+        private void scheduleRetry(@NonNull final DownloadTask task) {
+            final LoadListener listener = this;
+            retryScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    task.enqueue(listener);
+                }
+            }, options.retryDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static class Report {
+        @NonNull private final Options options;
+        private final long elapsedNanos;
+        private final boolean finished;
+
+        private final Histogram completionMillis = new Histogram();
+        private final Histogram activeMillis = new Histogram();
+        private int completed;
+        private int failed;
+        private int unfinished;
+        private int resumed;
+        private int resumedCorrect;
+        private long completedBytes;
+        private final List<String> corrupted = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+        String serverStats;
+        String metrics;
+
+        Report(@NonNull Options options, long elapsedNanos, boolean finished) {
+            this.options = options;
+            this.elapsedNanos = elapsedNanos;
+            this.finished = finished;
+        }
+
+        void add(@NonNull ScriptedServer.Resource resource, @NonNull DownloadTask task,
+                 @NonNull TaskResult result) throws IOException {
+            if (result.endCause == null) {
+                unfinished++;
+                return;
+            }
+            if (result.endCause != EndCause.COMPLETED) {
+                failed++;
+                failures.add("task-" + resource.id + " " + result.endCause + " "
+                        + result.realCause);
+                return;
+            }
+
+            completed++;
+            completedBytes += resource.length;
+            completionMillis.record(TimeUnit.NANOSECONDS.toMillis(result.completedNanos));
+            activeMillis.record(TimeUnit.NANOSECONDS.toMillis(result.activeNanos));
+
+            final String mismatch = verify(resource, task.getFile());
+            if (mismatch != null) {
+                corrupted.add("task-" + resource.id + " " + mismatch + " version["
+                        + resource.version + "] failed-attempts[" + result.failedAttempts + "]");
+            }
+            if (result.failedAttempts > 0) {
+                resumed++;
+                if (mismatch == null) resumedCorrect++;
+            }
+        }
+
+        boolean isPassed() {
+            return finished && failed == 0 && unfinished == 0 && corrupted.isEmpty();
+        }
+
+        // compare the file with the current content of the resource.
+        @Nullable private static String verify(@NonNull ScriptedServer.Resource resource,
+                                               @Nullable File file) throws IOException {
+            if (file == null || !file.exists()) return "no file";
+            if (file.length() != resource.length) {
+                return "length " + file.length() + " != " + resource.length;
+            }
+
+            final int version = resource.version.get();
+            final byte[] expected = new byte[64 * KB];
+            final byte[] actual = new byte[expected.length];
+            final InputStream input = new FileInputStream(file);
+            try {
+                long offset = 0;
+                while (offset < resource.length) {
+                    final int length = (int) Math.min(expected.length, resource.length - offset);
+                    int read = 0;
+                    while (read < length) {
+                        final int count = input.read(actual, read, length - read);
+                        if (count < 0) return "eof at " + (offset + read);
+                        read += count;
+                    }
+                    ScriptedServer.fill(resource.id, version, offset, expected, length);
+                    if (!Arrays.equals(Arrays.copyOf(expected, length),
+                            Arrays.copyOf(actual, length))) {
+                        return "content mismatch in [" + offset + ", " + (offset + length) + ")";
+                    }
+                    offset += length;
+                }
+            } finally {
+                input.close();
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            final double seconds = elapsedNanos / 1e9;
+            final Histogram.Snapshot completion = completionMillis.snapshot();
+            final Histogram.Snapshot active = activeMillis.snapshot();
+            final StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.ENGLISH,
+                    "tasks %d concurrency %d blocks %d seed %d%n", options.tasks,
+                    options.concurrency, options.blocks, options.server.seed));
+            builder.append(String.format(Locale.ENGLISH,
+                    "completed %d failed %d unfinished %d corrupted %d%n", completed, failed,
+                    unfinished, corrupted.size()));
+            builder.append(String.format(Locale.ENGLISH,
+                    "resumed %d correct %d%n", resumed, resumedCorrect));
+            builder.append(String.format(Locale.ENGLISH,
+                    "elapsed %.2fs throughput %.2f MiB/s%n", seconds,
+                    completedBytes / (double) MB / seconds));
+            builder.append("completion ms p50[").append(completion.getValueAtPercentile(50))
+                    .append("] p99[").append(completion.getValueAtPercentile(99))
+                    .append("] max[").append(completion.getMax()).append("]\n");
+            builder.append("active ms p50[").append(active.getValueAtPercentile(50))
+                    .append("] p99[").append(active.getValueAtPercentile(99))
+                    .append("] max[").append(active.getMax()).append("]\n");
+            builder.append("server ").append(serverStats).append('\n');
+            builder.append(metrics);
+            appendFirst(builder, "corrupted", corrupted);
+            appendFirst(builder, "failed", failures);
+            return builder.toString();
+        }
+
+        private static void appendFirst(StringBuilder builder, String name, List<String> items) {
+            for (int i = 0; i < Math.min(10, items.size()); i++) {
+                builder.append(name).append(' ').append(items.get(i)).append('\n');
+            }
+        }
+    }
+}
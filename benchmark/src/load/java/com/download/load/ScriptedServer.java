@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.load;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/**
+ * The HTTP server on the localhost which serves the generated resources with the faults scripted
+ * by the {@link Config}.
+ * <p>
+ * The content of each resource is computed from its id and version, so it's never kept on the
+ * memory and the downloaded file can be verified. Whether a response is reset is decided by the
+ * random seeded with the resource, the range and the times the range is requested, so the same
+ * config always scripts the same faults, only the timing of the threads varies.
+ */
+class ScriptedServer {
+
+    private static final String FILE_PATH = "/f/";
+    private static final String REDIRECT_PATH = "/r/";
+    private static final int CHUNK_SIZE = 16 * 1024;
+    // the throttled body is written once per this period.
+    private static final long THROTTLE_PERIOD_MILLIS = 100;
+    // kept to keep its level, it logs each request on the info level.
+    private static final Logger SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+    static {
+        SERVER_LOGGER.setLevel(Level.WARNING);
+    }
+
+    static class Config {
+        long seed = 1;
+        boolean rangeSupport = true;
+        // the bytes per second of each connection, 0 for the unlimited.
+        long bandwidthPerConnection;
+        long latencyMillis;
+        long latencyJitterMillis;
+        // the probability of a response is reset in the middle of its body.
+        double resetRate;
+        int maxResetsPerResource = 2;
+        // the probability of the resource is changed when its response is reset.
+        double etagChangeRate;
+        // the ratio of the resources which are requested through a redirect.
+        double redirectRate;
+        // the ratio of the resources which are served chunked without the range support.
+        double chunkedRate;
+    }
+
+    static class Resource {
+        final int id;
+        final long length;
+        final boolean chunked;
+        final boolean redirected;
+        final AtomicInteger version = new AtomicInteger();
+        final AtomicInteger resetCount = new AtomicInteger();
+
+        Resource(int id, long length, boolean chunked, boolean redirected) {
+            this.id = id;
+            this.length = length;
+            this.chunked = chunked;
+            this.redirected = redirected;
+        }
+
+        String etagOf(int version) {
+            return "\"" + id + "-" + version + "\"";
+        }
+    }
+
+    static class Stats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong headRequests = new AtomicLong();
+        final AtomicLong partialResponses = new AtomicLong();
+        final AtomicLong fullResponses = new AtomicLong();
+        final AtomicLong chunkedResponses = new AtomicLong();
+        final AtomicLong preconditionFailed = new AtomicLong();
+        final AtomicLong rangeNotSatisfiable = new AtomicLong();
+        final AtomicLong redirects = new AtomicLong();
+        final AtomicLong resets = new AtomicLong();
+        final AtomicLong etagChanges = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "requests[" + requests + "] head[" + headRequests + "] 206[" + partialResponses
+                    + "] 200[" + fullResponses + "] chunked[" + chunkedResponses + "] 412["
+                    + preconditionFailed + "] 416[" + rangeNotSatisfiable + "] redirects["
+                    + redirects + "] resets[" + resets + "] etag-changes[" + etagChanges + "]";
+        }
+    }
+
+    @NonNull private final Config config;
+    @NonNull private final Resource[] resources;
+    @NonNull final Stats stats = new Stats();
+    @NonNull private final MockWebServer server = new MockWebServer();
+    // (resource id, range start) -> the times it's requested.
+    private final ConcurrentHashMap<String, AtomicInteger> rangeRequestCounts =
+            new ConcurrentHashMap<>();
+
+    ScriptedServer(@NonNull Config config, @NonNull Resource[] resources) {
+        this.config = config;
+        this.resources = resources;
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return ScriptedServer.this.dispatch(request);
+            }
+        });
+    }
+
+    void start() throws IOException {
+        server.start(InetAddress.getByName("127.0.0.1"), 0);
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    @NonNull String urlOf(@NonNull Resource resource) {
+        final String path = (resource.redirected ? REDIRECT_PATH : FILE_PATH) + resource.id;
+        return server.url(path).toString();
+    }
+
+    @NonNull MockResponse dispatch(@NonNull RecordedRequest request) {
+        stats.requests.incrementAndGet();
+        final String path = request.getPath();
+        final Resource resource = resourceOf(path);
+        if (resource == null) return new MockResponse().setResponseCode(404);
+
+        if (path.startsWith(REDIRECT_PATH)) {
+            stats.redirects.incrementAndGet();
+            return new MockResponse().setResponseCode(302)
+                    .setHeader("Location", FILE_PATH + resource.id);
+        }
+
+        // the etag and the body of the response are of the same version, even if the resource
+        // is changed by another response meanwhile.
+        final int version = resource.version.get();
+        final String etag = resource.etagOf(version);
+        final String ifMatch = request.getHeader("If-Match");
+        if (ifMatch != null && !ifMatch.equals(etag)) {
+            stats.preconditionFailed.incrementAndGet();
+            return new MockResponse().setResponseCode(412);
+        }
+
+        final MockResponse response = new MockResponse().setHeader("ETag", etag);
+        delay(response, resource, request.getHeader("Range"));
+        final boolean isHead = "HEAD".equals(request.getMethod());
+        if (isHead) stats.headRequests.incrementAndGet();
+
+        if (resource.chunked) {
+            stats.chunkedResponses.incrementAndGet();
+            if (isHead) return response.setHeader("Transfer-Encoding", "chunked");
+            return script(response.setChunkedBody(body(resource, version, 0, resource.length),
+                    CHUNK_SIZE), resource, 0);
+        }
+
+        final long[] range = config.rangeSupport
+                ? parseRange(request.getHeader("Range"), resource.length) : null;
+        if (config.rangeSupport) response.setHeader("Accept-Ranges", "bytes");
+        if (range != null && range[0] >= resource.length) {
+            stats.rangeNotSatisfiable.incrementAndGet();
+            return response.setResponseCode(416)
+                    .setHeader("Content-Range", "bytes */" + resource.length);
+        }
+
+        final long start = range == null ? 0 : range[0];
+        final long end = range == null ? resource.length - 1 : range[1];
+        if (range != null) {
+            stats.partialResponses.incrementAndGet();
+            response.setResponseCode(206)
+                    .setHeader("Content-Range",
+                            "bytes " + start + "-" + end + "/" + resource.length);
+        } else {
+            stats.fullResponses.incrementAndGet();
+        }
+
+        if (isHead) return response.setHeader("Content-Length", end - start + 1);
+        return script(response.setBody(body(resource, version, start, end + 1)), resource, start);
+    }
+
+    // reset the response in the middle of its body, the resource may be changed meanwhile.
+    @NonNull private MockResponse script(@NonNull MockResponse response,
+                                         @NonNull Resource resource, long start) {
+        if (config.bandwidthPerConnection > 0) {
+            final long bytesPerPeriod = Math.max(1,
+                    config.bandwidthPerConnection * THROTTLE_PERIOD_MILLIS / 1000);
+            response.throttleBody(bytesPerPeriod, THROTTLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        final Random random = randomOf(resource, start, "reset");
+        if (random.nextDouble() >= config.resetRate) return response;
+        if (resource.resetCount.incrementAndGet() > config.maxResetsPerResource) return response;
+
+        stats.resets.incrementAndGet();
+        if (random.nextDouble() < config.etagChangeRate) {
+            resource.version.incrementAndGet();
+            stats.etagChanges.incrementAndGet();
+        }
+        return response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+    }
+
+    private void delay(@NonNull MockResponse response, @NonNull Resource resource,
+                       @Nullable String range) {
+        long delayMillis = config.latencyMillis;
+        if (config.latencyJitterMillis > 0) {
+            final Random random = randomOf(resource, range == null ? -1 : range.hashCode(),
+                    "latency");
+            delayMillis += (long) (random.nextDouble() * config.latencyJitterMillis);
+        }
+        if (delayMillis > 0) response.setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull private Random randomOf(@NonNull Resource resource, long start, String purpose) {
+        final String key = purpose + ":" + resource.id + ":" + start;
+        AtomicInteger count = rangeRequestCounts.get(key);
+        if (count == null) {
+            final AtomicInteger newCount = new AtomicInteger();
+            count = rangeRequestCounts.putIfAbsent(key, newCount);
+            if (count == null) count = newCount;
+        }
+        final long attempt = count.getAndIncrement();
+        return new Random(config.seed * 31 + key.hashCode() * 17L + attempt);
+    }
+
+    @Nullable private Resource resourceOf(@NonNull String path) {
+        final String idString;
+        if (path.startsWith(FILE_PATH)) {
+            idString = path.substring(FILE_PATH.length());
+        } else if (path.startsWith(REDIRECT_PATH)) {
+            idString = path.substring(REDIRECT_PATH.length());
+        } else {
+            return null;
+        }
+
+        try {
+            final int id = Integer.parseInt(idString);
+            return id >= 0 && id < resources.length ? resources[id] : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code [start, end]} of the range, or {@code null} if it isn't a single range.
+     */
+    @Nullable static long[] parseRange(@Nullable String range, long length) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) return null;
+
+        final String spec = range.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash <= 0) return null;
+
+        try {
+            final long start = Long.parseLong(spec.substring(0, dash));
+            final String endString = spec.substring(dash + 1);
+            final long end = endString.isEmpty() ? length - 1
+                    : Math.min(length - 1, Long.parseLong(endString));
+            if (end < start && start < length) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @NonNull private static Buffer body(@NonNull Resource resource, int version, long start,
+                                        long end) {
+        final Buffer buffer = new Buffer();
+        final byte[] bytes = new byte[CHUNK_SIZE];
+        for (long offset = start; offset < end; offset += bytes.length) {
+            final int length = (int) Math.min(bytes.length, end - offset);
+            fill(resource.id, version, offset, bytes, length);
+            buffer.write(bytes, 0, length);
+        }
+        return buffer;
+    }
+
+    /**
+     * Fill the {@code length} bytes of the content of the resource from the {@code offset}.
+     */
+    static void fill(int id, int version, long offset, byte[] bytes, int length) {
+        final long seed = ((long) id << 32) ^ ((long) version << 16);
+        for (int i = 0; i < length; i++) {
+            final long position = offset + i;
+            bytes[i] = (byte) (mix(seed ^ (position >>> 3)) >>> ((position & 7) << 3));
+        }
+    }
+
+    // the finalizer of the SplitMix64.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
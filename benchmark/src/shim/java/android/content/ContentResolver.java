@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * There isn't any content provider on the JVM, only the file scheme is available.
+ */
+public class ContentResolver {
+    public static final String SCHEME_CONTENT = "content";
+    public static final String SCHEME_FILE = "file";
+
+    public final ParcelFileDescriptor openFileDescriptor(Uri uri, String mode)
+            throws FileNotFoundException {
+        if (!SCHEME_FILE.equals(uri.getScheme())) {
+            throw new FileNotFoundException("No content provider on the JVM: " + uri);
+        }
+        return ParcelFileDescriptor.open(new File(uri.getPath()), mode);
+    }
+
+    public final Cursor query(Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+}
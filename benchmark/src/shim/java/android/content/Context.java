@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import java.io.File;
+
+/**
+ * The context of the benchmark, the permissions are granted and the network is always on wifi.
+ */
+public class Context {
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+    private final File filesDir;
+
+    public Context(File filesDir) {
+        this.filesDir = filesDir;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public ContentResolver getContentResolver() {
+        return new ContentResolver();
+    }
+
+    public Object getSystemService(String name) {
+        if (CONNECTIVITY_SERVICE.equals(name)) return new android.net.ConnectivityManager();
+        return null;
+    }
+
+    public int checkCallingOrSelfPermission(String permission) {
+        return android.content.pm.PackageManager.PERMISSION_GRANTED;
+    }
+
+    public File getFilesDir() {
+        return filesDir;
+    }
+}
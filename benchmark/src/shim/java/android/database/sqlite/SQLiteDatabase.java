@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * There isn't SQLite on the JVM, the benchmarks run on the
+ * {@code BreakpointStoreOnCache} instead.
+ */
+public final class SQLiteDatabase {
+    SQLiteDatabase() {
+    }
+
+    public void execSQL(String sql) {
+        throw unsupported();
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        throw unsupported();
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        throw unsupported();
+    }
+
+    public long replace(String table, String nullColumnHack, ContentValues values) {
+        throw unsupported();
+    }
+
+    public int update(String table, ContentValues values, String whereClause,
+                      String[] whereArgs) {
+        throw unsupported();
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        throw unsupported();
+    }
+
+    public void beginTransaction() {
+        throw unsupported();
+    }
+
+    public void setTransactionSuccessful() {
+        throw unsupported();
+    }
+
+    public void endTransaction() {
+        throw unsupported();
+    }
+
+    public boolean inTransaction() {
+        return false;
+    }
+
+    public boolean enableWriteAheadLogging() {
+        return false;
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        throw unsupported();
+    }
+
+    static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("No SQLite on the JVM");
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.content.Context;
+
+public abstract class SQLiteOpenHelper {
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+    }
+
+    public SQLiteDatabase getWritableDatabase() {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public void onOpen(SQLiteDatabase db) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    public void setWriteAheadLoggingEnabled(boolean enabled) {
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import java.io.Closeable;
+
+public final class SQLiteStatement implements Closeable {
+    SQLiteStatement() {
+    }
+
+    public void bindLong(int index, long value) {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public void bindString(int index, String value) {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public void clearBindings() {
+    }
+
+    public int executeUpdateDelete() {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public long executeInsert() {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public long simpleQueryForLong() {
+        throw SQLiteDatabase.unsupported();
+    }
+
+    public void close() {
+    }
+}
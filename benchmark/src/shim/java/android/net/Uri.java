@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.net;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+public final class Uri {
+    private final String uriString;
+    private final URI uri;
+
+    private Uri(String uriString, URI uri) {
+        this.uriString = uriString;
+        this.uri = uri;
+    }
+
+    public static Uri fromFile(File file) {
+        final URI uri = file.getAbsoluteFile().toURI();
+        return new Uri(uri.toString(), uri);
+    }
+
+    public static Uri parse(String uriString) {
+        try {
+            return new Uri(uriString, new URI(uriString));
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public String getScheme() {
+        return uri.getScheme();
+    }
+
+    public String getPath() {
+        return uri.getPath();
+    }
+
+    public String getHost() {
+        return uri.getHost();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && uriString.equals(((Uri) o).uriString);
+    }
+
+    @Override
+    public int hashCode() {
+        return uriString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class Handler {
+    public interface Callback {
+        boolean handleMessage(Message msg);
+    }
+
+    private final Looper looper;
+    private final Callback callback;
+
+    // the messages and runnables pending, to be removed.
+    private final List<Pending> pendings = new ArrayList<>();
+
+    public Handler() {
+        this(Looper.myLooper() != null ? Looper.myLooper() : Looper.getMainLooper(), null);
+    }
+
+    public Handler(Looper looper) {
+        this(looper, null);
+    }
+
+    public Handler(Looper looper, Callback callback) {
+        this.looper = looper;
+        this.callback = callback;
+    }
+
+    public void handleMessage(Message msg) {
+    }
+
+    public final Looper getLooper() {
+        return looper;
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postAtFrontOfQueue(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        return enqueue(new Pending(r, null), delayMillis);
+    }
+
+    public final Message obtainMessage(int what) {
+        final Message message = new Message();
+        message.what = what;
+        message.target = this;
+        return message;
+    }
+
+    public final boolean sendMessage(Message msg) {
+        return enqueue(new Pending(null, msg), 0);
+    }
+
+    public final boolean sendEmptyMessage(int what) {
+        return sendEmptyMessageDelayed(what, 0);
+    }
+
+    public final boolean sendEmptyMessageDelayed(int what, long delayMillis) {
+        return enqueue(new Pending(null, obtainMessage(what)), delayMillis);
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        synchronized (pendings) {
+            final Iterator<Pending> iterator = pendings.iterator();
+            while (iterator.hasNext()) {
+                final Pending pending = iterator.next();
+                if (pending.runnable == r) {
+                    pending.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public final void removeMessages(int what) {
+        synchronized (pendings) {
+            final Iterator<Pending> iterator = pendings.iterator();
+            while (iterator.hasNext()) {
+                final Pending pending = iterator.next();
+                if (pending.message != null && pending.message.what == what) {
+                    pending.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private boolean enqueue(Pending pending, long delayMillis) {
+        if (looper.executor().isShutdown()) return false;
+        synchronized (pendings) {
+            pendings.add(pending);
+            pending.future = looper.executor()
+                    .schedule(pending, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    void dispatchMessage(Message msg) {
+        if (callback != null && callback.handleMessage(msg)) return;
+        handleMessage(msg);
+    }
+
+    private class Pending implements Runnable {
+        final Runnable runnable;
+        final Message message;
+        ScheduledFuture<?> future;
+
+        Pending(Runnable runnable, Message message) {
+            this.runnable = runnable;
+            this.message = message;
+        }
+
+        void cancel() {
+            if (future != null) future.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            synchronized (pendings) {
+                pendings.remove(this);
+            }
+            if (runnable != null) {
+                runnable.run();
+            } else {
+                dispatchMessage(message);
+            }
+        }
+    }
+}
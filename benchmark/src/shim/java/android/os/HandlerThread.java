@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+public class HandlerThread extends Thread {
+    private final String name;
+    private Looper looper;
+
+    public HandlerThread(String name) {
+        super(name);
+        this.name = name;
+    }
+
+    /**
+     * The looper runs on its own thread, this thread only exists for the api.
+     */
+    public synchronized Looper getLooper() {
+        if (looper == null) looper = new Looper(name);
+        return looper;
+    }
+
+    public synchronized boolean quit() {
+        if (looper == null) return false;
+        looper.quit();
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The looper is a single thread executor on the JVM, the main looper is a daemon thread
+ * standing for the ui thread.
+ */
+public final class Looper {
+    private static final Looper MAIN = new Looper("main");
+    private static final ThreadLocal<Looper> CURRENT = new ThreadLocal<>();
+
+    final ScheduledThreadPoolExecutor executor;
+    volatile Thread thread;
+
+    Looper(final String name) {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                Looper.this.thread = thread;
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                CURRENT.set(Looper.this);
+            }
+        });
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public static Looper myLooper() {
+        return CURRENT.get();
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public void quit() {
+        executor.shutdownNow();
+    }
+
+    ScheduledExecutorService executor() {
+        return executor;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The descriptor of the file opened for reading or writing at any position.
+ */
+public class ParcelFileDescriptor implements Closeable {
+    private final RandomAccessFile file;
+
+    ParcelFileDescriptor(RandomAccessFile file) {
+        this.file = file;
+    }
+
+    public static ParcelFileDescriptor open(File file, String mode)
+            throws FileNotFoundException {
+        final String fileMode = mode.contains("w") ? "rw" : "r";
+        return new ParcelFileDescriptor(new RandomAccessFile(file, fileMode));
+    }
+
+    public FileDescriptor getFileDescriptor() {
+        try {
+            return file.getFD();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
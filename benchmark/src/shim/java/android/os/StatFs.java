@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.io.File;
+
+public class StatFs {
+    private final File file;
+
+    public StatFs(String path) {
+        this.file = new File(path);
+    }
+
+    public long getAvailableBytes() {
+        return file.getUsableSpace();
+    }
+
+    public int getAvailableBlocks() {
+        return (int) Math.min(Integer.MAX_VALUE, getAvailableBytes() / getBlockSize());
+    }
+
+    public int getBlockSize() {
+        return 4096;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.system;
+
+import java.io.FileDescriptor;
+
+/**
+ * There isn't the posix call on the JVM, so the caller falls back as on the old devices.
+ */
+public final class Os {
+    private Os() {
+    }
+
+    public static void posix_fallocate(FileDescriptor fd, long offset, long length)
+            throws ErrnoException {
+        throw new ErrnoException("posix_fallocate", OsConstants.ENOSYS);
+    }
+
+    public static void ftruncate(FileDescriptor fd, long length) throws ErrnoException {
+        throw new ErrnoException("ftruncate", OsConstants.ENOSYS);
+    }
+}
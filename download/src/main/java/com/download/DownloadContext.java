@@ -24,20 +24,26 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.download.core.Util;
+import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.cause.EndCause;
+import com.download.core.cause.ResumeFailedCause;
 import com.download.core.listener.DownloadListener2;
 import com.download.core.listener.DownloadListenerBunch;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -132,6 +138,77 @@ public class DownloadContext {
                 "start finish " + isSerial + " " + (SystemClock.uptimeMillis() - startTime) + "ms");
     }
 
+    /**
+     * Start queue as a batch, which is for the large queue of the small files.
+     * <p>
+     * The tasks are grouped by their host, and the tasks of each host are executed by at most
+     * {@link QueueSet#getBatchLanesPerHost()} lanes at the same time. Each lane executes the tasks
+     * one by one, so the connection kept alive by the previous task is reused by the next one
+     * instead of competing with the tasks of the other hosts on the dispatcher. The lanes of all
+     * hosts are no more than the max parallel running count of the dispatcher, see
+     * {@link com.download.core.dispatcher.DownloadDispatcher#setMaxParallelRunningCount(int)}, and
+     * the lane moves to another host after the tasks of its host are all taken. The aggregate
+     * progress of the queue is callback if the {@link #contextListener} is a
+     * {@link DownloadContextListener.BatchProgress}.
+     * <p>
+     * The small ones are better not to be written to the database until they end, see
+     * {@code RemitStoreOnSQLite#setRemitLength(long)}.
+     *
+     * @param listener the listener for each task, if you have already provided
+     *                 {@link #contextListener}, it's accept {@code null} for each task's listener.
+     */
+    public void startOnBatch(@Nullable DownloadListener listener) {
+        final long startTime = SystemClock.uptimeMillis();
+        Util.d(TAG, "start on batch");
+        started = true;
+        final DownloadListener targetListener;
+        if (contextListener != null) {
+            final QueueAttachListener attachListener;
+            if (contextListener instanceof DownloadContextListener.BatchProgress) {
+                attachListener = new BatchAttachListener(this,
+                        (DownloadContextListener.BatchProgress) contextListener, tasks.length,
+                        set.getMinIntervalMillisCallbackProcess());
+            } else {
+                attachListener = new QueueAttachListener(this, contextListener, tasks.length);
+            }
+            targetListener = new DownloadListenerBunch.Builder()
+                    .append(listener)
+                    .append(attachListener)
+                    .build();
+        } else {
+            targetListener = listener;
+        }
+
+        final List<DownloadTask> scheduleTaskList = new ArrayList<>();
+        Collections.addAll(scheduleTaskList, tasks);
+        Collections.sort(scheduleTaskList);
+        final Map<String, ArrayDeque<DownloadTask>> hostTasks = new LinkedHashMap<>();
+        for (DownloadTask task : scheduleTaskList) {
+            String host = Util.getHost(task.getUrl());
+            if (host == null) host = "";
+            ArrayDeque<DownloadTask> hostTaskQueue = hostTasks.get(host);
+            if (hostTaskQueue == null) {
+                hostTaskQueue = new ArrayDeque<>();
+                hostTasks.put(host, hostTaskQueue);
+            }
+            hostTaskQueue.add(task);
+        }
+
+        final BatchQueue batchQueue = new BatchQueue(hostTasks, set.getBatchLanesPerHost());
+        // each lane executes its task synchronously, so the lanes of all hosts are limited as the
+        // tasks enqueued to the dispatcher.
+        final int laneCount = Math.min(batchQueue.getMaxLaneCount(),
+                OkDownload.with().downloadDispatcher().getMaxParallelRunningCount());
+        final AtomicInteger runningLaneCount = new AtomicInteger(laneCount);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        for (int i = 0; i < laneCount; i++) {
+            executeOnSerialExecutor(new BatchLane(batchQueue, targetListener, runningLaneCount,
+                    interrupted));
+        }
+        Util.d(TAG, "start on batch finish " + hostTasks.size() + " hosts " + laneCount
+                + " lanes " + (SystemClock.uptimeMillis() - startTime) + "ms");
+    }
+
     public AlterContext alter() {
         return new AlterContext(this);
     }
@@ -161,6 +238,103 @@ public class DownloadContext {
         SERIAL_EXECUTOR.execute(runnable);
     }
 
+    /**
+     * The tasks of the batch grouped by their host. The lane keeps taking the tasks of its host,
+     * and moves to another host which is taken by less than the lanes per host after the tasks of
+     * its host are all taken.
+     */
+    private static class BatchQueue {
+        @NonNull private final Map<String, ArrayDeque<DownloadTask>> hostTasks;
+        @NonNull private final Map<String, Integer> hostLaneCounts = new HashMap<>();
+        private final int lanesPerHost;
+
+        BatchQueue(@NonNull Map<String, ArrayDeque<DownloadTask>> hostTasks, int lanesPerHost) {
+            this.hostTasks = hostTasks;
+            this.lanesPerHost = lanesPerHost;
+        }
+
+        int getMaxLaneCount() {
+            int count = 0;
+            for (ArrayDeque<DownloadTask> hostTaskQueue : hostTasks.values()) {
+                count += Math.min(lanesPerHost, hostTaskQueue.size());
+            }
+            return count;
+        }
+
+        /**
+         * Take the next task for the {@code lane}, the host of the lane is changed if the tasks of
+         * its host are all taken.
+         *
+         * @return {@code null} if there isn't any task can be taken by the lane.
+         */
+        @Nullable synchronized DownloadTask poll(@NonNull BatchLane lane) {
+            if (lane.host != null) {
+                final DownloadTask task = hostTasks.get(lane.host).poll();
+                if (task != null) return task;
+
+                hostLaneCounts.put(lane.host, hostLaneCounts.get(lane.host) - 1);
+                lane.host = null;
+            }
+
+            for (Map.Entry<String, ArrayDeque<DownloadTask>> entry : hostTasks.entrySet()) {
+                if (entry.getValue().isEmpty()) continue;
+
+                final Integer laneCount = hostLaneCounts.get(entry.getKey());
+                if (laneCount != null && laneCount >= lanesPerHost) continue;
+
+                hostLaneCounts.put(entry.getKey(), laneCount == null ? 1 : laneCount + 1);
+                lane.host = entry.getKey();
+                return entry.getValue().poll();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The lane executes the tasks of its host one by one, there are several lanes share the same
+     * host.
+     */
+    private class BatchLane implements Runnable {
+        @NonNull private final BatchQueue batchQueue;
+        @Nullable private final DownloadListener listener;
+        @NonNull private final AtomicInteger runningLaneCount;
+        // whether there are tasks left without executing because the context is stopped.
+        @NonNull private final AtomicBoolean interrupted;
+        // the host of the tasks taken by this lane, it's guarded by the batch queue.
+        @Nullable String host;
+
+        BatchLane(@NonNull BatchQueue batchQueue,
+                  @Nullable DownloadListener listener, @NonNull AtomicInteger runningLaneCount,
+                  @NonNull AtomicBoolean interrupted) {
+            this.batchQueue = batchQueue;
+            this.listener = listener;
+            this.runningLaneCount = runningLaneCount;
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public void run() {
+            boolean isAutoCallbackToUIThread = set.isAutoCallbackToUIThread();
+            try {
+                while (true) {
+                    final DownloadTask task = batchQueue.poll(this);
+                    if (task == null) break;
+
+                    isAutoCallbackToUIThread = task.isAutoCallbackToUIThread();
+                    if (!isStarted()) {
+                        interrupted.set(true);
+                        break;
+                    }
+                    task.execute(listener);
+                }
+            } finally {
+                if (runningLaneCount.decrementAndGet() == 0 && interrupted.get()) {
+                    callbackQueueEndOnSerialLoop(isAutoCallbackToUIThread);
+                }
+            }
+        }
+    }
+
     public Builder toBuilder() {
         return new Builder(set, new ArrayList<>(Arrays.asList(tasks)))
                 .setListener(this.contextListener);
@@ -257,6 +431,8 @@ public class DownloadContext {
     }
 
     public static class QueueSet {
+        public static final int DEFAULT_BATCH_LANES_PER_HOST = 5;
+
         private Map<String, List<String>> headerMapFields;
         private Uri uri;
         private Integer readBufferSize;
@@ -270,6 +446,8 @@ public class DownloadContext {
         private Boolean passIfAlreadyCompleted;
         private Boolean wifiRequired;
 
+        private Integer batchLanesPerHost;
+
         private Object tag;
 
         public Map<String, List<String>> getHeaderMapFields() {
@@ -376,6 +554,22 @@ public class DownloadContext {
             return this;
         }
 
+        public int getBatchLanesPerHost() {
+            return batchLanesPerHost == null ? DEFAULT_BATCH_LANES_PER_HOST : batchLanesPerHost;
+        }
+
+        /**
+         * Set the max count of the tasks of one host are executed at the same time when the
+         * context is started by {@link DownloadContext#startOnBatch(DownloadListener)}.
+         */
+        public QueueSet setBatchLanesPerHost(int batchLanesPerHost) {
+            if (batchLanesPerHost <= 0) {
+                throw new IllegalArgumentException("the batch lanes per host must be positive");
+            }
+            this.batchLanesPerHost = batchLanesPerHost;
+            return this;
+        }
+
         public Object getTag() {
             return tag;
         }
@@ -430,6 +624,101 @@ public class DownloadContext {
         }
     }
 
+    static class BatchAttachListener extends QueueAttachListener {
+        @NonNull private final DownloadContextListener.BatchProgress progressListener;
+        @NonNull private final DownloadContext hostContext;
+        private final int taskCount;
+        private final long minIntervalMillis;
+
+        // id -> {currentOffset, totalLength} of the task.
+        private final Map<Integer, long[]> taskProgress = new HashMap<>();
+        private int endedCount;
+        private int completedCount;
+        private long currentOffset;
+        private long totalLength;
+        private long lastCallbackMillis;
+
+        BatchAttachListener(@NonNull DownloadContext context,
+                            @NonNull DownloadContextListener.BatchProgress contextListener,
+                            int taskCount, long minIntervalMillis) {
+            super(context, contextListener, taskCount);
+            this.progressListener = contextListener;
+            this.hostContext = context;
+            this.taskCount = taskCount;
+            this.minIntervalMillis = minIntervalMillis;
+        }
+
+        @Override
+        public void downloadFromBeginning(@NonNull DownloadTask task,
+                                          @NonNull BreakpointInfo info,
+                                          @NonNull ResumeFailedCause cause) {
+            resetProgress(task, info);
+        }
+
+        @Override
+        public void downloadFromBreakpoint(@NonNull DownloadTask task,
+                                           @NonNull BreakpointInfo info) {
+            resetProgress(task, info);
+        }
+
+        @Override
+        public void fetchProgress(@NonNull DownloadTask task, int blockIndex,
+                                  long increaseBytes) {
+            synchronized (this) {
+                final long[] progress = taskProgress.get(task.getId());
+                if (progress != null) progress[0] += increaseBytes;
+                currentOffset += increaseBytes;
+            }
+            callbackProgress(false);
+        }
+
+        @Override
+        public void taskEnd(@NonNull DownloadTask task, @NonNull EndCause cause,
+                            @Nullable Exception realCause) {
+            final boolean isLast;
+            synchronized (this) {
+                taskProgress.remove(task.getId());
+                if (cause == EndCause.COMPLETED) completedCount++;
+                isLast = ++endedCount >= taskCount;
+            }
+            callbackProgress(isLast);
+            super.taskEnd(task, cause, realCause);
+        }
+
+        // the task may be downloaded from the beginning again after retry.
+        private void resetProgress(@NonNull DownloadTask task, @NonNull BreakpointInfo info) {
+            final long taskTotalLength = info.isChunked() ? 0 : info.getTotalLength();
+            synchronized (this) {
+                final long[] progress = taskProgress.put(task.getId(),
+                        new long[]{info.getTotalOffset(), taskTotalLength});
+                if (progress != null) {
+                    currentOffset -= progress[0];
+                    totalLength -= progress[1];
+                }
+                currentOffset += info.getTotalOffset();
+                totalLength += taskTotalLength;
+            }
+            callbackProgress(false);
+        }
+
+        private void callbackProgress(boolean force) {
+            final int completedCount;
+            final long currentOffset;
+            final long totalLength;
+            synchronized (this) {
+                final long nowMillis = SystemClock.uptimeMillis();
+                if (!force && nowMillis - lastCallbackMillis < minIntervalMillis) return;
+
+                lastCallbackMillis = nowMillis;
+                completedCount = this.completedCount;
+                currentOffset = this.currentOffset;
+                totalLength = this.totalLength;
+            }
+            progressListener.queueProgress(hostContext, completedCount, currentOffset,
+                    totalLength);
+        }
+    }
+
     /**
      * The Alter helper for the {@link DownloadContext}.
      */
@@ -26,4 +26,23 @@ public interface DownloadContextListener {
                  @NonNull EndCause cause, @Nullable Exception realCause, int remainCount);
 
     void queueEnd(@NonNull DownloadContext context);
+
+    /**
+     * The listener of the context which also receives the aggregate progress of the queue started
+     * by {@link DownloadContext#startOnBatch(DownloadListener)}.
+     */
+    interface BatchProgress extends DownloadContextListener {
+        /**
+         * The progress of the queue, it's callback at most once per
+         * {@link DownloadContext.QueueSet#getMinIntervalMillisCallbackProcess()} and once after
+         * the last task is ended.
+         *
+         * @param completedCount the count of the tasks completed.
+         * @param currentOffset  the bytes fetched by all tasks.
+         * @param totalLength    the total length of the tasks have been connected, the one whose
+         *                       length is unknown is excluded.
+         */
+        void queueProgress(@NonNull DownloadContext context, int completedCount,
+                           long currentOffset, long totalLength);
+    }
 }
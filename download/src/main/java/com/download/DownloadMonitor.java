@@ -55,4 +55,21 @@ public interface DownloadMonitor {
                                    @Nullable ResumeFailedCause cause);
 
     void taskEnd(DownloadTask task, EndCause cause, @Nullable Exception realCause);
+
+    /**
+     * The optional extension of the monitor, if the monitor implements it, the decisions of the
+     * {@link com.download.core.download.BlockCountPolicy} are caught too.
+     */
+    interface BlockCountMonitor {
+        /**
+         * Call this monitor function when the count of blocks is determined for the {@code task}
+         * which is going to download from the very beginning.
+         *
+         * @param task        the target task.
+         * @param totalLength the instance length of the resource.
+         * @param blockCount  the count of blocks determined.
+         */
+        void taskBlockCountDetermined(@NonNull DownloadTask task, long totalLength,
+                                      int blockCount);
+    }
 }
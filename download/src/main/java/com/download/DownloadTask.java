@@ -27,6 +27,7 @@ import com.download.core.Util;
 import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.breakpoint.BreakpointStore;
 import com.download.core.download.DownloadStrategy;
+import com.download.core.download.RateLimiter;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -85,6 +86,9 @@ public class DownloadTask extends IdentifiedTask implements Comparable<DownloadT
     @Nullable private File targetFile;
     @Nullable private String redirectLocation;
 
+    // the budget shared by all connections of this task.
+    @NonNull private final RateLimiter rateLimiter = new RateLimiter();
+
     public DownloadTask(String url, Uri uri, int priority, int readBufferSize, int flushBufferSize,
                         int syncBufferSize, int syncBufferIntervalMills,
                         boolean autoCallbackToUIThread, int minIntervalMillisCallbackProcess,
@@ -571,6 +575,29 @@ public class DownloadTask extends IdentifiedTask implements Comparable<DownloadT
         return priority;
     }
 
+    /**
+     * Set the max bytes per-second of this task, it takes effect immediately even if this task is
+     * running.
+     *
+     * @param maxBytesPerSecond the max bytes per-second, {@code 0} means unlimited.
+     */
+    public void setMaxBytesPerSecond(@IntRange(from = 0) long maxBytesPerSecond) {
+        rateLimiter.setBytesPerSecond(maxBytesPerSecond);
+    }
+
+    /**
+     * Get the max bytes per-second of this task.
+     *
+     * @return the max bytes per-second, {@code 0} means unlimited.
+     */
+    public long getMaxBytesPerSecond() {
+        return rateLimiter.getBytesPerSecond();
+    }
+
+    @NonNull RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
     public Builder toBuilder(String anotherUrl, Uri anotherUri) {
         final Builder builder = new Builder(anotherUrl, anotherUri)
                 .setPriority(priority)
@@ -581,7 +608,8 @@ public class DownloadTask extends IdentifiedTask implements Comparable<DownloadT
                 .setAutoCallbackToUIThread(autoCallbackToUIThread)
                 .setMinIntervalMillisCallbackProcess(minIntervalMillisCallbackProcess)
                 .setHeaderMapFields(headerMapFields)
-                .setPassIfAlreadyCompleted(passIfAlreadyCompleted);
+                .setPassIfAlreadyCompleted(passIfAlreadyCompleted)
+                .setMaxBytesPerSecond(getMaxBytesPerSecond());
 
         // check whether the filename is special set from method.
         if (Util.isUriFileScheme(anotherUri) // only if another uri is file-scheme
@@ -704,6 +732,7 @@ public class DownloadTask extends IdentifiedTask implements Comparable<DownloadT
         private Boolean isFilenameFromResponse;
         private Integer connectionCount;
         private Boolean isPreAllocateLength;
+        private long maxBytesPerSecond;
 
         /**
          * Set whether need to pre allocate length for the file after get the resource-length from
@@ -903,17 +932,35 @@ public class DownloadTask extends IdentifiedTask implements Comparable<DownloadT
             return this;
         }
 
+        /**
+         * Set the max bytes per-second of the task, it can be changed through
+         * {@link DownloadTask#setMaxBytesPerSecond(long)} later.
+         * default is {@code 0} which means unlimited.
+         *
+         * @param maxBytesPerSecond the max bytes per-second of the task.
+         */
+        public Builder setMaxBytesPerSecond(@IntRange(from = 0) long maxBytesPerSecond) {
+            if (maxBytesPerSecond < 0) {
+                throw new IllegalArgumentException("Value must be positive!");
+            }
+
+            this.maxBytesPerSecond = maxBytesPerSecond;
+            return this;
+        }
+
         /**
          * Build the task through the builder.
          *
          * @return a new task is built from this builder.
          */
         public DownloadTask build() {
-            return new DownloadTask(url, uri, priority, readBufferSize, flushBufferSize,
-                    syncBufferSize, syncBufferIntervalMillis,
+            final DownloadTask task = new DownloadTask(url, uri, priority, readBufferSize,
+                    flushBufferSize, syncBufferSize, syncBufferIntervalMillis,
                     autoCallbackToUIThread, minIntervalMillisCallbackProcess,
                     headerMapFields, filename, passIfAlreadyCompleted, isWifiRequired,
                     isFilenameFromResponse, connectionCount, isPreAllocateLength);
+            task.setMaxBytesPerSecond(maxBytesPerSecond);
+            return task;
         }
     }
 
@@ -968,6 +1015,10 @@ public class DownloadTask extends IdentifiedTask implements Comparable<DownloadT
                                              @NonNull BreakpointInfo info) {
             task.setBreakpointInfo(info);
         }
+
+        @NonNull public static RateLimiter getRateLimiter(@NonNull DownloadTask task) {
+            return task.getRateLimiter();
+        }
     }
 
     public static class MockTaskForCompare extends IdentifiedTask {
@@ -27,10 +27,13 @@ import com.download.core.breakpoint.DownloadStore;
 import com.download.core.connection.DownloadConnection;
 import com.download.core.dispatcher.CallbackDispatcher;
 import com.download.core.dispatcher.DownloadDispatcher;
+import com.download.core.download.BandwidthThrottle;
 import com.download.core.download.DownloadStrategy;
 import com.download.core.file.DownloadOutputStream;
 import com.download.core.file.DownloadUriOutputStream;
+import com.download.core.file.FileSyncService;
 import com.download.core.file.ProcessFileStrategy;
+import com.download.core.metrics.DownloadMetrics;
 
 
 @SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
@@ -45,16 +48,20 @@ public class OkDownload {
     private final DownloadOutputStream.Factory outputStreamFactory;
     private final ProcessFileStrategy processFileStrategy;
     private final DownloadStrategy downloadStrategy;
+    private final FileSyncService fileSyncService;
+    private final BandwidthThrottle bandwidthThrottle;
 
     private final Context context;
 
     @Nullable DownloadMonitor monitor;
+    @Nullable DownloadMetrics metrics;
 
     OkDownload(Context context, DownloadDispatcher downloadDispatcher,
                CallbackDispatcher callbackDispatcher, DownloadStore store,
                DownloadConnection.Factory connectionFactory,
                DownloadOutputStream.Factory outputStreamFactory,
-               ProcessFileStrategy processFileStrategy, DownloadStrategy downloadStrategy) {
+               ProcessFileStrategy processFileStrategy, DownloadStrategy downloadStrategy,
+               FileSyncService fileSyncService, BandwidthThrottle bandwidthThrottle) {
         this.context = context;
         this.downloadDispatcher = downloadDispatcher;
         this.callbackDispatcher = callbackDispatcher;
@@ -63,6 +70,8 @@ public class OkDownload {
         this.outputStreamFactory = outputStreamFactory;
         this.processFileStrategy = processFileStrategy;
         this.downloadStrategy = downloadStrategy;
+        this.fileSyncService = fileSyncService;
+        this.bandwidthThrottle = bandwidthThrottle;
 
         this.downloadDispatcher.setDownloadStore(Util.createRemitDatabase(store));
     }
@@ -81,6 +90,10 @@ public class OkDownload {
 
     public DownloadStrategy downloadStrategy() { return downloadStrategy; }
 
+    public FileSyncService fileSyncService() { return fileSyncService; }
+
+    public BandwidthThrottle bandwidthThrottle() { return bandwidthThrottle; }
+
     public Context context() { return this.context; }
 
     public void setMonitor(@Nullable DownloadMonitor monitor) {
@@ -91,6 +104,18 @@ public class OkDownload {
         return monitor;
     }
 
+    /**
+     * Set the registry to record the metrics of the download engine, {@code null} means not to
+     * record them which is the default one.
+     */
+    public void setMetrics(@Nullable DownloadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Nullable public DownloadMetrics getMetrics() {
+        return metrics;
+    }
+
     public static OkDownload with() {
         if (singleton == null) {
             synchronized (OkDownload.class) {
@@ -126,7 +151,10 @@ public class OkDownload {
         private ProcessFileStrategy processFileStrategy;
         private DownloadStrategy downloadStrategy;
         private DownloadOutputStream.Factory outputStreamFactory;
+        private FileSyncService fileSyncService;
+        private BandwidthThrottle bandwidthThrottle;
         private DownloadMonitor monitor;
+        private DownloadMetrics metrics;
         private final Context context;
 
         public Builder(@NonNull Context context) {
@@ -168,11 +196,26 @@ public class OkDownload {
             return this;
         }
 
+        public Builder fileSyncService(FileSyncService fileSyncService) {
+            this.fileSyncService = fileSyncService;
+            return this;
+        }
+
+        public Builder bandwidthThrottle(BandwidthThrottle bandwidthThrottle) {
+            this.bandwidthThrottle = bandwidthThrottle;
+            return this;
+        }
+
         public Builder monitor(DownloadMonitor monitor) {
             this.monitor = monitor;
             return this;
         }
 
+        public Builder metrics(DownloadMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         public OkDownload build() {
             if (downloadDispatcher == null) {
                 downloadDispatcher = new DownloadDispatcher();
@@ -202,11 +245,20 @@ public class OkDownload {
                 downloadStrategy = new DownloadStrategy();
             }
 
+            if (fileSyncService == null) {
+                fileSyncService = new FileSyncService();
+            }
+
+            if (bandwidthThrottle == null) {
+                bandwidthThrottle = new BandwidthThrottle();
+            }
+
             OkDownload okDownload = new OkDownload(context, downloadDispatcher, callbackDispatcher,
                     downloadStore, connectionFactory, outputStreamFactory, processFileStrategy,
-                    downloadStrategy);
+                    downloadStrategy, fileSyncService, bandwidthThrottle);
 
             okDownload.setMonitor(monitor);
+            okDownload.setMetrics(metrics);
 
             Util.d("OkDownload", "downloadStore[" + downloadStore + "] connectionFactory["
                     + connectionFactory);
@@ -20,25 +20,64 @@ import android.os.SystemClock;
 
 import com.download.core.Util;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The calculator of the speed, the bytes are counted by the fetch threads without any lock, and
+ * the speed is the exponentially weighted moving average of the speed of each sample window, so
+ * the older window is weighted less by its age over the half-life.
+ * <p>
+ * The speed is only sampled on it's read, reading the speed sampled recently is only one volatile
+ * read, so it's cheap to be polled by the ui.
+ */
 public class SpeedCalculator {
 
-    long timestamp;
-    long increaseBytes;
+    public static final long DEFAULT_HALF_LIFE_MILLIS = 2000;
+
+    // the window shorter than it isn't sampled by the speed with at least one window.
+    private static final long MIN_SAMPLE_MILLIS = 250;
+    // the first window is sampled after it, to let the speed valid more quick.
+    private static final long FIRST_SAMPLE_MILLIS = 500;
+
+    // the cells are striped by the thread, and each cell is on its own cache line.
+    private static final int CELL_COUNT = 8;
+    private static final int CELL_PADDING = 8;
+
+    private static final Sample EMPTY = new Sample(0, 0, 0, 0, 0, false);
+
+    private final long halfLifeMillis;
 
-    long bytesPerSecond;
+    private final AtomicLong base = new AtomicLong();
+    // created on the first contention of the threads counting the bytes.
+    private final AtomicReference<AtomicLongArray> cells = new AtomicReference<>();
 
-    long beginTimestamp;
-    long endTimestamp;
-    long allIncreaseBytes;
+    private final AtomicLong beginTimestamp = new AtomicLong();
+    private volatile long endTimestamp;
 
-    public synchronized void reset() {
-        timestamp = 0;
-        increaseBytes = 0;
-        bytesPerSecond = 0;
+    private final AtomicReference<Sample> sample = new AtomicReference<>(EMPTY);
+
+    public SpeedCalculator() {
+        this(DEFAULT_HALF_LIFE_MILLIS);
+    }
+
+    /**
+     * @param halfLifeMillis the age of the sample window whose weight on the speed is halved, the
+     *                       smaller one follows the change of the speed quicker and the larger one
+     *                       is smoother.
+     */
+    public SpeedCalculator(long halfLifeMillis) {
+        if (halfLifeMillis <= 0) throw new IllegalArgumentException("half-life must be positive");
+        this.halfLifeMillis = halfLifeMillis;
+    }
 
-        beginTimestamp = 0;
+    public void reset() {
+        base.set(0);
+        cells.set(null);
+        beginTimestamp.set(0);
         endTimestamp = 0;
-        allIncreaseBytes = 0;
+        sample.set(EMPTY);
     }
 
     // convenience for unit test
@@ -46,60 +85,128 @@ public class SpeedCalculator {
         return SystemClock.uptimeMillis();
     }
 
-    public synchronized void downloading(long increaseBytes) {
-        if (timestamp == 0) {
-            this.timestamp = nowMillis();
-            this.beginTimestamp = timestamp;
-        }
+    public void downloading(long increaseBytes) {
+        if (beginTimestamp.get() == 0) begin();
+        if (increaseBytes == 0) return;
+
+        AtomicLongArray cells = this.cells.get();
+        if (cells == null) {
+            final long current = base.get();
+            if (base.compareAndSet(current, current + increaseBytes)) return;
 
-        this.increaseBytes += increaseBytes;
-        this.allIncreaseBytes += increaseBytes;
+            // contended, stripe the following ones.
+            this.cells.compareAndSet(null, new AtomicLongArray(CELL_COUNT * CELL_PADDING));
+            cells = this.cells.get();
+        }
+        final int cellIndex = (int) (Thread.currentThread().getId() & (CELL_COUNT - 1));
+        cells.getAndAdd(cellIndex * CELL_PADDING, increaseBytes);
     }
 
-    public synchronized void flush() {
+    private void begin() {
         final long nowMillis = nowMillis();
-        final long sinceNowIncreaseBytes = increaseBytes;
-        final long durationMillis = Math.max(1, nowMillis - timestamp);
+        if (beginTimestamp.compareAndSet(0, nowMillis)) {
+            sample.compareAndSet(EMPTY, new Sample(nowMillis, 0, 0, 0, 0, false));
+        }
+    }
+
+    private long sumBytes() {
+        long sum = base.get();
+        final AtomicLongArray cells = this.cells.get();
+        if (cells != null) {
+            for (int i = 0; i < CELL_COUNT; i++) {
+                sum += cells.get(i * CELL_PADDING);
+            }
+        }
+        return sum;
+    }
+
+    // sample the window since the last sample if it's not shorter than minWindowMillis.
+    private Sample sample(long nowMillis, long minWindowMillis) {
+        while (true) {
+            final Sample last = sample.get();
+            // not begin yet.
+            if (last.timestamp == 0) return last;
+            if (nowMillis - last.timestamp < minWindowMillis) return last;
 
-        increaseBytes = 0;
-        timestamp = nowMillis;
+            final Sample next = last.next(nowMillis, sumBytes(), halfLifeMillis);
+            if (sample.compareAndSet(last, next)) return next;
+        }
+    }
 
-        // precision loss
-        bytesPerSecond = (long) ((float) sinceNowIncreaseBytes / durationMillis * 1000f);
+    public void flush() {
+        sample(nowMillis(), 0);
     }
 
     /**
      * Get instant bytes per-second.
      */
     public long getInstantBytesPerSecondAndFlush() {
-        flush();
-        return bytesPerSecond;
+        return sample(nowMillis(), 0).instantBytesPerSecond;
+    }
+
+    /**
+     * Get the moving average of bytes per-second, the window since the last sample is sampled if
+     * it's long enough.
+     */
+    public long getBytesPerSecondAndFlush() {
+        final long nowMillis = nowMillis();
+        final Sample last = sample.get();
+        if (!last.valid) {
+            if (nowMillis - last.timestamp < FIRST_SAMPLE_MILLIS) return 0;
+            return (long) sample(nowMillis, 0).bytesPerSecond;
+        }
+
+        return (long) sample(nowMillis, MIN_SAMPLE_MILLIS).bytesPerSecond;
     }
 
     /**
-     * Get bytes per-second and only if duration is greater than or equal to 1 second will flush and
-     * re-calculate speed.
+     * Get the moving average of bytes per-second sampled last time, it never samples, so it's the
+     * cheapest one to be polled.
      */
-    public synchronized long getBytesPerSecondAndFlush() {
-        final long interval = nowMillis() - timestamp;
-        if (interval < 1000 && bytesPerSecond != 0) return bytesPerSecond;
+    public long getBytesPerSecond() {
+        return (long) sample.get().bytesPerSecond;
+    }
 
-        // the first time we using 500 milliseconds to let speed valid more quick
-        if (bytesPerSecond == 0 && interval < 500) return 0;
+    /**
+     * Get the standard deviation of the speed of the sample windows, the larger one means the
+     * speed is less stable.
+     */
+    public long getBytesPerSecondDeviation() {
+        return (long) Math.sqrt(sample.get().variance);
+    }
 
-        return getInstantBytesPerSecondAndFlush();
+    /**
+     * Get the estimated milliseconds to fetch the {@code remainingBytes}. The speed used is the
+     * moving average lowered by its standard error and at most halved, so it's more likely to be
+     * finished before it than after it when the speed is unstable.
+     *
+     * @return {@code -1} if the speed is unknown yet.
+     */
+    public long getEtaMillis(long remainingBytes) {
+        if (remainingBytes <= 0) return 0;
+
+        getBytesPerSecondAndFlush();
+        final Sample sample = this.sample.get();
+        if (!sample.valid || sample.bytesPerSecond <= 0) return -1;
+
+        // the average weights about (2 - alpha) / alpha windows, its error is much less than
+        // the deviation of each window.
+        final double alpha = 1 - Math.pow(0.5, (double) MIN_SAMPLE_MILLIS / halfLifeMillis);
+        final double standardError = Math.sqrt(sample.variance * alpha / (2 - alpha));
+        final double bytesPerSecond = Math.max(sample.bytesPerSecond / 2,
+                sample.bytesPerSecond - standardError);
+        return (long) (remainingBytes * 1000d / bytesPerSecond);
     }
 
-    public synchronized long getBytesPerSecondFromBegin() {
+    public long getBytesPerSecondFromBegin() {
+        final long beginTimestamp = this.beginTimestamp.get();
         final long endTimestamp = this.endTimestamp == 0 ? nowMillis() : this.endTimestamp;
-        final long sinceNowIncreaseBytes = allIncreaseBytes;
         final long durationMillis = Math.max(1, endTimestamp - beginTimestamp);
 
-        // precision loss
-        return (long) ((float) sinceNowIncreaseBytes / durationMillis * 1000f);
+        return sumBytes() * 1000 / durationMillis;
     }
 
-    public synchronized void endTask() {
+    public void endTask() {
         endTimestamp = nowMillis();
     }
 
@@ -111,7 +218,7 @@ public class SpeedCalculator {
     }
 
     /**
-     * Get speed with at least one second duration.
+     * Get the moving average speed.
      */
     public String speed() {
         return humanReadableSpeed(getBytesPerSecondAndFlush(), true);
@@ -121,11 +228,11 @@ public class SpeedCalculator {
      * Get last time calculated speed.
      */
     public String lastSpeed() {
-        return humanReadableSpeed(bytesPerSecond, true);
+        return humanReadableSpeed(getBytesPerSecond(), true);
     }
 
-    public synchronized long getInstantSpeedDurationMillis() {
-        return nowMillis() - timestamp;
+    public long getInstantSpeedDurationMillis() {
+        return nowMillis() - sample.get().timestamp;
     }
 
 
@@ -160,4 +267,42 @@ public class SpeedCalculator {
     private static String humanReadableSpeed(long bytes, boolean si) {
         return Util.humanReadableBytes(bytes, si) + "/s";
     }
+
+    private static final class Sample {
+        final long timestamp;
+        // the bytes counted until this sample.
+        final long totalBytes;
+        // the speed of the window ended on this sample.
+        final long instantBytesPerSecond;
+        final double bytesPerSecond;
+        final double variance;
+        // whether there is any window sampled.
+        final boolean valid;
+
+        Sample(long timestamp, long totalBytes, long instantBytesPerSecond,
+               double bytesPerSecond, double variance, boolean valid) {
+            this.timestamp = timestamp;
+            this.totalBytes = totalBytes;
+            this.instantBytesPerSecond = instantBytesPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.variance = variance;
+            this.valid = valid;
+        }
+
+        Sample next(long nowMillis, long totalBytes, long halfLifeMillis) {
+            final long durationMillis = Math.max(1, nowMillis - timestamp);
+            final long instant = (totalBytes - this.totalBytes) * 1000 / durationMillis;
+            if (!valid) {
+                return new Sample(nowMillis, totalBytes, instant, instant, 0, true);
+            }
+
+            // the weight of the window is by its duration, so the result is irrelevant to how
+            // often it's sampled.
+            final double alpha = 1 - Math.pow(0.5, (double) durationMillis / halfLifeMillis);
+            final double diff = instant - bytesPerSecond;
+            final double average = bytesPerSecond + alpha * diff;
+            final double variance = (1 - alpha) * (this.variance + alpha * diff * diff);
+            return new Sample(nowMillis, totalBytes, instant, average, variance, true);
+        }
+    }
 }
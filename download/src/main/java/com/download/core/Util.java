@@ -346,6 +346,11 @@ public class Util {
         return uri.getScheme().equals(ContentResolver.SCHEME_FILE);
     }
 
+    @Nullable public static String getHost(@NonNull String url) {
+        final Uri uri = Uri.parse(url);
+        return uri == null ? null : uri.getHost();
+    }
+
     @Nullable public static String getFilenameFromContentUri(@NonNull Uri contentUri) {
         final ContentResolver resolver = OkDownload.with().context().getContentResolver();
         final Cursor cursor = resolver.query(contentUri, null, null, null, null);
@@ -26,8 +26,9 @@ import static com.download.core.Util.CHUNKED_CONTENT_LENGTH;
 public class BlockInfo {
     @IntRange(from = 0)
     private final long startOffset;
+    // it can be shrunk when the tail of this block is split to another block.
     @IntRange(from = 0)
-    private final long contentLength;
+    private volatile long contentLength;
     private final AtomicLong currentOffset;
 
     public BlockInfo(long startOffset, long contentLength) {
@@ -69,6 +70,21 @@ public class BlockInfo {
         this.currentOffset.addAndGet(increaseLength);
     }
 
+    /**
+     * Shrink the content length of this block, the range after the new content length is taken
+     * by another block.
+     *
+     * @param newContentLength the new content length which must not greater than the current one
+     *                         and not less than the current offset.
+     */
+    public void shrinkContentLength(@IntRange(from = 0) long newContentLength) {
+        if (newContentLength > contentLength || newContentLength < currentOffset.get()) {
+            throw new IllegalArgumentException("Can't shrink " + this + " to " + newContentLength);
+        }
+
+        this.contentLength = newContentLength;
+    }
+
     public void resetBlock() {
         this.currentOffset.set(0);
     }
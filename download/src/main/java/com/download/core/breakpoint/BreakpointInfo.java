@@ -24,8 +24,8 @@ import com.download.core.Util;
 import com.download.core.download.DownloadStrategy;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class BreakpointInfo {
     public  final int id;
@@ -36,6 +36,8 @@ public class BreakpointInfo {
     @Nullable private File targetFile;
     private final DownloadStrategy.FilenameHolder filenameHolder;
 
+    // the tail block may be split by a chain while the others read the blocks, so each read
+    // works on a snapshot of the list.
     private final List<BlockInfo> blockInfoList;
     private final boolean taskOnlyProvidedParentPath;
     private boolean chunked;
@@ -45,7 +47,7 @@ public class BreakpointInfo {
         this.id = id;
         this.url = url;
         this.parentFile = parentFile;
-        this.blockInfoList = new ArrayList<>();
+        this.blockInfoList = new CopyOnWriteArrayList<>();
 
         if (Util.isEmpty(filename)) {
             filenameHolder = new DownloadStrategy.FilenameHolder();
@@ -62,7 +64,7 @@ public class BreakpointInfo {
         this.id = id;
         this.url = url;
         this.parentFile = parentFile;
-        this.blockInfoList = new ArrayList<>();
+        this.blockInfoList = new CopyOnWriteArrayList<>();
 
         if (Util.isEmpty(filename)) {
             filenameHolder = new DownloadStrategy.FilenameHolder();
@@ -124,11 +126,7 @@ public class BreakpointInfo {
 
     public long getTotalOffset() {
         long offset = 0;
-        ArrayList<BlockInfo> list = (ArrayList<BlockInfo>) ((ArrayList) blockInfoList).clone();
-
-        final int count = list.size();
-        for (int i = 0; i < count; i++) {
-            final BlockInfo info = list.get(i);
+        for (BlockInfo info : blockInfoList) {
             offset += info.getCurrentOffset();
         }
         return offset;
@@ -138,8 +136,7 @@ public class BreakpointInfo {
         if (isChunked()) return getTotalOffset();
 
         long length = 0;
-        ArrayList<BlockInfo> list = (ArrayList<BlockInfo>) ((ArrayList) blockInfoList).clone();
-        for (BlockInfo info : list) {
+        for (BlockInfo info : blockInfoList) {
             length += info.getContentLength();
         }
 
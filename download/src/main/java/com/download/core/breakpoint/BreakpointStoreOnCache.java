@@ -26,60 +26,96 @@ import com.download.core.cause.EndCause;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
 public class BreakpointStoreOnCache implements DownloadStore {
-    private final SparseArray<BreakpointInfo> storedInfos;
+    private final IntObjectMap<BreakpointInfo> storedInfos;
     private final HashMap<String, String> responseFilenameMap;
 
     @NonNull private final KeyToIdMap keyToIdMap;
 
-    private final SparseArray<IdentifiedTask> unStoredTasks;
-    private final List<Integer> sortedOccupiedIds;
-    private final List<Integer> fileDirtyList;
+    private final IntObjectMap<IdentifiedTask> unStoredTasks;
+    // the stored infos and the unstored tasks occupy their ids.
+    private final IdAllocator idAllocator;
+    private final IntObjectMap<Boolean> fileDirtyIds;
+
+    @Nullable private final BlockLoader blockLoader;
+    // the ids of the infos whose blocks haven't been loaded by the blockLoader yet.
+    @NonNull private final IntObjectMap<Boolean> blocksUnloadedIds = new IntObjectMap<>();
+    // the ids of the stored infos and the unstored tasks with the same url, to find the one same
+    // from the task.
+    @NonNull private final HashMap<String, List<Integer>> urlInfoIds = new HashMap<>();
+    @NonNull private final HashMap<String, List<Integer>> urlUnStoredIds = new HashMap<>();
 
     public BreakpointStoreOnCache() {
         this(new SparseArray<BreakpointInfo>(), new ArrayList<Integer>(),
                 new HashMap<String, String>());
     }
 
-    BreakpointStoreOnCache(SparseArray<BreakpointInfo> storedInfos,
-                           List<Integer> fileDirtyList,
+    BreakpointStoreOnCache(IntObjectMap<BreakpointInfo> storedInfos,
+                           IntObjectMap<Boolean> fileDirtyIds,
                            HashMap<String, String> responseFilenameMap,
-                           SparseArray<IdentifiedTask> unStoredTasks,
-                           List<Integer> sortedOccupiedIds,
+                           IntObjectMap<IdentifiedTask> unStoredTasks,
+                           IdAllocator idAllocator,
                            KeyToIdMap keyToIdMap) {
         this.unStoredTasks = unStoredTasks;
-        this.fileDirtyList = fileDirtyList;
+        this.fileDirtyIds = fileDirtyIds;
         this.storedInfos = storedInfos;
         this.responseFilenameMap = responseFilenameMap;
-        this.sortedOccupiedIds = sortedOccupiedIds;
+        this.idAllocator = idAllocator;
         this.keyToIdMap = keyToIdMap;
+        this.blockLoader = null;
+        for (BreakpointInfo info : storedInfos.values()) {
+            indexUrl(urlInfoIds, info.getUrl(), info.id);
+        }
+        for (IdentifiedTask task : unStoredTasks.values()) {
+            indexUrl(urlUnStoredIds, task.getUrl(), task.getId());
+        }
     }
 
     public BreakpointStoreOnCache(SparseArray<BreakpointInfo> storedInfos,
                                   List<Integer> fileDirtyList,
                                   HashMap<String, String> responseFilenameMap) {
-        this.unStoredTasks = new SparseArray<>();
-        this.storedInfos = storedInfos;
-        this.fileDirtyList = fileDirtyList;
+        this(storedInfos, fileDirtyList, responseFilenameMap, null);
+    }
+
+    /**
+     * @param storedInfos the infos without blocks if the {@code blockLoader} is provided, and
+     *                    their blocks are loaded by the {@code blockLoader} on they are first
+     *                    got.
+     */
+    public BreakpointStoreOnCache(SparseArray<BreakpointInfo> storedInfos,
+                                  List<Integer> fileDirtyList,
+                                  HashMap<String, String> responseFilenameMap,
+                                  @Nullable BlockLoader blockLoader) {
+        this.unStoredTasks = new IntObjectMap<>();
         this.responseFilenameMap = responseFilenameMap;
         this.keyToIdMap = new KeyToIdMap();
+        this.blockLoader = blockLoader;
 
         final int count = storedInfos.size();
-
-        sortedOccupiedIds = new ArrayList<>(count);
+        this.storedInfos = new IntObjectMap<>(count);
+        this.idAllocator = new IdAllocator(FIRST_ID);
         for (int i = 0; i < count; i++) {
-            sortedOccupiedIds.add(storedInfos.valueAt(i).id);
+            final BreakpointInfo info = storedInfos.valueAt(i);
+            this.storedInfos.put(info.id, info);
+            idAllocator.occupy(info.id);
+            indexUrl(urlInfoIds, info.getUrl(), info.id);
+            if (blockLoader != null) blocksUnloadedIds.put(info.id, Boolean.TRUE);
+        }
+
+        this.fileDirtyIds = new IntObjectMap<>(fileDirtyList.size());
+        for (Integer id : fileDirtyList) {
+            fileDirtyIds.put(id, Boolean.TRUE);
         }
-        Collections.sort(sortedOccupiedIds);
     }
 
     @Override
     public BreakpointInfo get(int id) {
-        return storedInfos.get(id);
+        final BreakpointInfo info = storedInfos.get(id);
+        if (info != null) ensureBlocksLoaded(info);
+        return info;
     }
 
     @NonNull @Override
@@ -89,8 +125,9 @@ public class BreakpointStoreOnCache implements DownloadStore {
         BreakpointInfo newInfo = new BreakpointInfo(id, task.getUrl(), task.getParentFile(),
                 task.getFilename());
         synchronized (this) {
-            storedInfos.put(id, newInfo);
-            unStoredTasks.remove(id);
+            putInfo(newInfo);
+            final IdentifiedTask unStoredTask = unStoredTasks.remove(id);
+            if (unStoredTask != null) unindexUrl(urlUnStoredIds, unStoredTask.getUrl(), id);
         }
         return newInfo;
     }
@@ -121,7 +158,7 @@ public class BreakpointStoreOnCache implements DownloadStore {
 
             // replace
             synchronized (this) {
-                this.storedInfos.put(breakpointInfo.id, breakpointInfo.copy());
+                putInfo(breakpointInfo.copy());
             }
             return true;
         }
@@ -143,29 +180,21 @@ public class BreakpointStoreOnCache implements DownloadStore {
 
     @Override
     public boolean markFileDirty(int id) {
-        if (!fileDirtyList.contains(id)) {
-            synchronized (fileDirtyList) {
-                if (!fileDirtyList.contains(id)) {
-                    fileDirtyList.add(id);
-                    return true;
-                }
-            }
-        }
-        return false;
+        return fileDirtyIds.putIfAbsent(id, Boolean.TRUE) == null;
     }
 
     @Override
     public boolean markFileClear(int id) {
-        synchronized (fileDirtyList) {
-            return fileDirtyList.remove(Integer.valueOf(id));
-        }
+        return fileDirtyIds.remove(id) != null;
     }
 
     @Override
     public synchronized void remove(int id) {
-        storedInfos.remove(id);
-        if (unStoredTasks.get(id) == null) sortedOccupiedIds.remove(Integer.valueOf(id));
+        final BreakpointInfo info = storedInfos.remove(id);
+        if (info != null) unindexUrl(urlInfoIds, info.getUrl(), id);
+        if (unStoredTasks.get(id) == null) idAllocator.release(id);
         keyToIdMap.remove(id);
+        blocksUnloadedIds.remove(id);
     }
 
     @Override
@@ -173,23 +202,28 @@ public class BreakpointStoreOnCache implements DownloadStore {
         final Integer candidate = keyToIdMap.get(task);
         if (candidate != null) return candidate;
 
-        final int size = storedInfos.size();
-        for (int i = 0; i < size; i++) {
-            final BreakpointInfo info = storedInfos.valueAt(i);
-            if (info != null && info.isSameFrom(task)) {
-                return info.id;
+        final List<Integer> sameUrlIds = urlInfoIds.get(task.getUrl());
+        if (sameUrlIds != null) {
+            for (Integer sameUrlId : sameUrlIds) {
+                final BreakpointInfo info = storedInfos.get(sameUrlId);
+                if (info != null && info.isSameFrom(task)) {
+                    return info.id;
+                }
             }
         }
 
-        final int unStoredSize = unStoredTasks.size();
-        for (int i = 0; i < unStoredSize; i++) {
-            final IdentifiedTask another = unStoredTasks.valueAt(i);
-            if (another == null) continue;
-            if (another.compareIgnoreId(task)) return another.getId();
+        final List<Integer> sameUrlUnStoredIds = urlUnStoredIds.get(task.getUrl());
+        if (sameUrlUnStoredIds != null) {
+            for (Integer sameUrlId : sameUrlUnStoredIds) {
+                final IdentifiedTask another = unStoredTasks.get(sameUrlId);
+                if (another == null) continue;
+                if (another.compareIgnoreId(task)) return another.getId();
+            }
         }
 
         final int id = allocateId();
         unStoredTasks.put(id, task.mock(id));
+        indexUrl(urlUnStoredIds, task.getUrl(), id);
         keyToIdMap.add(task, id);
         return id;
     }
@@ -198,16 +232,20 @@ public class BreakpointStoreOnCache implements DownloadStore {
     @Override
     public BreakpointInfo findAnotherInfoFromCompare(@NonNull DownloadTask task,
                                                      @NonNull BreakpointInfo ignored) {
-        final SparseArray<BreakpointInfo> clonedMap;
+        final List<BreakpointInfo> sameUrlInfos = new ArrayList<>();
         synchronized (this) {
-            clonedMap = storedInfos.clone();
+            final List<Integer> sameUrlIds = urlInfoIds.get(task.getUrl());
+            if (sameUrlIds != null) {
+                for (Integer sameUrlId : sameUrlIds) {
+                    sameUrlInfos.add(storedInfos.get(sameUrlId));
+                }
+            }
         }
-        final int size = clonedMap.size();
-        for (int i = 0; i < size; i++) {
-            final BreakpointInfo info = clonedMap.valueAt(i);
+        for (BreakpointInfo info : sameUrlInfos) {
             if (info == ignored) continue;
 
             if (info.isSameFrom(task)) {
+                ensureBlocksLoaded(info);
                 return info;
             }
         }
@@ -215,6 +253,48 @@ public class BreakpointStoreOnCache implements DownloadStore {
         return null;
     }
 
+    private void putInfo(@NonNull BreakpointInfo info) {
+        final BreakpointInfo replaced = storedInfos.put(info.id, info);
+        if (replaced != null) unindexUrl(urlInfoIds, replaced.getUrl(), replaced.id);
+
+        indexUrl(urlInfoIds, info.getUrl(), info.id);
+        blocksUnloadedIds.remove(info.id);
+    }
+
+    private static void indexUrl(@NonNull HashMap<String, List<Integer>> urlIds,
+                                 @NonNull String url, int id) {
+        List<Integer> ids = urlIds.get(url);
+        if (ids == null) {
+            // most urls are only for one info.
+            ids = new ArrayList<>(1);
+            urlIds.put(url, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void unindexUrl(@NonNull HashMap<String, List<Integer>> urlIds,
+                                   @NonNull String url, int id) {
+        final List<Integer> ids = urlIds.get(url);
+        if (ids == null) return;
+
+        ids.remove(Integer.valueOf(id));
+        if (ids.isEmpty()) urlIds.remove(url);
+    }
+
+    private void ensureBlocksLoaded(@NonNull BreakpointInfo info) {
+        if (blockLoader == null || !blocksUnloadedIds.containsKey(info.id)) return;
+
+        synchronized (this) {
+            // the info may be replaced or removed meanwhile.
+            if (storedInfos.get(info.id) != info || !blocksUnloadedIds.containsKey(info.id)) {
+                return;
+            }
+
+            blockLoader.loadBlocks(info);
+            blocksUnloadedIds.remove(info.id);
+        }
+    }
+
     @Override
     public boolean isOnlyMemoryCache() {
         return true;
@@ -222,7 +302,7 @@ public class BreakpointStoreOnCache implements DownloadStore {
 
     @Override
     public boolean isFileDirty(int id) {
-        return fileDirtyList.contains(id);
+        return fileDirtyIds.containsKey(id);
     }
 
     @Nullable @Override
@@ -230,55 +310,19 @@ public class BreakpointStoreOnCache implements DownloadStore {
         return responseFilenameMap.get(url);
     }
 
+    /**
+     * The loader of the blocks for the info which is provided without blocks on startup.
+     */
+    public interface BlockLoader {
+        /**
+         * Load and add the blocks to the {@code info}.
+         */
+        void loadBlocks(@NonNull BreakpointInfo info);
+    }
+
     public static final int FIRST_ID = 1;
 
     synchronized int allocateId() {
-        int newId = 0;
-
-        int index = 0;
-
-        int preId = 0;
-        int curId;
-
-        for (int i = 0; i < sortedOccupiedIds.size(); i++) {
-            final Integer curIdObj = sortedOccupiedIds.get(i);
-            if (curIdObj == null) {
-                index = i;
-                newId = preId + 1;
-                break;
-            }
-
-            curId = curIdObj;
-            if (preId == 0) {
-                if (curId != FIRST_ID) {
-                    newId = FIRST_ID;
-                    index = 0;
-                    break;
-                }
-                preId = curId;
-                continue;
-            }
-
-            if (curId != preId + 1) {
-                newId = preId + 1;
-                index = i;
-                break;
-            }
-
-            preId = curId;
-        }
-
-        if (newId == 0) {
-            if (sortedOccupiedIds.isEmpty()) {
-                newId = FIRST_ID;
-            } else {
-                newId = sortedOccupiedIds.get(sortedOccupiedIds.size() - 1) + 1;
-                index = sortedOccupiedIds.size();
-            }
-        }
-
-        sortedOccupiedIds.add(index, newId);
-
-        return newId;
+        return idAllocator.allocate();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.breakpoint;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Allocate the smallest free id from the first id, the free ids are kept as the sorted ranges, so
+ * allocating, occupying and releasing are O(log n) of the ranges count.
+ * <p>
+ * It isn't thread safe, the owner must guard it.
+ */
+class IdAllocator {
+
+    private final int firstId;
+    // the start to the end (inclusive) of each free range.
+    private final TreeMap<Integer, Integer> freeRanges = new TreeMap<>();
+
+    IdAllocator(int firstId) {
+        this.firstId = firstId;
+        freeRanges.put(firstId, Integer.MAX_VALUE);
+    }
+
+    int allocate() {
+        final Map.Entry<Integer, Integer> first = freeRanges.pollFirstEntry();
+        if (first == null) throw new IllegalStateException("No more id can be allocated!");
+
+        final int id = first.getKey();
+        if (id < first.getValue()) freeRanges.put(id + 1, first.getValue());
+        return id;
+    }
+
+    /**
+     * Mark the {@code id} is occupied.
+     *
+     * @return {@code false} if the {@code id} has been occupied already.
+     */
+    boolean occupy(int id) {
+        final Map.Entry<Integer, Integer> range = freeRanges.floorEntry(id);
+        if (range == null || range.getValue() < id) return false;
+
+        final int start = range.getKey();
+        final int end = range.getValue();
+        freeRanges.remove(start);
+        if (start < id) freeRanges.put(start, id - 1);
+        if (id < end) freeRanges.put(id + 1, end);
+        return true;
+    }
+
+    /**
+     * Release the {@code id} to be allocated again.
+     */
+    void release(int id) {
+        if (id < firstId || !isOccupied(id)) return;
+
+        int start = id;
+        int end = id;
+        final Map.Entry<Integer, Integer> lower = freeRanges.lowerEntry(id);
+        if (lower != null && lower.getValue() == id - 1) {
+            start = lower.getKey();
+            freeRanges.remove(start);
+        }
+        final Map.Entry<Integer, Integer> higher = freeRanges.higherEntry(id);
+        if (higher != null && higher.getKey() == id + 1) {
+            end = higher.getValue();
+            freeRanges.remove(higher.getKey());
+        }
+        freeRanges.put(start, end);
+    }
+
+    boolean isOccupied(int id) {
+        if (id < firstId) return false;
+
+        final Map.Entry<Integer, Integer> range = freeRanges.floorEntry(id);
+        return range == null || range.getValue() < id;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.breakpoint;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The int keyed map with the open addressing and the linear probing, the reading is lock-free and
+ * the writing is synchronized.
+ * <p>
+ * The value of the slot is published after its key, and the slot is never reused by another key
+ * until the table is rebuilt, so the reader can't see the value with the wrong key. The table is
+ * rebuilt to a new one and then published when the used slots are more than the half of it.
+ */
+public class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    // the value of the slot whose key has been removed.
+    private static final Object REMOVED = new Object();
+
+    private volatile Table table;
+    private volatile int size;
+    // the slots are used by the keys include the removed ones.
+    private int usedSlots;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    @Nullable public V get(int key) {
+        final Table table = this.table;
+        int index = indexOf(key, table.mask);
+        while (true) {
+            // read the value first, the key of the used slot is visible after it.
+            final Object value = table.values.get(index);
+            if (value == null) return null;
+            if (table.keys[index] == key) {
+                return value == REMOVED ? null : IntObjectMap.<V>cast(value);
+            }
+
+            index = (index + 1) & table.mask;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value of the {@code key}.
+     */
+    @Nullable public synchronized V put(int key, @NonNull V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * @return the current value of the {@code key} if it exists, otherwise {@code null} and the
+     * {@code value} is put.
+     */
+    @Nullable public synchronized V putIfAbsent(int key, @NonNull V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * @return the removed value of the {@code key}.
+     */
+    @Nullable public synchronized V remove(int key) {
+        final Table table = this.table;
+        int index = indexOf(key, table.mask);
+        while (true) {
+            final Object current = table.values.get(index);
+            if (current == null) return null;
+            if (table.keys[index] == key) {
+                if (current == REMOVED) return null;
+
+                table.values.set(index, REMOVED);
+                size--;
+                return cast(current);
+            }
+
+            index = (index + 1) & table.mask;
+        }
+    }
+
+    public synchronized void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+        usedSlots = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the snapshot of the values.
+     */
+    @NonNull public List<V> values() {
+        final Table table = this.table;
+        final List<V> values = new ArrayList<>(size);
+        final int length = table.values.length();
+        for (int i = 0; i < length; i++) {
+            final Object value = table.values.get(i);
+            if (value != null && value != REMOVED) values.add(IntObjectMap.<V>cast(value));
+        }
+        return values;
+    }
+
+    private V put(int key, @NonNull V value, boolean onlyIfAbsent) {
+        final Table table = this.table;
+        int index = indexOf(key, table.mask);
+        while (true) {
+            final Object current = table.values.get(index);
+            if (current == null) break;
+            if (table.keys[index] == key) {
+                if (current == REMOVED) {
+                    size++;
+                } else if (onlyIfAbsent) {
+                    return cast(current);
+                }
+                table.values.set(index, value);
+                return current == REMOVED ? null : IntObjectMap.<V>cast(current);
+            }
+
+            index = (index + 1) & table.mask;
+        }
+
+        table.keys[index] = key;
+        table.values.set(index, value);
+        size++;
+        usedSlots++;
+        if (usedSlots * 2 > table.values.length()) rebuild();
+        return null;
+    }
+
+    private void rebuild() {
+        final Table oldTable = this.table;
+        final Table newTable = new Table(capacityFor(size));
+        final int length = oldTable.values.length();
+        for (int i = 0; i < length; i++) {
+            final Object value = oldTable.values.get(i);
+            if (value == null || value == REMOVED) continue;
+
+            final int key = oldTable.keys[i];
+            int index = indexOf(key, newTable.mask);
+            while (newTable.values.get(index) != null) index = (index + 1) & newTable.mask;
+            newTable.keys[index] = key;
+            newTable.values.set(index, value);
+        }
+
+        usedSlots = size;
+        this.table = newTable;
+    }
+
+    // keep the used slots less than a quarter after rebuilding.
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 4) capacity <<= 1;
+        return capacity;
+    }
+
+    private static int indexOf(int key, int mask) {
+        final int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+
+    private static class Table {
+        final int[] keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+}
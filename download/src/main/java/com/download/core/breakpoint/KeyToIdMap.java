@@ -16,9 +16,9 @@
 
 package com.download.core.breakpoint;
 
+import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.SparseArray;
 
 import com.download.DownloadTask;
 
@@ -27,15 +27,15 @@ import java.util.HashMap;
 public class KeyToIdMap {
 
     @SuppressWarnings("PMD.AvoidFieldNameMatchingTypeName")
-    @NonNull private final HashMap<String, Integer> keyToIdMap;
-    @NonNull private final SparseArray<String> idToKeyMap;
+    @NonNull private final HashMap<TaskKey, Integer> keyToIdMap;
+    @NonNull private final IntObjectMap<TaskKey> idToKeyMap;
 
     KeyToIdMap() {
-        this(new HashMap<String, Integer>(), new SparseArray<String>());
+        this(new HashMap<TaskKey, Integer>(), new IntObjectMap<TaskKey>());
     }
 
-    KeyToIdMap(@NonNull HashMap<String, Integer> keyToIdMap,
-               @NonNull SparseArray<String> idToKeyMap) {
+    KeyToIdMap(@NonNull HashMap<TaskKey, Integer> keyToIdMap,
+               @NonNull IntObjectMap<TaskKey> idToKeyMap) {
         this.keyToIdMap = keyToIdMap;
         this.idToKeyMap = idToKeyMap;
     }
@@ -47,20 +47,57 @@ public class KeyToIdMap {
     }
 
     public void remove(int id) {
-        final String key = idToKeyMap.get(id);
-        if (key != null) {
-            keyToIdMap.remove(key);
-            idToKeyMap.remove(id);
-        }
+        final TaskKey key = idToKeyMap.remove(id);
+        if (key != null) keyToIdMap.remove(key);
     }
 
     public void add(@NonNull DownloadTask task, int id) {
-        final String key = generateKey(task);
+        final TaskKey key = generateKey(task);
         keyToIdMap.put(key, id);
         idToKeyMap.put(id, key);
     }
 
-    String generateKey(@NonNull DownloadTask task) {
-        return task.getUrl() + task.getUri() + task.getFilename();
+    TaskKey generateKey(@NonNull DownloadTask task) {
+        return new TaskKey(task.getUrl(), task.getUri(), task.getFilename());
+    }
+
+    /**
+     * The key of the task from its url, uri and filename, the hash is computed once from the
+     * cached hashes of them rather than concatenating them to a new string for each lookup.
+     */
+    static class TaskKey {
+        @NonNull final String url;
+        @NonNull final Uri uri;
+        @Nullable final String filename;
+        private final int hash;
+
+        TaskKey(@NonNull String url, @NonNull Uri uri, @Nullable String filename) {
+            this.url = url;
+            this.uri = uri;
+            this.filename = filename;
+
+            int hash = url.hashCode();
+            hash = 31 * hash + uri.hashCode();
+            hash = 31 * hash + (filename == null ? 0 : filename.hashCode());
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TaskKey)) return false;
+
+            final TaskKey another = (TaskKey) o;
+            return hash == another.hash
+                    && url.equals(another.url)
+                    && uri.equals(another.uri)
+                    && (filename == null
+                    ? another.filename == null : filename.equals(another.filename));
+        }
     }
 }
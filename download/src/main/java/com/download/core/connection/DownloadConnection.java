@@ -26,6 +26,8 @@ import java.net.URLConnection;
 import java.util.List;
 import java.util.Map;
 
+import okio.BufferedSource;
+
 public interface DownloadConnection {
 
     int NO_RESPONSE_CODE = 0;
@@ -105,7 +107,28 @@ public interface DownloadConnection {
         String getRedirectLocation();
     }
 
+    /**
+     * The optional extension of {@link Connected}, the connection which implements it provides
+     * the response body as the okio source, so the data can be drained segment by segment
+     * without copying through an intermediate buffer.
+     */
+    interface SourceConnected {
+        @NonNull BufferedSource getSource() throws IOException;
+    }
+
     interface Factory {
         DownloadConnection create(String url) throws IOException;
     }
+
+    /**
+     * The optional extension of {@link Factory}, the factory which implements it connects to the
+     * host of the task in advance, so the task queued doesn't pay for the handshake when it
+     * starts.
+     */
+    interface Prewarmer {
+        /**
+         * Connect to the host of the {@code url} in advance, it must not block the caller.
+         */
+        void prewarm(@NonNull String url);
+    }
 }
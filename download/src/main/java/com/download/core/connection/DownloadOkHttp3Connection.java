@@ -30,8 +30,10 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
-public class DownloadOkHttp3Connection implements DownloadConnection, DownloadConnection.Connected {
+public class DownloadOkHttp3Connection implements DownloadConnection, DownloadConnection.Connected,
+        DownloadConnection.SourceConnected {
     @NonNull final OkHttpClient client;
     @NonNull private final Request.Builder requestBuilder;
 
@@ -99,6 +101,14 @@ public class DownloadOkHttp3Connection implements DownloadConnection, DownloadCo
         return body.byteStream();
     }
 
+    @NonNull @Override
+    public BufferedSource getSource() throws IOException {
+        if (response == null) throw new IOException("Please invoke execute first!");
+        final ResponseBody body = response.body();
+        if (body == null) throw new IOException("no body found on response!");
+        return body.source();
+    }
+
     @Override
     public boolean setRequestMethod(@NonNull String method) throws ProtocolException {
         this.requestBuilder.method(method, null);
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.connection;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.OkDownload;
+import com.download.core.Util;
+import com.download.core.metrics.DownloadMetrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The factory of the {@link DownloadOkHttp3Connection} which shares one tuned
+ * {@link OkHttpClient} across all tasks.
+ * <p>
+ * The HTTP/2 is preferred, so the range requests of the blocks to the same host are multiplexed
+ * over one connection and only one handshake is paid. The host of the task queued is connected in
+ * advance through {@link #prewarm(String)}.
+ */
+public class SharedOkHttp3ConnectionFactory implements DownloadConnection.Factory,
+        DownloadConnection.Prewarmer {
+
+    private static final String TAG = "SharedOkHttp3Factory";
+
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    @NonNull private final OkHttpClient client;
+    private final long keepAliveMillis;
+
+    // the host -> the last time it's prewarmed.
+    private final Map<String, Long> prewarmedHosts = new HashMap<>();
+
+    // the live connections -> their statistics.
+    private final Map<Connection, ConnectionStatistics> connectionStatistics =
+            new WeakHashMap<>();
+    private long connectedCount;
+    private long acquiredCount;
+    private long prewarmCount;
+
+    /**
+     * Create the factory with its own client, whose idle connections are kept longer than the
+     * default one for the tasks started later.
+     */
+    public SharedOkHttp3ConnectionFactory() {
+        this(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                        TimeUnit.MINUTES)), TimeUnit.MINUTES.toMillis(KEEP_ALIVE_MINUTES));
+    }
+
+    /**
+     * @param client the client to share the connection pool and the dispatcher with, such as
+     *               the one of the application, its connection pool is assumed to keep the idle
+     *               connections for the default 5 minutes.
+     */
+    public SharedOkHttp3ConnectionFactory(@NonNull OkHttpClient client) {
+        this(client.newBuilder(), TimeUnit.MINUTES.toMillis(KEEP_ALIVE_MINUTES));
+    }
+
+    /**
+     * @param builder         the builder of the client, its connection pool is kept, and its event
+     *                        listener still receives all events.
+     * @param keepAliveMillis the keep-alive duration of the connection pool, the host is
+     *                        prewarmed again after it.
+     */
+    public SharedOkHttp3ConnectionFactory(@NonNull OkHttpClient.Builder builder,
+                                          long keepAliveMillis) {
+        final OkHttpClient tunedClient = builder
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(true)
+                .build();
+        // the builder doesn't expose its event listener factory, so take it from the client.
+        final EventListener.Factory listenerFactory = tunedClient.eventListenerFactory();
+        this.client = tunedClient.newBuilder()
+                .eventListenerFactory(new EventListener.Factory() {
+                    @Override
+                    public EventListener create(Call call) {
+                        return new StatisticsListener(listenerFactory.create(call));
+                    }
+                })
+                .build();
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    @NonNull public OkHttpClient client() {
+        return client;
+    }
+
+    @Override
+    public DownloadConnection create(String url) throws IOException {
+        return new DownloadOkHttp3Connection(client, url);
+    }
+
+    @Override
+    public void prewarm(@NonNull String url) {
+        final HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) return;
+
+        final String host = httpUrl.scheme() + "://" + httpUrl.host() + ":" + httpUrl.port();
+        final long nowMillis = SystemClock.uptimeMillis();
+        synchronized (prewarmedHosts) {
+            final Long prewarmedMillis = prewarmedHosts.get(host);
+            if (prewarmedMillis != null && nowMillis - prewarmedMillis < keepAliveMillis) return;
+            prewarmedHosts.put(host, nowMillis);
+        }
+
+        synchronized (this) {
+            prewarmCount++;
+        }
+        Util.d(TAG, "prewarm " + host);
+        // the connection is kept on the pool after the response is closed.
+        final Request request = new Request.Builder().url(url).head().build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Util.d(TAG, "prewarm " + call.request().url() + " failed " + e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * Get the count of the connections have been established.
+     */
+    public synchronized long getConnectedCount() {
+        return connectedCount;
+    }
+
+    /**
+     * Get the count of the connections have been acquired by the requests, the ones more than the
+     * {@link #getConnectedCount()} are reused.
+     */
+    public synchronized long getAcquiredCount() {
+        return acquiredCount;
+    }
+
+    public synchronized long getPrewarmCount() {
+        return prewarmCount;
+    }
+
+    /**
+     * Get the snapshot of the statistics of the live connections.
+     */
+    @NonNull public synchronized List<ConnectionStatistics> getConnectionStatistics() {
+        final List<ConnectionStatistics> statistics = new ArrayList<>(
+                connectionStatistics.size());
+        for (ConnectionStatistics stat : connectionStatistics.values()) {
+            statistics.add(stat.copy());
+        }
+        return statistics;
+    }
+
+    private synchronized void onConnected() {
+        connectedCount++;
+    }
+
+    private synchronized void onAcquired(@NonNull Connection connection) {
+        acquiredCount++;
+        ConnectionStatistics stat = connectionStatistics.get(connection);
+        if (stat == null) {
+            final HttpUrl url = connection.route().address().url();
+            stat = new ConnectionStatistics(url.host(), url.port(), connection.protocol());
+            connectionStatistics.put(connection, stat);
+        }
+        stat.acquiredCount++;
+    }
+
+    // one for each call, the events are delegated to the listener of the client provided.
+    private class StatisticsListener extends EventListener {
+        @NonNull private final EventListener delegate;
+        private long dnsStartNanos;
+        private long connectStartNanos;
+
+        StatisticsListener(@NonNull EventListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            delegate.callStart(call);
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStartNanos = System.nanoTime();
+            delegate.dnsStart(call, domainName);
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            delegate.dnsEnd(call, domainName, inetAddressList);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStartNanos = System.nanoTime();
+            delegate.connectStart(call, inetSocketAddress, proxy);
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            delegate.secureConnectStart(call);
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            delegate.secureConnectEnd(call, handshake);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                               @Nullable Protocol protocol) {
+            onConnected();
+            delegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+
+            final DownloadMetrics metrics = OkDownload.with().getMetrics();
+            if (metrics == null) return;
+            // the host may be resolved before, such as connecting to another route of it.
+            final long startNanos = dnsStartNanos != 0 ? dnsStartNanos : connectStartNanos;
+            metrics.recordSince(DownloadMetrics.Metric.CONNECT, startNanos);
+            dnsStartNanos = 0;
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  @Nullable Protocol protocol, IOException ioe) {
+            delegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            onAcquired(connection);
+            delegate.connectionAcquired(call, connection);
+        }
+
+        @Override
+        public void connectionReleased(Call call, Connection connection) {
+            delegate.connectionReleased(call, connection);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            delegate.requestHeadersStart(call);
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            delegate.requestHeadersEnd(call, request);
+        }
+
+        @Override
+        public void requestBodyStart(Call call) {
+            delegate.requestBodyStart(call);
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            delegate.requestBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            delegate.responseHeadersStart(call);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            delegate.responseHeadersEnd(call, response);
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            delegate.responseBodyStart(call);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            delegate.responseBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            delegate.callEnd(call);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            delegate.callFailed(call, ioe);
+        }
+    }
+
+    public static class ConnectionStatistics {
+        @NonNull private final String host;
+        private final int port;
+        @NonNull private final Protocol protocol;
+        long acquiredCount;
+
+        ConnectionStatistics(@NonNull String host, int port, @NonNull Protocol protocol) {
+            this.host = host;
+            this.port = port;
+            this.protocol = protocol;
+        }
+
+        @NonNull public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        @NonNull public Protocol getProtocol() {
+            return protocol;
+        }
+
+        /**
+         * Get the count of the requests have been served by this connection, for the HTTP/2 one
+         * they may be at the same time.
+         */
+        public long getAcquiredCount() {
+            return acquiredCount;
+        }
+
+        /**
+         * Get the count of the requests reused this connection after it's established.
+         */
+        public long getReusedCount() {
+            return Math.max(0, acquiredCount - 1);
+        }
+
+        @NonNull ConnectionStatistics copy() {
+            final ConnectionStatistics copy = new ConnectionStatistics(host, port, protocol);
+            copy.acquiredCount = acquiredCount;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port + "[" + protocol + "] acquired[" + acquiredCount + "]";
+        }
+    }
+}
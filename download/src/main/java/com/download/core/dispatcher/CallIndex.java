@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.dispatcher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.core.IdentifiedTask;
+import com.download.core.download.DownloadCall;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The hash indexes of the ready and running calls on {@link DownloadDispatcher}, keyed by the task
+ * id, the url and the target file path, so the same task and the file busy conflicts can be found
+ * without scanning all calls.
+ * <p>
+ * Two tasks are the same only if they have the same id or the same url (see
+ * {@link IdentifiedTask#compareIgnoreId(IdentifiedTask)}), so the candidates of the same task are
+ * collected from the id and url indexes. The file of the task whose filename is provided by the
+ * response is unknown when it's indexed, such calls are only running ones and are checked
+ * separately by the dispatcher.
+ */
+class CallIndex {
+
+    private final Map<Integer, List<DownloadCall>> idCalls = new HashMap<>();
+    private final Map<String, List<DownloadCall>> urlCalls = new HashMap<>();
+    private final Map<String, List<DownloadCall>> fileCalls = new HashMap<>();
+    // the file path which the call is indexed with.
+    private final Map<DownloadCall, String> callFilePaths = new HashMap<>();
+
+    void add(@NonNull DownloadCall call) {
+        final DownloadTask task = call.task;
+        put(idCalls, task.getId(), call);
+        put(urlCalls, task.getUrl(), call);
+
+        final File file = task.getFile();
+        if (file != null) {
+            final String path = file.getAbsolutePath();
+            put(fileCalls, path, call);
+            callFilePaths.put(call, path);
+        }
+    }
+
+    void remove(@NonNull DownloadCall call) {
+        final DownloadTask task = call.task;
+        take(idCalls, task.getId(), call);
+        take(urlCalls, task.getUrl(), call);
+
+        final String path = callFilePaths.remove(call);
+        if (path != null) take(fileCalls, path, call);
+    }
+
+    void clear() {
+        idCalls.clear();
+        urlCalls.clear();
+        fileCalls.clear();
+        callFilePaths.clear();
+    }
+
+    /**
+     * Get the calls which have the same id with {@code task}.
+     */
+    @NonNull List<DownloadCall> callsWithId(int id) {
+        return snapshot(idCalls.get(id));
+    }
+
+    /**
+     * Get the calls which may be the same task with {@code task}, the result still need to be
+     * checked with {@link DownloadCall#equalsTask(DownloadTask)}.
+     */
+    @NonNull List<DownloadCall> sameTaskCandidates(@NonNull DownloadTask task) {
+        final List<DownloadCall> idList = idCalls.get(task.getId());
+        final List<DownloadCall> urlList = urlCalls.get(task.getUrl());
+        if (idList == null) return snapshot(urlList);
+        if (urlList == null) return snapshot(idList);
+
+        final List<DownloadCall> candidates = new ArrayList<>(idList);
+        for (DownloadCall call : urlList) {
+            if (!candidates.contains(call)) candidates.add(call);
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the calls which are indexed with the {@code file}.
+     */
+    @NonNull List<DownloadCall> callsOnFile(@NonNull File file) {
+        return snapshot(fileCalls.get(file.getAbsolutePath()));
+    }
+
+    boolean isIndexedWithFile(@NonNull DownloadCall call) {
+        return callFilePaths.containsKey(call);
+    }
+
+    private static <K> void put(@NonNull Map<K, List<DownloadCall>> index, @NonNull K key,
+                                @NonNull DownloadCall call) {
+        List<DownloadCall> calls = index.get(key);
+        if (calls == null) {
+            // most keys are only for one call.
+            calls = new ArrayList<>(1);
+            index.put(key, calls);
+        }
+        calls.add(call);
+    }
+
+    private static <K> void take(@NonNull Map<K, List<DownloadCall>> index, @NonNull K key,
+                                 @NonNull DownloadCall call) {
+        final List<DownloadCall> calls = index.get(key);
+        if (calls == null) return;
+
+        calls.remove(call);
+        if (calls.isEmpty()) index.remove(key);
+    }
+
+    // the caller may modify the index while iterating the result.
+    @NonNull private static List<DownloadCall> snapshot(@Nullable List<DownloadCall> calls) {
+        if (calls == null) return Collections.emptyList();
+        return new ArrayList<>(calls);
+    }
+}
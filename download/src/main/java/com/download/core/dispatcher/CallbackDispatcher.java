@@ -30,6 +30,7 @@ import com.download.core.Util;
 import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.cause.EndCause;
 import com.download.core.cause.ResumeFailedCause;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -40,19 +41,38 @@ import java.util.Map;
 public class CallbackDispatcher {
     private static final String TAG = "CallbackDispatcher";
 
+    // about one frame.
+    private static final long DEFAULT_PROGRESS_TICK_MILLIS = 16;
+
     // Just transmit to the main looper.
     private final DownloadListener transmit;
 
     private final Handler uiHandler;
+    @Nullable private final ProgressCoalescer progressCoalescer;
 
     CallbackDispatcher(@NonNull Handler handler, @NonNull DownloadListener transmit) {
         this.uiHandler = handler;
         this.transmit = transmit;
+        this.progressCoalescer = null;
     }
 
     public CallbackDispatcher() {
         this.uiHandler = new Handler(Looper.getMainLooper());
-        this.transmit = new DefaultTransmitListener(uiHandler);
+        this.progressCoalescer = new ProgressCoalescer(uiHandler, DEFAULT_PROGRESS_TICK_MILLIS);
+        this.transmit = new DefaultTransmitListener(uiHandler, progressCoalescer);
+    }
+
+    /**
+     * Set the tick to callback the progress of the tasks callback on the ui thread, the progress
+     * of all blocks within one tick is callback by one message, and the bytes of each block are
+     * accumulated to one {@link DownloadListener#fetchProgress(DownloadTask, int, long)}. The
+     * default one is 16ms which is about one frame.
+     *
+     * @param tickMillis {@code 0} means each progress is posted to the ui thread separately.
+     */
+    public void setProgressTickMillis(long tickMillis) {
+        if (progressCoalescer == null) return;
+        progressCoalescer.setTickMillis(Math.max(0, tickMillis));
     }
 
     public boolean isFetchProcessMoment(DownloadTask task) {
@@ -186,9 +206,16 @@ public class CallbackDispatcher {
 
     static class DefaultTransmitListener implements DownloadListener {
         @NonNull private final Handler uiHandler;
+        @NonNull private final ProgressCoalescer progressCoalescer;
 
         DefaultTransmitListener(@NonNull Handler uiHandler) {
+            this(uiHandler, new ProgressCoalescer(uiHandler, 0));
+        }
+
+        DefaultTransmitListener(@NonNull Handler uiHandler,
+                                @NonNull ProgressCoalescer progressCoalescer) {
             this.uiHandler = uiHandler;
+            this.progressCoalescer = progressCoalescer;
         }
 
         @Override
@@ -199,6 +226,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().taskStart(task);
                     }
                 });
@@ -215,6 +243,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().connectTrialStart(task, headerFields);
                     }
                 });
@@ -232,6 +261,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener()
                                 .connectTrialEnd(task, responseCode, headerFields);
                     }
@@ -252,6 +282,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().downloadFromBeginning(task, info, cause);
                     }
                 });
@@ -269,6 +300,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().downloadFromBreakpoint(task, info);
                     }
                 });
@@ -286,6 +318,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().connectStart(task, blockIndex, requestHeaderFields);
                     }
                 });
@@ -304,6 +337,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().connectEnd(task, blockIndex, responseCode,
                                 requestHeaderFields);
                     }
@@ -322,6 +356,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().fetchStart(task, blockIndex, contentLength);
                     }
                 });
@@ -339,6 +374,11 @@ public class CallbackDispatcher {
             }
 
             if (task.isAutoCallbackToUIThread()) {
+                if (progressCoalescer.getTickMillis() > 0) {
+                    progressCoalescer.add(task, blockIndex, increaseBytes);
+                    return;
+                }
+
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
@@ -358,6 +398,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().fetchEnd(task, blockIndex, contentLength);
                     }
                 });
@@ -378,6 +419,7 @@ public class CallbackDispatcher {
                 uiHandler.post(new Runnable() {
                     @Override
                     public void run() {
+                        progressCoalescer.flush(task);
                         task.getListener().taskEnd(task, cause, realCause);
                     }
                 });
@@ -398,6 +440,8 @@ public class CallbackDispatcher {
                                           @NonNull ResumeFailedCause cause) {
             final DownloadMonitor monitor = OkDownload.with().getMonitor();
             if (monitor != null) monitor.taskDownloadFromBeginning(task, info, cause);
+            final DownloadMetrics metrics = OkDownload.with().getMetrics();
+            if (metrics != null) metrics.increaseResumeFailed(cause);
         }
 
         void inspectTaskStart(DownloadTask task) {
@@ -28,6 +28,7 @@ import com.download.core.IdentifiedTask;
 import com.download.core.Util;
 import com.download.core.breakpoint.DownloadStore;
 import com.download.core.cause.EndCause;
+import com.download.core.connection.DownloadConnection;
 import com.download.core.download.DownloadCall;
 
 import java.io.File;
@@ -35,8 +36,9 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -48,11 +50,14 @@ public class DownloadDispatcher {
 
     private static final String TAG = "DownloadDispatcher";
 
-    int maxParallelRunningCount = 5;
+    // the priority of the ready call is raised by one for each this duration waiting.
+    private static final long DEFAULT_PRIORITY_AGING_MILLIS = 30 * 1000;
 
-    // for sort performance(not need to copy one array), using ArrayList instead of deque(for add
-    // on top, remove on bottom).
-    private final List<DownloadCall> readyAsyncCalls;
+    volatile int maxParallelRunningCount = 5;
+    volatile int maxParallelRunningCountPerHost = 5;
+
+    // bucketed by host and ordered by the aged priority, so never need to be sorted.
+    private final ReadyCallQueue readyAsyncCalls;
 
     private final List<DownloadCall> runningAsyncCalls;
     private final List<DownloadCall> runningSyncCalls;
@@ -60,6 +65,9 @@ public class DownloadDispatcher {
     // for enqueueing task during task is finishing
     private final List<DownloadCall> finishingCalls;
 
+    // the indexes of all calls on readyAsyncCalls, runningAsyncCalls and runningSyncCalls.
+    private final CallIndex callIndex = new CallIndex();
+
     // for the case of tasks has been cancelled but didn't remove from runningAsyncCalls list yet.
     private final AtomicInteger flyingCanceledAsyncCallCount = new AtomicInteger();
     private @Nullable
@@ -72,11 +80,11 @@ public class DownloadDispatcher {
     private DownloadStore store;
 
     public DownloadDispatcher() {
-        this(new ArrayList<DownloadCall>(), new ArrayList<DownloadCall>(),
+        this(new ReadyCallQueue(DEFAULT_PRIORITY_AGING_MILLIS), new ArrayList<DownloadCall>(),
                 new ArrayList<DownloadCall>(), new ArrayList<DownloadCall>());
     }
 
-    DownloadDispatcher(List<DownloadCall> readyAsyncCalls,
+    DownloadDispatcher(ReadyCallQueue readyAsyncCalls,
                        List<DownloadCall> runningAsyncCalls,
                        List<DownloadCall> runningSyncCalls,
                        List<DownloadCall> finishingCalls) {
@@ -84,6 +92,10 @@ public class DownloadDispatcher {
         this.runningAsyncCalls = runningAsyncCalls;
         this.runningSyncCalls = runningSyncCalls;
         this.finishingCalls = finishingCalls;
+
+        for (DownloadCall call : readyAsyncCalls) callIndex.add(call);
+        for (DownloadCall call : runningAsyncCalls) callIndex.add(call);
+        for (DownloadCall call : runningSyncCalls) callIndex.add(call);
     }
 
     public void setDownloadStore(@NonNull DownloadStore store) {
@@ -119,7 +131,6 @@ public class DownloadDispatcher {
         Collections.addAll(taskList, tasks);
         if (taskList.size() > 1) Collections.sort(taskList);
 
-        final int originReadyAsyncCallSize = readyAsyncCalls.size();
         try {
             OkDownload.with().downloadStrategy().inspectNetworkAvailable();
 
@@ -139,7 +150,6 @@ public class DownloadDispatcher {
             final Collection<DownloadTask> errorList = new ArrayList<>(taskList);
             OkDownload.with().callbackDispatcher().endTasksWithError(errorList, e);
         }
-        if (originReadyAsyncCallSize != readyAsyncCalls.size()) Collections.sort(readyAsyncCalls);
 
         Util.d(TAG, "end enqueueLocked for bunch task: " + tasks.length + " consume "
                 + (SystemClock.uptimeMillis() - startTime) + "ms");
@@ -150,19 +160,29 @@ public class DownloadDispatcher {
         if (inspectCompleted(task)) return;
         if (inspectForConflict(task)) return;
 
-        final int originReadyAsyncCallSize = readyAsyncCalls.size();
         enqueueIgnorePriority(task);
-        if (originReadyAsyncCallSize != readyAsyncCalls.size()) Collections.sort(readyAsyncCalls);
     }
 
     private synchronized void enqueueIgnorePriority(DownloadTask task) {
         final DownloadCall call = DownloadCall.create(task, true, store);
-        if (runningAsyncSize() < maxParallelRunningCount) {
+        if (runningAsyncSize() < maxParallelRunningCount
+                && runningAsyncSizeOfHost(ReadyCallQueue.hostOf(call))
+                < maxParallelRunningCountPerHost) {
             runningAsyncCalls.add(call);
             getExecutorService().execute(call);
         } else {
             // priority
             readyAsyncCalls.add(call);
+            prewarm(task);
+        }
+        callIndex.add(call);
+    }
+
+    // connect to the host of the task waiting for running in advance.
+    private void prewarm(@NonNull DownloadTask task) {
+        final DownloadConnection.Factory factory = OkDownload.with().connectionFactory();
+        if (factory instanceof DownloadConnection.Prewarmer) {
+            ((DownloadConnection.Prewarmer) factory).prewarm(task.getUrl());
         }
     }
 
@@ -176,6 +196,7 @@ public class DownloadDispatcher {
 
             call = DownloadCall.create(task, false, store);
             runningSyncCalls.add(call);
+            callIndex.add(call);
         }
 
         syncRunCall(call);
@@ -256,31 +277,26 @@ public class DownloadDispatcher {
     private synchronized void filterCanceledCalls(@NonNull IdentifiedTask task,
                                                   @NonNull List<DownloadCall> needCallbackCalls,
                                                   @NonNull List<DownloadCall> needCancelCalls) {
-        for (Iterator<DownloadCall> i = readyAsyncCalls.iterator(); i.hasNext(); ) {
-            DownloadCall call = i.next();
-            if (call.task == task || call.task.getId() == task.getId()) {
-                if (call.isCanceled() || call.isFinishing()) return;
-
-                i.remove();
-                needCallbackCalls.add(call);
-                return;
-            }
+        // the call of the same task instance must have the same id.
+        final List<DownloadCall> calls = callIndex.callsWithId(task.getId());
+        if (calls.isEmpty()) return;
+
+        for (DownloadCall call : calls) {
+            if (!readyAsyncCalls.contains(call)) continue;
+            if (call.isCanceled() || call.isFinishing()) return;
+
+            readyAsyncCalls.remove(call);
+            callIndex.remove(call);
+            needCallbackCalls.add(call);
+            return;
         }
 
-        for (DownloadCall call : runningAsyncCalls) {
-            if (call.task == task || call.task.getId() == task.getId()) {
-                needCallbackCalls.add(call);
-                needCancelCalls.add(call);
-                return;
-            }
-        }
+        for (DownloadCall call : calls) {
+            if (readyAsyncCalls.contains(call)) continue;
 
-        for (DownloadCall call : runningSyncCalls) {
-            if (call.task == task || call.task.getId() == task.getId()) {
-                needCallbackCalls.add(call);
-                needCancelCalls.add(call);
-                return;
-            }
+            needCallbackCalls.add(call);
+            needCancelCalls.add(call);
+            return;
         }
     }
 
@@ -315,17 +331,7 @@ public class DownloadDispatcher {
     @Nullable
     public synchronized DownloadTask findSameTask(DownloadTask task) {
         Util.d(TAG, "findSameTask: " + task.getId());
-        for (DownloadCall call : readyAsyncCalls) {
-            if (call.isCanceled()) continue;
-            if (call.equalsTask(task)) return call.task;
-        }
-
-        for (DownloadCall call : runningAsyncCalls) {
-            if (call.isCanceled()) continue;
-            if (call.equalsTask(task)) return call.task;
-        }
-
-        for (DownloadCall call : runningSyncCalls) {
+        for (DownloadCall call : callIndex.sameTaskCandidates(task)) {
             if (call.isCanceled()) continue;
             if (call.equalsTask(task)) return call.task;
         }
@@ -335,15 +341,8 @@ public class DownloadDispatcher {
 
     public synchronized boolean isRunning(DownloadTask task) {
         Util.d(TAG, "isRunning: " + task.getId());
-        for (DownloadCall call : runningSyncCalls) {
-            if (call.isCanceled()) continue;
-            if (call.equalsTask(task)) {
-                return true;
-            }
-        }
-
-        for (DownloadCall call : runningAsyncCalls) {
-            if (call.isCanceled()) continue;
+        for (DownloadCall call : callIndex.sameTaskCandidates(task)) {
+            if (call.isCanceled() || readyAsyncCalls.contains(call)) continue;
             if (call.equalsTask(task)) {
                 return true;
             }
@@ -354,8 +353,8 @@ public class DownloadDispatcher {
 
     public synchronized boolean isPending(DownloadTask task) {
         Util.d(TAG, "isPending: " + task.getId());
-        for (DownloadCall call : readyAsyncCalls) {
-            if (call.isCanceled()) continue;
+        for (DownloadCall call : callIndex.sameTaskCandidates(task)) {
+            if (call.isCanceled() || !readyAsyncCalls.contains(call)) continue;
             if (call.equalsTask(task)) return true;
         }
 
@@ -383,6 +382,7 @@ public class DownloadDispatcher {
             calls = runningSyncCalls;
         }
         if (!calls.remove(call)) throw new AssertionError("Call wasn't in-flight!");
+        if (calls != finishingCalls) callIndex.remove(call);
         if (asyncExecuted && call.isCanceled()) flyingCanceledAsyncCallCount.decrementAndGet();
         if (asyncExecuted) processCalls();
     }
@@ -418,12 +418,69 @@ public class DownloadDispatcher {
         return inspectForConflict(task, null, null);
     }
 
-    private boolean inspectForConflict(@NonNull DownloadTask task,
-                                       @Nullable Collection<DownloadTask> sameTaskList,
-                                       @Nullable Collection<DownloadTask> fileBusyList) {
-        return inspectForConflict(task, readyAsyncCalls, sameTaskList, fileBusyList)
-                || inspectForConflict(task, runningAsyncCalls, sameTaskList, fileBusyList)
-                || inspectForConflict(task, runningSyncCalls, sameTaskList, fileBusyList);
+    boolean inspectForConflict(@NonNull DownloadTask task,
+                               @Nullable Collection<DownloadTask> sameTaskList,
+                               @Nullable Collection<DownloadTask> fileBusyList) {
+        final CallbackDispatcher callbackDispatcher = OkDownload.with().callbackDispatcher();
+        for (DownloadCall call : callIndex.sameTaskCandidates(task)) {
+            if (call.isCanceled() || !call.equalsTask(task)) continue;
+
+            if (call.isFinishing()) {
+                Util.d(TAG, "task: " + task.getId()
+                        + " is finishing, move it to finishing list");
+                moveToFinishing(call);
+                continue;
+            }
+
+            if (sameTaskList != null) {
+                sameTaskList.add(task);
+            } else {
+                callbackDispatcher.dispatch().taskEnd(task, EndCause.SAME_TASK_BUSY, null);
+            }
+            return true;
+        }
+
+        final File taskFile = task.getFile();
+        if (taskFile != null && isFileBusy(taskFile)) {
+            if (fileBusyList != null) {
+                fileBusyList.add(task);
+            } else {
+                callbackDispatcher.dispatch().taskEnd(task, EndCause.FILE_BUSY, null);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean isFileBusy(@NonNull File file) {
+        for (DownloadCall call : callIndex.callsOnFile(file)) {
+            if (!call.isCanceled()) return true;
+        }
+
+        // the filename of the running ones may be known after they are indexed.
+        return isFileBusyOnUnindexed(file, runningAsyncCalls)
+                || isFileBusyOnUnindexed(file, runningSyncCalls);
+    }
+
+    private boolean isFileBusyOnUnindexed(@NonNull File file,
+                                          @NonNull Collection<DownloadCall> calls) {
+        for (DownloadCall call : calls) {
+            if (call.isCanceled() || callIndex.isIndexedWithFile(call)) continue;
+
+            final File otherFile = call.getFile();
+            if (otherFile != null && file.equals(otherFile)) return true;
+        }
+
+        return false;
+    }
+
+    private void moveToFinishing(@NonNull DownloadCall call) {
+        if (!readyAsyncCalls.remove(call) && !runningAsyncCalls.remove(call)) {
+            runningSyncCalls.remove(call);
+        }
+        callIndex.remove(call);
+        finishingCalls.add(call);
     }
 
     boolean inspectCompleted(@NonNull DownloadTask task) {
@@ -453,61 +510,19 @@ public class DownloadDispatcher {
         return false;
     }
 
-    boolean inspectForConflict(@NonNull DownloadTask task,
-                               @NonNull Collection<DownloadCall> calls,
-                               @Nullable Collection<DownloadTask> sameTaskList,
-                               @Nullable Collection<DownloadTask> fileBusyList) {
-        final CallbackDispatcher callbackDispatcher = OkDownload.with().callbackDispatcher();
-        final Iterator<DownloadCall> iterator = calls.iterator();
-        while (iterator.hasNext()) {
-            DownloadCall call = iterator.next();
-            if (call.isCanceled()) continue;
-
-            if (call.equalsTask(task)) {
-                if (call.isFinishing()) {
-                    Util.d(TAG, "task: " + task.getId()
-                            + " is finishing, move it to finishing list");
-                    finishingCalls.add(call);
-                    iterator.remove();
-                    return false;
-                }
-
-                if (sameTaskList != null) {
-                    sameTaskList.add(task);
-                } else {
-                    callbackDispatcher.dispatch()
-                            .taskEnd(task, EndCause.SAME_TASK_BUSY, null);
-                }
-                return true;
-            }
-
-            final File file = call.getFile();
-            final File taskFile = task.getFile();
-            if (file != null && taskFile != null && file.equals(taskFile)) {
-                if (fileBusyList != null) {
-                    fileBusyList.add(task);
-                } else {
-                    callbackDispatcher.dispatch().taskEnd(task, EndCause.FILE_BUSY, null);
-                }
-                return true;
-            }
-        }
-
-        return false;
-    }
-
     private synchronized void processCalls() {
         if (skipProceedCallCount.get() > 0) return;
         if (runningAsyncSize() >= maxParallelRunningCount) return;
         if (readyAsyncCalls.isEmpty()) return;
 
-        for (Iterator<DownloadCall> i = readyAsyncCalls.iterator(); i.hasNext(); ) {
-            DownloadCall call = i.next();
-
-            i.remove();
-
+        final Map<String, Integer> hostRunningCounts = runningAsyncSizeOfHosts();
+        final int maxCountPerHost = maxParallelRunningCountPerHost;
+        DownloadCall call;
+        while ((call = readyAsyncCalls.pollAvailable(maxCountPerHost, hostRunningCounts))
+                != null) {
             final DownloadTask task = call.task;
             if (isFileConflictAfterRun(task)) {
+                callIndex.remove(call);
                 OkDownload.with().callbackDispatcher().dispatch().taskEnd(task, EndCause.FILE_BUSY,
                         null);
                 continue;
@@ -515,6 +530,10 @@ public class DownloadDispatcher {
 
             runningAsyncCalls.add(call);
             getExecutorService().execute(call);
+            // the call dropped as the file busy one does not take the share of its host.
+            final String host = ReadyCallQueue.hostOf(call);
+            final Integer runningCount = hostRunningCounts.get(host);
+            hostRunningCounts.put(host, runningCount == null ? 1 : runningCount + 1);
 
             if (runningAsyncSize() >= maxParallelRunningCount) return;
         }
@@ -524,14 +543,73 @@ public class DownloadDispatcher {
         return runningAsyncCalls.size() - flyingCanceledAsyncCallCount.get();
     }
 
+    private int runningAsyncSizeOfHost(@NonNull String host) {
+        int count = 0;
+        for (DownloadCall call : runningAsyncCalls) {
+            if (call.isCanceled()) continue;
+            if (host.equals(ReadyCallQueue.hostOf(call))) count++;
+        }
+        return count;
+    }
+
+    @NonNull private Map<String, Integer> runningAsyncSizeOfHosts() {
+        final Map<String, Integer> hostRunningCounts = new HashMap<>();
+        for (DownloadCall call : runningAsyncCalls) {
+            if (call.isCanceled()) continue;
+            final String host = ReadyCallQueue.hostOf(call);
+            final Integer count = hostRunningCounts.get(host);
+            hostRunningCounts.put(host, count == null ? 1 : count + 1);
+        }
+        return hostRunningCounts;
+    }
+
+    /**
+     * Get the max count of the async tasks running at the same time.
+     */
+    public int getMaxParallelRunningCount() {
+        return maxParallelRunningCount;
+    }
+
     public static void setMaxParallelRunningCount(int maxParallelRunningCount) {
+        final DownloadDispatcher dispatcher = requireDefaultDispatcher();
+
+        maxParallelRunningCount = Math.max(1, maxParallelRunningCount);
+        dispatcher.maxParallelRunningCount = maxParallelRunningCount;
+        // the ready calls may be available now.
+        dispatcher.processCalls();
+    }
+
+    /**
+     * Set the max count of the async tasks running at the same time for each host, the default
+     * value is {@code 5}.
+     */
+    public static void setMaxParallelRunningCountPerHost(int maxParallelRunningCountPerHost) {
+        final DownloadDispatcher dispatcher = requireDefaultDispatcher();
+
+        maxParallelRunningCountPerHost = Math.max(1, maxParallelRunningCountPerHost);
+        dispatcher.maxParallelRunningCountPerHost = maxParallelRunningCountPerHost;
+        dispatcher.processCalls();
+    }
+
+    /**
+     * Set the duration of waiting to raise the priority of the pending task by one, so the task
+     * with low priority won't be starved by the continuous tasks with higher priority.
+     *
+     * @param agingMillis the duration in milliseconds, {@code 0} to disable the aging.
+     */
+    public static void setPriorityAgingMillis(long agingMillis) {
+        final DownloadDispatcher dispatcher = requireDefaultDispatcher();
+        synchronized (dispatcher) {
+            dispatcher.readyAsyncCalls.setAgingMillis(agingMillis);
+        }
+    }
+
+    private static DownloadDispatcher requireDefaultDispatcher() {
         DownloadDispatcher dispatcher = OkDownload.with().downloadDispatcher();
         if (dispatcher.getClass() != DownloadDispatcher.class) {
             throw new IllegalStateException(
                     "The current dispatcher is " + dispatcher + " not DownloadDispatcher exactly!");
         }
-
-        maxParallelRunningCount = Math.max(1, maxParallelRunningCount);
-        dispatcher.maxParallelRunningCount = maxParallelRunningCount;
+        return dispatcher;
     }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.dispatcher;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesce the progress of the blocks to be callback on the ui thread, the increased bytes of
+ * each block are accumulated by the download threads, and all of them are callback by one
+ * message per tick instead of one message per progress.
+ * <p>
+ * The accumulation is lock-free, each pending block is an entry whose bytes are added with CAS,
+ * and the entry is closed when it's drained, so the download thread adding to the closed one
+ * creates a new entry instead.
+ */
+class ProgressCoalescer {
+
+    // the entry is drained and removed from the table.
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    @NonNull private final Handler uiHandler;
+    private volatile long tickMillis;
+
+    // (task id, block index) -> the bytes not callback yet.
+    private final ConcurrentHashMap<Long, Pending> pendingBlocks = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // the progress added from now is drained on the next tick.
+            scheduled.set(false);
+            drain(null);
+        }
+    };
+
+    ProgressCoalescer(@NonNull Handler uiHandler, long tickMillis) {
+        this.uiHandler = uiHandler;
+        this.tickMillis = tickMillis;
+    }
+
+    void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Accumulate the {@code increaseBytes} of the block, it's called on the download thread.
+     */
+    void add(@NonNull DownloadTask task, int blockIndex, long increaseBytes) {
+        final Long key = keyOf(task.getId(), blockIndex);
+        while (true) {
+            Pending pending = pendingBlocks.get(key);
+            if (pending == null) {
+                final Pending newPending = new Pending(task, blockIndex);
+                pending = pendingBlocks.putIfAbsent(key, newPending);
+                if (pending == null) pending = newPending;
+            }
+
+            if (pending.add(increaseBytes)) break;
+            // the one closed is being removed, retry with a new one.
+            pendingBlocks.remove(key, pending);
+        }
+
+        if (scheduled.compareAndSet(false, true)) {
+            uiHandler.postDelayed(drainRunnable, tickMillis);
+        }
+    }
+
+    /**
+     * Callback the progress of the {@code task} pending, it must be called on the ui thread
+     * before the other callbacks of the {@code task}, so they are still in order.
+     */
+    void flush(@NonNull DownloadTask task) {
+        drain(task);
+    }
+
+    // convenient for test
+    int pendingCount() {
+        return pendingBlocks.size();
+    }
+
+    private void drain(@Nullable DownloadTask onlyTask) {
+        for (Map.Entry<Long, Pending> entry : pendingBlocks.entrySet()) {
+            final Pending pending = entry.getValue();
+            if (onlyTask != null && pending.task.getId() != onlyTask.getId()) continue;
+
+            final long bytes = pending.close();
+            // the one replaced by the download thread meanwhile isn't removed.
+            pendingBlocks.remove(entry.getKey(), pending);
+            if (bytes > 0) {
+                pending.task.getListener().fetchProgress(pending.task, pending.blockIndex, bytes);
+            }
+        }
+    }
+
+    private static Long keyOf(int id, int blockIndex) {
+        return ((long) id << 32) | (blockIndex & 0xFFFFFFFFL);
+    }
+
+    private static class Pending {
+        @NonNull final DownloadTask task;
+        final int blockIndex;
+        private final AtomicLong bytes = new AtomicLong();
+
+        Pending(@NonNull DownloadTask task, int blockIndex) {
+            this.task = task;
+            this.blockIndex = blockIndex;
+        }
+
+        boolean add(long increaseBytes) {
+            while (true) {
+                final long current = bytes.get();
+                if (current == CLOSED) return false;
+                if (bytes.compareAndSet(current, current + increaseBytes)) return true;
+            }
+        }
+
+        long close() {
+            return bytes.getAndSet(CLOSED);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.dispatcher;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.core.Util;
+import com.download.core.download.DownloadCall;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The queue of the calls which are waiting for running, the calls are bucketed by their host and
+ * each bucket is a binary heap ordered by the priority, so the enqueue is O(log n) and the call
+ * with the highest priority among the hosts which are not full can be polled without sorting.
+ * <p>
+ * The priority is aged with the waiting time: for each {@code agingMillis} waiting the priority is
+ * raised by one, so the call with low priority won't be starved. Since all calls are aged with the
+ * same speed, the order between two calls never changes while waiting, and it can be stored as a
+ * fixed rank on the heap.
+ * <p>
+ * The removed call is only marked on its entry and dropped when it reaches the head of the heap,
+ * so the removal is O(1) too.
+ */
+class ReadyCallQueue extends AbstractCollection<DownloadCall> {
+
+    // the bucket for the call which has no host.
+    private static final String NO_HOST = "";
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.rank != rhs.rank) return lhs.rank < rhs.rank ? -1 : 1;
+            return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+        }
+    };
+
+    private final Map<String, PriorityQueue<Entry>> hostBuckets = new HashMap<>();
+    private final Map<DownloadCall, Entry> callEntries = new HashMap<>();
+    private int size;
+    private long sequence;
+    private long agingMillis;
+
+    ReadyCallQueue(long agingMillis) {
+        this.agingMillis = Math.max(0, agingMillis);
+    }
+
+    @Override
+    public boolean add(@NonNull DownloadCall call) {
+        final Entry entry = new Entry(call, hostOf(call), nowMillis(), sequence++);
+        entry.rank = rankOf(entry);
+        bucketOf(entry.host).add(entry);
+        callEntries.put(call, entry);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        //noinspection SuspiciousMethodCalls
+        return callEntries.containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        //noinspection SuspiciousMethodCalls
+        final Entry entry = callEntries.remove(o);
+        if (entry == null) return false;
+
+        entry.removed = true;
+        size--;
+        return true;
+    }
+
+    /**
+     * Poll the call with the highest aged priority, whose host has less than
+     * {@code maxCountPerHost} running calls.
+     *
+     * @param hostRunningCounts the count of running calls for each host, the caller increases
+     *                          the count of the host of the polled call once it runs.
+     */
+    @Nullable DownloadCall pollAvailable(int maxCountPerHost,
+                                         @NonNull Map<String, Integer> hostRunningCounts) {
+        String bestHost = null;
+        Entry best = null;
+        final Iterator<Map.Entry<String, PriorityQueue<Entry>>> iterator =
+                hostBuckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, PriorityQueue<Entry>> bucket = iterator.next();
+            final Entry head = peekAlive(bucket.getValue());
+            if (head == null) {
+                iterator.remove();
+                continue;
+            }
+
+            final String host = bucket.getKey();
+            final Integer runningCount = hostRunningCounts.get(host);
+            if (!NO_HOST.equals(host) && runningCount != null
+                    && runningCount >= maxCountPerHost) {
+                continue;
+            }
+
+            if (best == null || ENTRY_COMPARATOR.compare(head, best) < 0) {
+                best = head;
+                bestHost = host;
+            }
+        }
+
+        if (best == null) return null;
+
+        final PriorityQueue<Entry> bucket = hostBuckets.get(bestHost);
+        bucket.poll();
+        if (bucket.isEmpty()) hostBuckets.remove(bestHost);
+        callEntries.remove(best.call);
+        size--;
+        return best.call;
+    }
+
+    void setAgingMillis(long agingMillis) {
+        agingMillis = Math.max(0, agingMillis);
+        if (this.agingMillis == agingMillis) return;
+        this.agingMillis = agingMillis;
+
+        // the rank depends on the aging speed, so rebuild all heaps.
+        for (Map.Entry<String, PriorityQueue<Entry>> bucket : hostBuckets.entrySet()) {
+            final List<Entry> entries = new ArrayList<>(bucket.getValue().size());
+            for (Entry entry : bucket.getValue()) {
+                if (entry.removed) continue;
+                entry.rank = rankOf(entry);
+                entries.add(entry);
+            }
+            final PriorityQueue<Entry> rebuilt = newBucket(entries.size());
+            rebuilt.addAll(entries);
+            bucket.setValue(rebuilt);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        hostBuckets.clear();
+        callEntries.clear();
+        size = 0;
+    }
+
+    @NonNull @Override
+    public Iterator<DownloadCall> iterator() {
+        return new CallIterator();
+    }
+
+    @NonNull static String hostOf(@NonNull DownloadCall call) {
+        final String host = Util.getHost(call.task.getUrl());
+        return host == null ? NO_HOST : host;
+    }
+
+    // convenient for test
+    long nowMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    // the smaller rank is polled first.
+    private long rankOf(@NonNull Entry entry) {
+        final long priority = entry.call.task.getPriority();
+        if (agingMillis <= 0) return -priority;
+
+        return entry.enqueueMillis - priority * agingMillis;
+    }
+
+    // drop the removed entries on the head.
+    @Nullable private static Entry peekAlive(@NonNull PriorityQueue<Entry> bucket) {
+        Entry head;
+        while ((head = bucket.peek()) != null && head.removed) bucket.poll();
+        return head;
+    }
+
+    @NonNull private PriorityQueue<Entry> bucketOf(@NonNull String host) {
+        PriorityQueue<Entry> bucket = hostBuckets.get(host);
+        if (bucket == null) {
+            bucket = newBucket(1);
+            hostBuckets.put(host, bucket);
+        }
+        return bucket;
+    }
+
+    @NonNull private static PriorityQueue<Entry> newBucket(int initialCapacity) {
+        return new PriorityQueue<>(Math.max(1, initialCapacity), ENTRY_COMPARATOR);
+    }
+
+    static class Entry {
+        @NonNull final DownloadCall call;
+        @NonNull final String host;
+        final long enqueueMillis;
+        final long sequence;
+        long rank;
+        boolean removed;
+
+        Entry(@NonNull DownloadCall call, @NonNull String host, long enqueueMillis,
+              long sequence) {
+            this.call = call;
+            this.host = host;
+            this.enqueueMillis = enqueueMillis;
+            this.sequence = sequence;
+        }
+    }
+
+    // iterate all calls with no order.
+    private class CallIterator implements Iterator<DownloadCall> {
+        private final Iterator<Map.Entry<String, PriorityQueue<Entry>>> bucketIterator =
+                hostBuckets.entrySet().iterator();
+        @Nullable private Iterator<Entry> entryIterator;
+        @Nullable private Entry nextEntry;
+        @Nullable private Entry lastEntry;
+
+        @Override
+        public boolean hasNext() {
+            while (nextEntry == null) {
+                while (entryIterator == null || !entryIterator.hasNext()) {
+                    if (!bucketIterator.hasNext()) return false;
+                    entryIterator = bucketIterator.next().getValue().iterator();
+                }
+
+                final Entry entry = entryIterator.next();
+                if (!entry.removed) nextEntry = entry;
+            }
+            return true;
+        }
+
+        @Override
+        public DownloadCall next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            lastEntry = nextEntry;
+            nextEntry = null;
+            return lastEntry.call;
+        }
+
+        @Override
+        public void remove() {
+            if (lastEntry == null) throw new IllegalStateException();
+            ReadyCallQueue.this.remove(lastEntry.call);
+            lastEntry = null;
+        }
+    }
+}
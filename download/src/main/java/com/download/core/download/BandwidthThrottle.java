@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import com.download.DownloadTask;
+import com.download.core.Util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The bandwidth budgets of okdownload: the global one shared by all running connections, and the
+ * one for each host shared by the connections to the same host. The budget for each task is set
+ * through {@link com.download.DownloadTask#setMaxBytesPerSecond(long)}.
+ * <p>
+ * All budgets are unlimited by default and can be changed while tasks are running, but the budget
+ * of the host which has never been set only takes effect for the connections start after it's set.
+ */
+public class BandwidthThrottle {
+
+    @NonNull private final RateLimiter globalLimiter = new RateLimiter();
+    private final Map<String, RateLimiter> hostLimiterMap = new HashMap<>();
+
+    /**
+     * Set the global budget shared by all running connections.
+     *
+     * @param bytesPerSecond the budget of bytes per-second, {@code 0} means unlimited.
+     */
+    public void setGlobalBytesPerSecond(@IntRange(from = 0) long bytesPerSecond) {
+        globalLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    public long getGlobalBytesPerSecond() {
+        return globalLimiter.getBytesPerSecond();
+    }
+
+    /**
+     * Set the budget shared by the connections to the {@code host}.
+     *
+     * @param bytesPerSecond the budget of bytes per-second, {@code 0} means unlimited.
+     */
+    public void setHostBytesPerSecond(@NonNull String host,
+                                      @IntRange(from = 0) long bytesPerSecond) {
+        final RateLimiter limiter;
+        synchronized (hostLimiterMap) {
+            if (bytesPerSecond <= RateLimiter.UNLIMITED && !hostLimiterMap.containsKey(host)) {
+                return;
+            }
+            limiter = hostLimiter(host);
+        }
+        limiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    public long getHostBytesPerSecond(@NonNull String host) {
+        final RateLimiter limiter;
+        synchronized (hostLimiterMap) {
+            limiter = hostLimiterMap.get(host);
+        }
+        return limiter == null ? RateLimiter.UNLIMITED : limiter.getBytesPerSecond();
+    }
+
+    /**
+     * Get all budgets shared by the connection of the {@code task}.
+     */
+    @NonNull RateLimiter[] limitersOf(@NonNull DownloadTask task) {
+        final RateLimiter taskLimiter = DownloadTask.TaskHideWrapper.getRateLimiter(task);
+
+        final String redirectLocation = task.getRedirectLocation();
+        final String host = Util.getHost(redirectLocation != null
+                ? redirectLocation : task.getUrl());
+        final RateLimiter hostLimiter;
+        synchronized (hostLimiterMap) {
+            hostLimiter = host == null ? null : hostLimiterMap.get(host);
+        }
+
+        if (hostLimiter == null) return new RateLimiter[]{taskLimiter, globalLimiter};
+        return new RateLimiter[]{taskLimiter, hostLimiter, globalLimiter};
+    }
+
+    // the limiter is kept for the host once it's set, so the connection holds it won't miss the
+    // later change.
+    @NonNull private RateLimiter hostLimiter(@NonNull String host) {
+        RateLimiter limiter = hostLimiterMap.get(host);
+        if (limiter == null) {
+            limiter = new RateLimiter();
+            hostLimiterMap.put(host, limiter);
+        }
+        return limiter;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import com.download.DownloadTask;
+
+/**
+ * The policy to determine how many connections(blocks) are used to download a task from the
+ * beginning.
+ *
+ * @see DownloadStrategy#setBlockCountPolicy(BlockCountPolicy)
+ * @see ThroughputBlockCountPolicy
+ */
+public interface BlockCountPolicy {
+
+    /**
+     * Determine the count of blocks for the {@code task}, the count set through
+     * {@link DownloadTask.Builder#setConnectionCount(int)} is handled before this method.
+     *
+     * @param task        the target task.
+     * @param totalLength the instance length of the resource.
+     * @return the count of blocks, at least {@code 1}.
+     */
+    @IntRange(from = 1) int determineBlockCount(@NonNull DownloadTask task, long totalLength);
+
+    /**
+     * Invoked on the download call thread when all blocks of the {@code task} have been fetched
+     * successfully, so the policy can learn from the measured throughput.
+     *
+     * @param task            the target task.
+     * @param connectionCount the count of the connections which fetched the data in parallel.
+     * @param fetchedLength   the bytes fetched this time.
+     * @param bytesPerSecond  the average throughput of all connections from the beginning.
+     */
+    void onTaskFetched(@NonNull DownloadTask task, int connectionCount, long fetchedLength,
+                       long bytesPerSecond);
+}
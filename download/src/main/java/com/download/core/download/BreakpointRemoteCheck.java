@@ -24,9 +24,11 @@ import com.download.OkDownload;
 import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.cause.ResumeFailedCause;
 import com.download.core.exception.FileBusyAfterRunException;
+import com.download.core.exception.ResumeFailedException;
 import com.download.core.exception.ServerCanceledException;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 
 import static com.download.core.Util.RANGE_NOT_SATISFIABLE;
 
@@ -39,6 +41,8 @@ public class BreakpointRemoteCheck {
     private boolean resumable;
     ResumeFailedCause failedCause;
     private long instanceLength;
+    private boolean trialSkipped;
+    @Nullable private TrialConnection trialConnection;
 
     @NonNull private final DownloadTask task;
     @NonNull private final BreakpointInfo info;
@@ -92,6 +96,24 @@ public class BreakpointRemoteCheck {
         return instanceLength;
     }
 
+    /**
+     * Check whether the trial connection is skipped with the result cached on the
+     * {@link TrialValidatorCache}.
+     */
+    public boolean isTrialSkipped() {
+        return trialSkipped;
+    }
+
+    /**
+     * Take the connection of the trial which can fetch the first block directly, the caller is
+     * responsible for releasing it.
+     */
+    @Nullable public TrialConnection takeTrialConnection() {
+        final TrialConnection trialConnection = this.trialConnection;
+        this.trialConnection = null;
+        return trialConnection;
+    }
+
     public void check() throws IOException {
         // local etag
         final DownloadStrategy downloadStrategy = OkDownload.with().downloadStrategy();
@@ -99,7 +121,18 @@ public class BreakpointRemoteCheck {
         // execute trial
         ConnectTrial connectTrial = createConnectTrial();
         connectTrial.executeTrial();
+        final TrialConnection trialConnection = connectTrial.takeTrialConnection();
+        try {
+            check(downloadStrategy, connectTrial);
+        } catch (IOException e) {
+            if (trialConnection != null) trialConnection.release();
+            throw e;
+        }
+        this.trialConnection = trialConnection;
+    }
 
+    private void check(@NonNull DownloadStrategy downloadStrategy,
+                       @NonNull ConnectTrial connectTrial) throws IOException {
         // single/multi
         final boolean isAcceptRange = connectTrial.isAcceptRange();
         final boolean isChunked = connectTrial.isChunked();
@@ -109,6 +142,12 @@ public class BreakpointRemoteCheck {
         final String responseFilename = connectTrial.getResponseFilename();
         final int responseCode = connectTrial.getResponseCode();
 
+        // 0. the resource is changed since the breakpoint, and the response may carry no etag, so
+        // discard the breakpoint to retry before its etag is replaced with the empty one.
+        if (responseCode == HttpURLConnection.HTTP_PRECON_FAILED) {
+            throw new ResumeFailedException(ResumeFailedCause.RESPONSE_PRECONDITION_FAILED);
+        }
+
         // 1. assemble basic data.
         downloadStrategy.validFilenameFromResponse(responseFilename, task, info);
         info.setChunked(isChunked);
@@ -127,6 +166,7 @@ public class BreakpointRemoteCheck {
         this.failedCause = resumeFailedCause;
         this.instanceLength = instanceLength;
         this.acceptRange = isAcceptRange;
+        this.trialSkipped = connectTrial.isFromValidatorCache();
 
         //3. check whether server cancelled.
         if (!isTrialSpecialPass(responseCode, instanceLength, resumable)
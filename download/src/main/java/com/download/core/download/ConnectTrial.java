@@ -27,6 +27,7 @@ import com.download.core.Util;
 import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.connection.DownloadConnection;
 import com.download.core.exception.DownloadSecurityException;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -52,6 +53,8 @@ public class ConnectTrial {
     @Nullable private String responseEtag;
     @Nullable private String responseFilename;
     private int responseCode;
+    private boolean fromValidatorCache;
+    @Nullable private TrialConnection trialConnection;
 
     public ConnectTrial(@NonNull DownloadTask task, @NonNull BreakpointInfo info) {
         this.task = task;
@@ -62,28 +65,51 @@ public class ConnectTrial {
         OkDownload.with().downloadStrategy().inspectNetworkOnWifi(task);
         OkDownload.with().downloadStrategy().inspectNetworkAvailable();
 
+        final TrialValidatorCache validatorCache = OkDownload.with().downloadStrategy()
+                .trialValidatorCache();
+        if (validatorCache != null && trialFromValidatorCache(validatorCache)) return;
+
+        // request the whole resource to fetch the first block on this connection.
+        final boolean mergeFetch = OkDownload.with().downloadStrategy()
+                .isTrialMergedWithFetch(task, info);
+
         DownloadConnection connection = OkDownload.with().connectionFactory().create(task.getUrl());
         boolean isNeedTrialHeadMethod;
+        boolean keepConnection = false;
         try {
             if (!Util.isEmpty(info.getEtag())) {
                 connection.addHeader(IF_MATCH, info.getEtag());
             }
-            connection.addHeader(RANGE, "bytes=0-0");
+            connection.addHeader(RANGE, mergeFetch ? "bytes=0-" : "bytes=0-0");
             final Map<String, List<String>> userHeader = task.getHeaderMapFields();
             if (userHeader != null)  Util.addUserRequestHeaderField(userHeader, connection);
+            if (mergeFetch && (userHeader == null || !userHeader.containsKey(USER_AGENT))) {
+                Util.addDefaultUserAgent(connection);
+            }
 
             final DownloadListener listener = OkDownload.with().callbackDispatcher().dispatch();
             final Map<String, List<String>> requestProperties = connection.getRequestProperties();
             listener.connectTrialStart(task, requestProperties);
 
+            final DownloadMetrics metrics = OkDownload.with().getMetrics();
+            final long startNanos = System.nanoTime();
             final DownloadConnection.Connected connected = connection.execute();
             task.setRedirectLocation(connected.getRedirectLocation());
+            if (metrics != null) {
+                metrics.recordSince(DownloadMetrics.Metric.TRIAL, startNanos);
+                if (connected.getRedirectLocation() != null) {
+                    metrics.increase(DownloadMetrics.Counter.REDIRECT);
+                }
+            }
             Util.d(TAG, "task[" + task.getId() + "] redirect location: "
                     + task.getRedirectLocation());
 
             this.responseCode = connected.getResponseCode();
             this.acceptRange = isAcceptRange(connected);
             this.instanceLength = findInstanceLength(connected);
+            if (mergeFetch && instanceLength == CHUNKED_CONTENT_LENGTH) {
+                this.instanceLength = findWholeContentLength(connected);
+            }
             this.responseEtag = findEtag(connected);
             this.responseFilename = findFilename(connected);
             Map<String, List<String>> responseHeader = connected.getResponseHeaderFields();
@@ -92,13 +118,62 @@ public class ConnectTrial {
 
             isNeedTrialHeadMethod = isNeedTrialHeadMethodForInstanceLength(instanceLength,
                     connected);
+
+            if (mergeFetch && !isNeedTrialHeadMethod
+                    && (responseCode == HttpURLConnection.HTTP_OK
+                    || responseCode == HttpURLConnection.HTTP_PARTIAL)) {
+                trialConnection = new TrialConnection(connection, connected, requestProperties);
+                keepConnection = true;
+            }
         } finally {
-            connection.release();
+            if (!keepConnection) connection.release();
         }
 
         if (isNeedTrialHeadMethod) {
             trialHeadMethodForInstanceLength();
         }
+
+        if (validatorCache != null) {
+            validatorCache.put(task.getUrl(), responseCode, acceptRange, instanceLength,
+                    responseEtag, responseFilename, task.getRedirectLocation());
+        }
+    }
+
+    // the connectTrialStart and connectTrialEnd aren't callback if the trial is skipped.
+    private boolean trialFromValidatorCache(@NonNull TrialValidatorCache validatorCache) {
+        final TrialValidatorCache.Result result = validatorCache.get(task.getUrl());
+        if (result == null) return false;
+
+        task.setRedirectLocation(result.redirectLocation);
+        this.responseCode = result.responseCode;
+        this.acceptRange = result.acceptRange;
+        this.instanceLength = result.instanceLength;
+        this.responseEtag = result.etag;
+        this.responseFilename = result.filename;
+        this.fromValidatorCache = true;
+        Util.d(TAG, "task[" + task.getId() + "] skip the trial with the cached result");
+        return true;
+    }
+
+    /**
+     * Take the connection of the trial which has requested the whole resource, the caller is
+     * responsible for releasing it.
+     *
+     * @return {@code null} if the trial isn't merged with the fetching or the connection has been
+     * taken.
+     */
+    @Nullable public TrialConnection takeTrialConnection() {
+        final TrialConnection trialConnection = this.trialConnection;
+        this.trialConnection = null;
+        return trialConnection;
+    }
+
+    /**
+     * Check whether the result is from the {@link TrialValidatorCache} instead of the trial
+     * connection.
+     */
+    public boolean isFromValidatorCache() {
+        return fromValidatorCache;
     }
 
     /**
@@ -244,6 +319,22 @@ public class ConnectTrial {
         return CHUNKED_CONTENT_LENGTH;
     }
 
+    // the response of the whole resource without the Content-Range, such as the backend ignores
+    // the range, the Content-Length is the instance length.
+    private static long findWholeContentLength(@NonNull DownloadConnection.Connected connected)
+            throws IOException {
+        if (connected.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            return CHUNKED_CONTENT_LENGTH;
+        }
+        if (parseTransferEncoding(connected.getResponseHeaderField(TRANSFER_ENCODING))) {
+            return CHUNKED_CONTENT_LENGTH;
+        }
+
+        final String contentLength = connected.getResponseHeaderField(CONTENT_LENGTH);
+        if (contentLength == null || contentLength.length() == 0) return CHUNKED_CONTENT_LENGTH;
+        return Util.parseContentLength(contentLength);
+    }
+
     boolean isNeedTrialHeadMethodForInstanceLength(
             long oldInstanceLength, @NonNull DownloadConnection.Connected connected) {
         if (oldInstanceLength != CHUNKED_CONTENT_LENGTH) {
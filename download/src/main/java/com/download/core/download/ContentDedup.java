@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.core.Util;
+import com.download.core.breakpoint.BreakpointInfo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The index of the content fetched by the tasks, so the tasks for the same content to the
+ * different files only fetch it once.
+ * <p>
+ * The content is identified by the url, the etag and the instance length responded, the one
+ * without the etag or the length isn't indexed, because there is no way to know whether it's
+ * changed. One task fetches the content at the same time, the other tasks without any progress
+ * wait for it and then copy its file, and the task fetching the same content later copies the
+ * file completed directly if it's still unchanged.
+ */
+public class ContentDedup {
+
+    private static final String TAG = "ContentDedup";
+
+    private static final int DEFAULT_MAX_COMPLETED_COUNT = 256;
+
+    // content -> the id of the task fetching it.
+    private final Map<Key, Integer> fetchingIds = new HashMap<>();
+    // content -> the file completed, the least recently used one is evicted.
+    private final LinkedHashMap<Key, CompletedFile> completedFiles;
+
+    public ContentDedup() {
+        this(DEFAULT_MAX_COMPLETED_COUNT);
+    }
+
+    /**
+     * @param maxCompletedCount the max count of the completed files are kept to be copied.
+     */
+    public ContentDedup(final int maxCompletedCount) {
+        this.completedFiles = new LinkedHashMap<Key, CompletedFile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletedFile> eldest) {
+                return size() > maxCompletedCount;
+            }
+        };
+    }
+
+    /**
+     * Get the key of the content for the {@code task}.
+     *
+     * @return {@code null} if the content can't be identified or the task isn't to a file.
+     */
+    @Nullable public static Key keyOf(@NonNull DownloadTask task, @NonNull BreakpointInfo info,
+                                      long instanceLength) {
+        final String etag = info.getEtag();
+        if (Util.isEmpty(etag) || instanceLength <= 0 || info.isChunked()) return null;
+        if (task.getFile() == null) return null;
+
+        return new Key(task.getUrl(), etag, instanceLength);
+    }
+
+    /**
+     * Find the file of the {@code key} to be copied for the {@code task}, or let the
+     * {@code task} fetch the content.
+     *
+     * @param follow whether to wait for the task which is fetching the content, otherwise the
+     *               {@code task} fetches it by itself at the same time.
+     * @return the file completed to be copied, or {@code null} if the {@code task} should fetch
+     * the content.
+     */
+    @Nullable public synchronized File findOrFetch(@NonNull Key key, @NonNull DownloadTask task,
+                                                   boolean follow) throws InterruptedException {
+        final File target = task.getFile();
+        while (true) {
+            final File completed = findCompleted(key, target);
+            if (completed != null) return completed;
+
+            final Integer fetchingId = fetchingIds.get(key);
+            if (fetchingId == null || fetchingId == task.getId()) {
+                fetchingIds.put(key, task.getId());
+                return null;
+            }
+            if (!follow) return null;
+
+            Util.d(TAG, "task[" + task.getId() + "] waits for task[" + fetchingId
+                    + "] to fetch the same content " + key);
+            wait();
+        }
+    }
+
+    /**
+     * The {@code task} has fetched the content of the {@code key} to its file.
+     */
+    public synchronized void onFetched(@NonNull Key key, @NonNull DownloadTask task) {
+        final File file = task.getFile();
+        if (file == null || !file.exists()) return;
+
+        completedFiles.put(key, new CompletedFile(file));
+    }
+
+    /**
+     * The {@code task} is ended, the tasks wait for it are woken up.
+     */
+    public synchronized void release(@NonNull Key key, @NonNull DownloadTask task) {
+        final Integer fetchingId = fetchingIds.get(key);
+        if (fetchingId == null || fetchingId != task.getId()) return;
+
+        fetchingIds.remove(key);
+        notifyAll();
+    }
+
+    @Nullable private File findCompleted(@NonNull Key key, @Nullable File target) {
+        final CompletedFile completed = completedFiles.get(key);
+        if (completed == null) return null;
+
+        if (!completed.isUnchanged(key.instanceLength)) {
+            completedFiles.remove(key);
+            return null;
+        }
+
+        if (completed.file.equals(target)) return null;
+        return completed.file;
+    }
+
+    /**
+     * Copy the {@code from} file to the {@code to} file.
+     */
+    static void copy(@NonNull File from, @NonNull File to) throws IOException {
+        final File parentFile = to.getParentFile();
+        if (parentFile != null && !parentFile.exists() && !parentFile.mkdirs()) {
+            throw new IOException("Create parent folder failed!");
+        }
+
+        FileChannel input = null;
+        FileChannel output = null;
+        try {
+            input = new FileInputStream(from).getChannel();
+            output = new FileOutputStream(to).getChannel();
+            final long length = input.size();
+            long position = 0;
+            while (position < length) {
+                position += input.transferTo(position, length - position, output);
+            }
+            output.force(false);
+        } finally {
+            if (input != null) input.close();
+            if (output != null) output.close();
+        }
+    }
+
+    public static class Key {
+        @NonNull final String url;
+        @NonNull final String etag;
+        final long instanceLength;
+
+        Key(@NonNull String url, @NonNull String etag, long instanceLength) {
+            this.url = url;
+            this.etag = etag;
+            this.instanceLength = instanceLength;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+
+            final Key another = (Key) obj;
+            return instanceLength == another.instanceLength && url.equals(another.url)
+                    && etag.equals(another.etag);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = url.hashCode();
+            result = 31 * result + etag.hashCode();
+            result = 31 * result + (int) (instanceLength ^ (instanceLength >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "url[" + url + "] etag[" + etag + "] length[" + instanceLength + "]";
+        }
+    }
+
+    private static class CompletedFile {
+        @NonNull final File file;
+        final long lastModified;
+
+        CompletedFile(@NonNull File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+        }
+
+        // the file may be changed or deleted after it's completed.
+        boolean isUnchanged(long instanceLength) {
+            return file.length() == instanceLength && file.lastModified() == lastModified;
+        }
+    }
+}
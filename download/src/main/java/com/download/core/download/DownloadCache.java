@@ -40,6 +40,7 @@ public class DownloadCache {
     private volatile boolean unknownError;
     private volatile boolean fileBusyAfterRun;
     private volatile boolean preAllocateFailed;
+    private volatile boolean trialSkipped;
     private volatile IOException realCause;
 
     DownloadCache(@NonNull MultiPointOutputStream outputStream) {
@@ -63,6 +64,18 @@ public class DownloadCache {
         return redirectLocation;
     }
 
+    void setTrialSkipped(boolean trialSkipped) {
+        this.trialSkipped = trialSkipped;
+    }
+
+    /**
+     * Check whether the info is assembled from the result cached on the
+     * {@link TrialValidatorCache} instead of the trial connection.
+     */
+    public boolean isTrialSkipped() {
+        return trialSkipped;
+    }
+
     boolean isPreconditionFailed() {
         return preconditionFailed;
     }
@@ -22,6 +22,7 @@ import android.support.annotation.Nullable;
 
 import com.download.DownloadTask;
 import com.download.OkDownload;
+import com.download.SpeedCalculator;
 import com.download.core.NamedRunnable;
 import com.download.core.Util;
 import com.download.core.breakpoint.BlockInfo;
@@ -31,15 +32,18 @@ import com.download.core.cause.EndCause;
 import com.download.core.cause.ResumeFailedCause;
 import com.download.core.file.MultiPointOutputStream;
 import com.download.core.file.ProcessFileStrategy;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -56,14 +60,23 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
     static final int MAX_COUNT_RETRY_FOR_PRECONDITION_FAILED = 1;
     public final DownloadTask task;
     public final boolean asyncExecuted;
+    // guarded by itself, it's changed on the startBlocks and copied on the cancel.
     @NonNull private final ArrayList<DownloadChain> blockChainList;
+    // the chains which have finished on the startBlocks.
+    private final BlockingQueue<DownloadChain> finishedChainQueue = new LinkedBlockingQueue<>();
 
     @Nullable volatile DownloadCache cache;
     volatile boolean canceled;
     volatile boolean finishing;
 
     private volatile Thread currentThread;
+    // the content this call has been fetching on the content dedup.
+    @Nullable private ContentDedup.Key contentKey;
+    // the trial connection which can fetch the first block directly.
+    @Nullable private TrialConnection trialConnection;
     @NonNull private final DownloadStore store;
+    // the moment this call is created, it's waiting on the dispatcher since then.
+    private final long createdNanos = System.nanoTime();
 
     private DownloadCall(DownloadTask task, boolean asyncExecuted, @NonNull DownloadStore store) {
         this(task, asyncExecuted, new ArrayList<DownloadChain>(), store);
@@ -98,7 +111,10 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
         final DownloadCache cache = this.cache;
         if (cache != null) cache.setUserCanceled();
 
-        final List<DownloadChain> chains = (List<DownloadChain>) blockChainList.clone();
+        final List<DownloadChain> chains;
+        synchronized (blockChainList) {
+            chains = (List<DownloadChain>) blockChainList.clone();
+        }
         for (DownloadChain chain : chains) {
             chain.cancel();
         }
@@ -124,6 +140,12 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
     @Override
     public void execute() throws InterruptedException {
         currentThread = Thread.currentThread();
+        if (asyncExecuted) {
+            final DownloadMetrics metrics = OkDownload.with().getMetrics();
+            if (metrics != null) {
+                metrics.recordSince(DownloadMetrics.Metric.QUEUE_WAIT, createdNanos);
+            }
+        }
 
         boolean retry;
         int retryCount = 0;
@@ -170,9 +192,19 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
                 remoteCheck.check();
             } catch (IOException e) {
                 cache.catchException(e);
+                // the breakpoint is stale, retry from the trial without it.
+                retry = cache.isPreconditionFailed()
+                        && retryCount++ < MAX_COUNT_RETRY_FOR_PRECONDITION_FAILED;
+                if (retry) {
+                    discardBreakpointForRetry();
+                    continue;
+                }
                 break;
             }
+            releaseTrialConnection();
+            trialConnection = remoteCheck.takeTrialConnection();
             cache.setRedirectLocation(task.getRedirectLocation());
+            cache.setTrialSkipped(remoteCheck.isTrialSkipped());
 
             // 3. waiting for file lock release after file path is confirmed.
             fileStrategy.getFileLock().waitForRelease(task.getFile().getAbsolutePath());
@@ -180,6 +212,14 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
             // 4. reuse another info if another info is idle and available for reuse.
             OkDownload.with().downloadStrategy()
                     .inspectAnotherSameInfo(task, info, remoteCheck.getInstanceLength());
+            // and reuse the same content fetched by another task.
+            try {
+                if (inspectSameContent(info, remoteCheck)) break;
+            } catch (IOException e) {
+                cache.setUnknownError(e);
+                break;
+            }
+            if (canceled) break;
 
             try {
                 if (remoteCheck.isResumable()) {
@@ -219,7 +259,7 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
             // 8. retry if precondition failed.
             if (cache.isPreconditionFailed()
                     && retryCount++ < MAX_COUNT_RETRY_FOR_PRECONDITION_FAILED) {
-                store.remove(task.getId());
+                discardBreakpointForRetry();
                 retry = true;
             } else {
                 retry = false;
@@ -228,7 +268,9 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
 
         // finish
         finishing = true;
-        blockChainList.clear();
+        synchronized (blockChainList) {
+            blockChainList.clear();
+        }
 
         final DownloadCache cache = this.cache;
         if (canceled || cache == null) return;
@@ -251,6 +293,17 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
         inspectTaskEnd(cache, cause, realCause);
     }
 
+    private void discardBreakpointForRetry() {
+        store.remove(task.getId());
+        final OkDownload okDownload = OkDownload.with();
+        // the cached trial result may be the stale one.
+        final TrialValidatorCache validatorCache = okDownload.downloadStrategy()
+                .trialValidatorCache();
+        if (validatorCache != null) validatorCache.invalidate(task.getUrl());
+        final DownloadMetrics metrics = okDownload.getMetrics();
+        if (metrics != null) metrics.increase(DownloadMetrics.Counter.RETRY_PRECONDITION);
+    }
+
     private void inspectTaskStart() {
         store.onTaskStart(task.getId());
         OkDownload.with().callbackDispatcher().dispatch().taskStart(task);
@@ -273,11 +326,79 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
             store.markFileClear(task.getId());
             OkDownload.with().processFileStrategy()
                     .completeProcessStream(cache.getOutputStream(), task);
+
+            final ContentDedup contentDedup = OkDownload.with().downloadStrategy().contentDedup();
+            final ContentDedup.Key contentKey = this.contentKey;
+            if (contentDedup != null && contentKey != null) {
+                contentDedup.onFetched(contentKey, task);
+            }
         }
 
         OkDownload.with().callbackDispatcher().dispatch().taskEnd(task, cause, realCause);
     }
 
+    /**
+     * Copy the same content fetched by another task, or wait for the one is fetching it.
+     *
+     * @return {@code true} if the content has been copied to the file of the task.
+     */
+    boolean inspectSameContent(@NonNull BreakpointInfo info,
+                               @NonNull BreakpointRemoteCheck remoteCheck)
+            throws IOException, InterruptedException {
+        releaseContentKey();
+
+        final ContentDedup contentDedup = OkDownload.with().downloadStrategy().contentDedup();
+        if (contentDedup == null) return false;
+
+        final long instanceLength = remoteCheck.getInstanceLength();
+        final ContentDedup.Key key = ContentDedup.keyOf(task, info, instanceLength);
+        if (key == null) return false;
+
+        // only wait for another one if there is nothing fetched for this task.
+        final boolean follow = info.getTotalOffset() <= 0;
+        final File completedFile = contentDedup.findOrFetch(key, task, follow);
+        if (completedFile == null) {
+            this.contentKey = key;
+            return false;
+        }
+
+        final File file = task.getFile();
+        try {
+            ContentDedup.copy(completedFile, file);
+        } catch (IOException e) {
+            Util.w(TAG, "copy the same content from " + completedFile + " to " + file
+                    + " failed, fetch it instead " + e);
+            if (file.exists() && !file.delete()) throw new IOException("Delete file failed!");
+            return false;
+        }
+
+        info.resetBlockInfos();
+        info.addBlock(new BlockInfo(0, instanceLength, instanceLength));
+        store.update(info);
+        Util.d(TAG, "copy the same content from " + completedFile + " for task["
+                + task.getId() + "] " + key);
+        OkDownload.with().callbackDispatcher().dispatch().downloadFromBreakpoint(task, info);
+        contentDedup.onFetched(key, task);
+        return true;
+    }
+
+    private void releaseTrialConnection() {
+        final TrialConnection trialConnection = this.trialConnection;
+        if (trialConnection == null) return;
+
+        this.trialConnection = null;
+        trialConnection.release();
+    }
+
+    private void releaseContentKey() {
+        final ContentDedup.Key contentKey = this.contentKey;
+        if (contentKey == null) return;
+
+        this.contentKey = null;
+        final ContentDedup contentDedup = OkDownload.with().downloadStrategy().contentDedup();
+        if (contentDedup != null) contentDedup.release(contentKey, task);
+    }
+
     // this method is convenient for unit-test.
     DownloadCache createCache(@NonNull BreakpointInfo info) {
         final MultiPointOutputStream outputStream = OkDownload.with().processFileStrategy()
@@ -302,17 +423,48 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
 
             Util.resetBlockIfDirty(blockInfo);
             final DownloadChain chain = DownloadChain.createChain(i, task, info, cache, store);
+            final TrialConnection trialConnection = this.trialConnection;
+            if (trialConnection != null && blockInfo.getRangeLeft() == 0) {
+                this.trialConnection = null;
+                chain.setTrialConnection(trialConnection);
+            }
             blockChainList.add(chain);
             blockIndexList.add(chain.getBlockIndex());
         }
 
+        // there isn't any block from the beginning.
+        releaseTrialConnection();
+
         if (canceled) {
+            // the trial connection may be taken by the first chain.
+            for (DownloadChain chain : blockChainList) chain.releaseConnection();
             return;
         }
 
         cache.getOutputStream().setRequireStreamBlocks(blockIndexList);
 
-        startBlocks(blockChainList);
+        final long beginOffset = info.getTotalOffset();
+        final SpeedCalculator speedCalculator = new SpeedCalculator();
+        // mark the beginning of the fetching.
+        speedCalculator.downloading(0);
+
+        final int connectionCount = startBlocks(blockChainList);
+
+        inspectBlocksFetched(cache, info, connectionCount, beginOffset, speedCalculator);
+    }
+
+    // let the block count policy learn the throughput of this connection count.
+    private void inspectBlocksFetched(@NonNull DownloadCache cache, @NonNull BreakpointInfo info,
+                                      int connectionCount, long beginOffset,
+                                      @NonNull SpeedCalculator speedCalculator) {
+        if (canceled || cache.isInterrupt() || connectionCount <= 0) return;
+
+        final long fetchedLength = info.getTotalOffset() - beginOffset;
+        speedCalculator.downloading(fetchedLength);
+        speedCalculator.endTask();
+
+        OkDownload.with().downloadStrategy().blockCountPolicy().onTaskFetched(task,
+                connectionCount, fetchedLength, speedCalculator.getBytesPerSecondFromBegin());
     }
 
     @Override
@@ -321,18 +473,52 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
 
     @Override
     protected void finished() {
+        releaseContentKey();
+        releaseTrialConnection();
         OkDownload.with().downloadDispatcher().finish(this);
         Util.d(TAG, "call is finished " + task.getId());
     }
 
-    void startBlocks(List<DownloadChain> tasks) throws InterruptedException {
+    /**
+     * Start the chains and wait for all of them, the finished chain may take over the tail of
+     * the slowest block with a new chain.
+     *
+     * @return the count of the chains have been started, including the ones of the split blocks.
+     */
+    int startBlocks(List<DownloadChain> tasks) throws InterruptedException {
         ArrayList<Future> futures = new ArrayList<>(tasks.size());
+        final List<DownloadChain> chains = new ArrayList<>(tasks);
+        finishedChainQueue.clear();
         try {
             for (DownloadChain chain : tasks) {
                 futures.add(submitChain(chain));
             }
 
-            blockChainList.addAll(tasks);
+            synchronized (blockChainList) {
+                blockChainList.addAll(tasks);
+            }
+            // the chains added after the cancel has taken its snapshot are canceled here.
+            if (canceled) {
+                for (DownloadChain chain : tasks) chain.cancel();
+            }
+
+            int runningCount = tasks.size();
+            while (runningCount > 0) {
+                final DownloadChain finishedChain = finishedChainQueue.take();
+                runningCount--;
+
+                // the finished chain takes over the tail of the slowest block.
+                final DownloadChain splitChain = splitSlowestBlock(finishedChain, chains);
+                if (splitChain != null) {
+                    futures.add(submitChain(splitChain));
+                    chains.add(splitChain);
+                    synchronized (blockChainList) {
+                        blockChainList.add(splitChain);
+                    }
+                    if (canceled) splitChain.cancel();
+                    runningCount++;
+                }
+            }
 
             for (Future future : futures) {
                 if (!future.isDone()) {
@@ -341,13 +527,71 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
                     } catch (CancellationException | ExecutionException ignore) { }
                 }
             }
+
+            return chains.size();
         } catch (Throwable t) {
             for (Future future : futures) {
                 future.cancel(true);
             }
             throw t;
         } finally {
-            blockChainList.removeAll(tasks);
+            synchronized (blockChainList) {
+                blockChainList.removeAll(chains);
+            }
+        }
+    }
+
+    @Nullable DownloadChain splitSlowestBlock(@NonNull DownloadChain finishedChain,
+                                              @NonNull List<DownloadChain> chains) {
+        final DownloadCache cache = finishedChain.getCache();
+        if (canceled || cache.isInterrupt()) return null;
+
+        final BreakpointInfo info = finishedChain.getInfo();
+        final BlockInfo finishedBlock = info.getBlock(finishedChain.getBlockIndex());
+        // only split for the chain which fetched its own block successfully.
+        if (!Util.isCorrectFull(finishedBlock.getCurrentOffset(),
+                finishedBlock.getContentLength())) {
+            return null;
+        }
+
+        final long minSplitLength = OkDownload.with().downloadStrategy()
+                .minSplitBlockLength(task, info);
+        if (minSplitLength <= 0) return null;
+
+        // try from the slowest one, the estimated remain time changes all the time, so
+        // snapshot it first.
+        final int chainCount = chains.size();
+        final long[] remainMillis = new long[chainCount];
+        for (int i = 0; i < chainCount; i++) {
+            remainMillis[i] = chains.get(i).estimateRemainMillis();
+        }
+
+        while (true) {
+            int slowestIndex = -1;
+            for (int i = 0; i < chainCount; i++) {
+                if (remainMillis[i] < 0) continue;
+                if (slowestIndex < 0 || remainMillis[i] > remainMillis[slowestIndex]) {
+                    slowestIndex = i;
+                }
+            }
+            if (slowestIndex < 0) return null;
+            remainMillis[slowestIndex] = -1;
+
+            final DownloadChain slowestChain = chains.get(slowestIndex);
+            final int newBlockIndex = info.getBlockCount();
+            final BlockInfo newBlockInfo = slowestChain.splitTail(newBlockIndex, minSplitLength);
+            if (newBlockInfo == null) continue;
+
+            Util.d(TAG, "split block(" + slowestChain.getBlockIndex() + ") tail to block("
+                    + newBlockIndex + ") " + newBlockInfo + " for task[" + task.getId() + "]");
+            // persist the split ranges, so the resume is still available.
+            try {
+                store.update(info);
+            } catch (IOException e) {
+                Util.w(TAG, "update the split block of task[" + task.getId() + "] failed " + e);
+            }
+
+            return DownloadChain.createChain(newBlockIndex, task, info, cache, store);
         }
     }
 
@@ -376,8 +620,17 @@ public class DownloadCall extends NamedRunnable implements Comparable<DownloadCa
                 .downloadFromBeginning(task, info, failedCause);
     }
 
-    Future<?> submitChain(DownloadChain chain) {
-        return EXECUTOR.submit(chain);
+    Future<?> submitChain(final DownloadChain chain) {
+        return EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    chain.run();
+                } finally {
+                    finishedChainQueue.offer(chain);
+                }
+            }
+        });
     }
 
     public boolean equalsTask(@NonNull DownloadTask task) {
@@ -16,12 +16,14 @@
 
 package com.download.core.download;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.download.DownloadTask;
 import com.download.OkDownload;
 import com.download.core.Util;
+import com.download.core.breakpoint.BlockInfo;
 import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.breakpoint.DownloadStore;
 import com.download.core.connection.DownloadConnection;
@@ -31,9 +33,11 @@ import com.download.core.file.MultiPointOutputStream;
 import com.download.core.interceptor.BreakpointInterceptor;
 import com.download.core.interceptor.FetchDataInterceptor;
 import com.download.core.interceptor.Interceptor;
+import com.download.core.interceptor.RateLimitInterceptor;
 import com.download.core.interceptor.RetryInterceptor;
 import com.download.core.interceptor.connect.CallServerInterceptor;
 import com.download.core.interceptor.connect.HeaderInterceptor;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -62,9 +66,13 @@ public class DownloadChain implements Runnable {
     final List<Interceptor.Fetch> fetchInterceptorList = new ArrayList<>();
     int connectIndex = 0;
     int fetchIndex = 0;
+    // the index of the first interceptor on each loop of fetching.
+    int fetchLoopIndex = 0;
 
-    private long responseContentLength;
+    private volatile long responseContentLength;
     private volatile DownloadConnection connection;
+    // the trial connection which fetches this block directly.
+    @Nullable private volatile TrialConnection trialConnection;
 
     long noCallbackIncreaseBytes;
     volatile Thread currentThread;
@@ -132,6 +140,21 @@ public class DownloadChain implements Runnable {
         return this.cache.getOutputStream();
     }
 
+    synchronized void setTrialConnection(@NonNull TrialConnection trialConnection) {
+        this.connection = trialConnection.connection;
+        this.trialConnection = trialConnection;
+    }
+
+    /**
+     * Get the trial connection which has been connected for this block, the request headers
+     * can't be added to it any more.
+     *
+     * @return {@code null} if this block connects by itself.
+     */
+    @Nullable public TrialConnection getTrialConnection() {
+        return trialConnection;
+    }
+
     @Nullable public synchronized DownloadConnection getConnection() {
         return this.connection;
     }
@@ -184,18 +207,125 @@ public class DownloadChain implements Runnable {
 
         dispatcher.dispatch().fetchStart(task, blockIndex, getResponseContentLength());
         // fetch chain
-        final FetchDataInterceptor fetchDataInterceptor =
-                new FetchDataInterceptor(blockIndex, connected.getInputStream(),
-                        getOutputStream(), task);
+        final FetchDataInterceptor fetchDataInterceptor;
+        if (connected instanceof DownloadConnection.SourceConnected) {
+            fetchDataInterceptor = new FetchDataInterceptor(blockIndex,
+                    ((DownloadConnection.SourceConnected) connected).getSource(),
+                    getOutputStream(), task);
+        } else {
+            fetchDataInterceptor = new FetchDataInterceptor(blockIndex,
+                    connected.getInputStream(), getOutputStream(), task);
+        }
         fetchInterceptorList.add(retryInterceptor);
         fetchInterceptorList.add(breakpointInterceptor);
+        fetchLoopIndex = fetchInterceptorList.size();
+        fetchInterceptorList.add(new RateLimitInterceptor(
+                OkDownload.with().bandwidthThrottle().limitersOf(task)));
         fetchInterceptorList.add(fetchDataInterceptor);
 
+        startFetchRange();
         fetchIndex = 0;
+        final long startNanos = System.nanoTime();
         final long totalFetchedBytes = processFetch();
+        final DownloadMetrics metrics = OkDownload.with().getMetrics();
+        if (metrics != null && totalFetchedBytes > 0) {
+            final long durationNanos = Math.max(1, System.nanoTime() - startNanos);
+            metrics.record(DownloadMetrics.Metric.BLOCK_THROUGHPUT,
+                    (long) (totalFetchedBytes * 1e9 / durationNanos));
+        }
         dispatcher.dispatch().fetchEnd(task, blockIndex, totalFetchedBytes);
     }
 
+    // the range fetching by this chain, guarded by the block-info because of the tail of the
+    // range may be split by another chain.
+    private long fetchOffset = -1;
+    private long fetchStartOffset;
+    private long fetchStartMillis;
+
+    void startFetchRange() {
+        final BlockInfo blockInfo = info.getBlock(blockIndex);
+        synchronized (blockInfo) {
+            fetchOffset = blockInfo.getRangeLeft();
+            fetchStartOffset = fetchOffset;
+            fetchStartMillis = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Reserve the range on this block for the bytes just fetched.
+     *
+     * @param fetchLength the length of the bytes just fetched.
+     * @return the length of the bytes which can be written to this block, {@code 0} if the range
+     * of this block has been all fetched.
+     */
+    public int reserveFetchRange(int fetchLength) {
+        final BlockInfo blockInfo = info.getBlock(blockIndex);
+        if (blockInfo.getContentLength() == Util.CHUNKED_CONTENT_LENGTH) return fetchLength;
+
+        synchronized (blockInfo) {
+            if (fetchOffset < 0) return fetchLength;
+
+            final long rangeEnd = blockInfo.getStartOffset() + blockInfo.getContentLength();
+            final int reserveLength = (int) Math.max(0, Math.min(fetchLength,
+                    rangeEnd - fetchOffset));
+            fetchOffset += reserveLength;
+            return reserveLength;
+        }
+    }
+
+    /**
+     * Get the estimated milliseconds to fetch the rest range of this block with the speed of this
+     * chain so far.
+     *
+     * @return the estimated milliseconds or {@code -1} if this chain isn't fetching.
+     */
+    long estimateRemainMillis() {
+        final BlockInfo blockInfo = info.getBlock(blockIndex);
+        synchronized (blockInfo) {
+            if (fetchOffset < 0 || isFinished()) return -1;
+
+            final long remainLength = blockInfo.getStartOffset() + blockInfo.getContentLength()
+                    - fetchOffset;
+            final long fetchedLength = fetchOffset - fetchStartOffset;
+            // nothing is fetched yet, it's the slowest one.
+            if (fetchedLength <= 0) return Long.MAX_VALUE;
+
+            final long elapsedMillis = SystemClock.uptimeMillis() - fetchStartMillis;
+            return remainLength * Math.max(1, elapsedMillis) / fetchedLength;
+        }
+    }
+
+    /**
+     * Split the tail half of the rest range of this block to a new block, and this chain will
+     * stop fetching when it reaches the new end of its block.
+     *
+     * @param newBlockIndex  the index of the new block, it must be the block count of the info.
+     * @param minSplitLength the minimum length of the range to split.
+     * @return the new block which has been added to the info and required on the output stream,
+     * or {@code null} if the rest range is too small or this chain isn't fetching.
+     */
+    @Nullable BlockInfo splitTail(int newBlockIndex, long minSplitLength) {
+        final BlockInfo blockInfo = info.getBlock(blockIndex);
+        synchronized (blockInfo) {
+            if (fetchOffset < 0 || isFinished()) return null;
+
+            final long rangeEnd = blockInfo.getStartOffset() + blockInfo.getContentLength();
+            final long remainLength = rangeEnd - fetchOffset;
+            if (remainLength < minSplitLength * 2) return null;
+
+            // must be required before this block is shrunk, otherwise this block may be end
+            // and all streams are end before the new block is required.
+            if (!getOutputStream().addRequireStreamBlock(newBlockIndex)) return null;
+
+            final long splitOffset = fetchOffset + remainLength / 2;
+            final BlockInfo newBlockInfo = new BlockInfo(splitOffset, rangeEnd - splitOffset);
+            blockInfo.shrinkContentLength(splitOffset - blockInfo.getStartOffset());
+            responseContentLength -= newBlockInfo.getContentLength();
+            info.addBlock(newBlockInfo);
+            return newBlockInfo;
+        }
+    }
+
     public void resetConnectForRetry() {
         connectIndex = 1;
         releaseConnection();
@@ -208,6 +338,7 @@ public class DownloadChain implements Runnable {
                     + "] block[" + blockIndex + "]");
         }
         connection = null;
+        trialConnection = null;
     }
 
     public DownloadConnection.Connected processConnect() throws IOException {
@@ -222,8 +353,8 @@ public class DownloadChain implements Runnable {
 
     public long loopFetch() throws IOException {
         if (fetchIndex == fetchInterceptorList.size()) {
-            // last one is fetch data interceptor
-            fetchIndex--;
+            // back to the rate limit interceptor which wraps the last fetch data interceptor.
+            fetchIndex = fetchLoopIndex;
         }
         return processFetch();
     }
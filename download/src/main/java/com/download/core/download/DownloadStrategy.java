@@ -22,6 +22,7 @@ import android.net.ConnectivityManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.download.DownloadMonitor;
 import com.download.DownloadTask;
 import com.download.OkDownload;
 import com.download.core.Util;
@@ -52,14 +53,14 @@ public class DownloadStrategy {
 
     private static final String TAG = "DownloadStrategy";
 
-    // 1 connection: [0, 1MB)
-    private static final long ONE_CONNECTION_UPPER_LIMIT = 1024 * 1024; // 1MiB
-    // 2 connection: [1MB, 5MB)
-    private static final long TWO_CONNECTION_UPPER_LIMIT = 5 * 1024 * 1024; // 5MiB
-    // 3 connection: [5MB, 50MB)
-    private static final long THREE_CONNECTION_UPPER_LIMIT = 50 * 1024 * 1024; // 50MiB
-    // 4 connection: [50MB, 100MB)
-    private static final long FOUR_CONNECTION_UPPER_LIMIT = 100 * 1024 * 1024; // 100MiB
+    // the range less than this isn't worth to split for a new connection.
+    private static final long MIN_SPLIT_BLOCK_LENGTH = 1024 * 1024; // 1MiB
+
+    @NonNull private volatile BlockCountPolicy blockCountPolicy =
+            new ThroughputBlockCountPolicy();
+    @Nullable private volatile ContentDedup contentDedup;
+    @Nullable private volatile TrialValidatorCache trialValidatorCache;
+    private volatile boolean mergeTrialWithFetch;
 
     public ResumeAvailableResponseCheck resumeAvailableResponseCheck(
             DownloadConnection.Connected connected,
@@ -71,23 +72,113 @@ public class DownloadStrategy {
     public int determineBlockCount(@NonNull DownloadTask task, long totalLength) {
         if (task.getSetConnectionCount() != null) return task.getSetConnectionCount();
 
-        if (totalLength < ONE_CONNECTION_UPPER_LIMIT) {
-            return 1;
-        }
+        final int blockCount = Math.max(1,
+                blockCountPolicy.determineBlockCount(task, totalLength));
 
-        if (totalLength < TWO_CONNECTION_UPPER_LIMIT) {
-            return 2;
+        final DownloadMonitor monitor = OkDownload.with().getMonitor();
+        if (monitor instanceof DownloadMonitor.BlockCountMonitor) {
+            ((DownloadMonitor.BlockCountMonitor) monitor)
+                    .taskBlockCountDetermined(task, totalLength, blockCount);
         }
 
-        if (totalLength < THREE_CONNECTION_UPPER_LIMIT) {
-            return 3;
-        }
+        return blockCount;
+    }
 
-        if (totalLength < FOUR_CONNECTION_UPPER_LIMIT) {
-            return 4;
-        }
+    /**
+     * Set the policy to determine the count of blocks for the task which has no connection count
+     * set, the default one is {@link ThroughputBlockCountPolicy}.
+     */
+    public void setBlockCountPolicy(@NonNull BlockCountPolicy blockCountPolicy) {
+        this.blockCountPolicy = blockCountPolicy;
+    }
+
+    @NonNull public BlockCountPolicy blockCountPolicy() {
+        return blockCountPolicy;
+    }
+
+    /**
+     * Set the index to fetch the same content only once for the tasks to the different files,
+     * it's disabled by default.
+     *
+     * @param contentDedup {@code null} to disable it.
+     */
+    public void setContentDedup(@Nullable ContentDedup contentDedup) {
+        this.contentDedup = contentDedup;
+    }
+
+    @Nullable public ContentDedup contentDedup() {
+        return contentDedup;
+    }
+
+    /**
+     * Set the cache of the trial results to skip the trial connection for the url trialed
+     * recently, it's disabled by default.
+     *
+     * @param trialValidatorCache {@code null} to disable it.
+     */
+    public void setTrialValidatorCache(@Nullable TrialValidatorCache trialValidatorCache) {
+        this.trialValidatorCache = trialValidatorCache;
+    }
+
+    @Nullable public TrialValidatorCache trialValidatorCache() {
+        return trialValidatorCache;
+    }
+
+    /**
+     * Set whether the trial connection requests the whole resource and keeps fetching the first
+     * block, instead of requesting the first byte only and connecting again for the first block,
+     * it's disabled by default.
+     * <p>
+     * It saves one request for each task, the small resource is fetched with just one request,
+     * and the large one fetches its first block on the trial connection and the other blocks on
+     * their own connections as usual. But the rest of the resource out of the first block which
+     * has been sent by the backend is wasted.
+     */
+    public void setMergeTrialWithFetch(boolean mergeTrialWithFetch) {
+        this.mergeTrialWithFetch = mergeTrialWithFetch;
+    }
+
+    /**
+     * Check whether the trial connection of the {@code task} should request the whole resource
+     * to fetch the first block directly, only for the task without any breakpoint.
+     */
+    public boolean isTrialMergedWithFetch(@NonNull DownloadTask task,
+                                          @NonNull BreakpointInfo info) {
+        if (!mergeTrialWithFetch) return false;
+
+        return info.getTotalOffset() == 0 && Util.isEmpty(info.getEtag());
+    }
+
+    /**
+     * Inspect the block response of the task whose trial connection is skipped, the cached trial
+     * result is discarded and the task is retried from beginning if they are contradicted.
+     */
+    public void inspectSkippedTrialResponse(@NonNull DownloadConnection.Connected connected,
+                                            int blockIndex, @NonNull DownloadTask task,
+                                            @NonNull BreakpointInfo info) throws IOException {
+        final ResumeFailedCause cause = TrialValidatorCache.findContradiction(connected,
+                blockIndex, info);
+        if (cause == null) return;
+
+        Util.w(TAG, "the response of task[" + task.getId() + "] block(" + blockIndex
+                + ") contradicts the cached trial result " + cause);
+        final TrialValidatorCache validatorCache = this.trialValidatorCache;
+        if (validatorCache != null) validatorCache.invalidate(task.getUrl());
+        throw new ResumeFailedException(cause);
+    }
+
+    /**
+     * Get the minimum length of the range can be split from the slowest block for the connection
+     * which has finished its own block, so one slow connection won't gate the completion of the
+     * whole task. The block is only split when its rest range is at least twice of this value.
+     *
+     * @return the minimum length of the split range, or {@code 0} to disable the splitting.
+     */
+    public long minSplitBlockLength(@NonNull DownloadTask task, @NonNull BreakpointInfo info) {
+        if (info.isChunked() || info.getBlockCount() <= 1) return 0;
+        if (!OkDownload.with().outputStreamFactory().supportSeek()) return 0;
 
-        return 5;
+        return MIN_SPLIT_BLOCK_LENGTH;
     }
 
     public long reuseIdledSameInfoThresholdBytes() {
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.IntRange;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The token bucket to limit the bytes per-second fetched by the connections share it.
+ * <p>
+ * Each fetching reserves its bytes in order and gets the duration to wait before the next
+ * fetching, so the connections share the budget fairly in turns. The bytes reserved are paid by
+ * the following reservations, so the first fetching after idle is never delayed, and the idle time
+ * is saved as the burst at most {@link #MAX_BURST_MILLIS} of the budget.
+ */
+public class RateLimiter {
+
+    static final long UNLIMITED = 0;
+
+    // the max duration of the idle budget can be saved for the burst.
+    private static final long MAX_BURST_MILLIS = 100;
+
+    // volatile for the unlimited one can be passed without lock.
+    private volatile long bytesPerSecond;
+    // the time the next reservation is available.
+    private long nextFreeNanos;
+    private double storedBytes;
+    // increased when the budget is changed, so the waiting with the old budget can be stopped.
+    private volatile int budgetVersion;
+
+    public RateLimiter() {
+        this(UNLIMITED);
+    }
+
+    /**
+     * @param bytesPerSecond the budget of bytes per-second, {@code 0} means unlimited.
+     */
+    public RateLimiter(@IntRange(from = 0) long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(UNLIMITED, bytesPerSecond);
+    }
+
+    /**
+     * Change the budget, it takes effect for the running connections immediately.
+     *
+     * @param bytesPerSecond the budget of bytes per-second, {@code 0} means unlimited.
+     */
+    public synchronized void setBytesPerSecond(@IntRange(from = 0) long bytesPerSecond) {
+        bytesPerSecond = Math.max(UNLIMITED, bytesPerSecond);
+        if (this.bytesPerSecond == bytesPerSecond) return;
+
+        this.bytesPerSecond = bytesPerSecond;
+        // the debts of the old budget are forgiven.
+        this.nextFreeNanos = nowNanos();
+        this.storedBytes = 0;
+        budgetVersion++;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public boolean isUnlimited() {
+        return getBytesPerSecond() == UNLIMITED;
+    }
+
+    /**
+     * Get the version of the budget, it's changed whenever the budget is changed.
+     */
+    public int getBudgetVersion() {
+        return budgetVersion;
+    }
+
+    /**
+     * Reserve the {@code bytes} which have been fetched.
+     *
+     * @return the nanoseconds to wait before fetching more bytes.
+     */
+    public long reserve(long bytes) {
+        if (bytesPerSecond == UNLIMITED || bytes <= 0) return 0;
+
+        synchronized (this) {
+            return reserveLocked(bytes);
+        }
+    }
+
+    private long reserveLocked(long bytes) {
+        if (bytesPerSecond == UNLIMITED) return 0;
+
+        final long nowNanos = nowNanos();
+        if (nowNanos > nextFreeNanos) {
+            // save the idle budget for the burst.
+            final double maxStoredBytes = bytesPerSecond * MAX_BURST_MILLIS / 1000d;
+            storedBytes = Math.min(maxStoredBytes, storedBytes
+                    + (nowNanos - nextFreeNanos) * bytesPerSecond / (double) TimeUnit.SECONDS
+                    .toNanos(1));
+            nextFreeNanos = nowNanos;
+        }
+
+        final long waitNanos = nextFreeNanos - nowNanos;
+
+        final double fromStoredBytes = Math.min(bytes, storedBytes);
+        storedBytes -= fromStoredBytes;
+        final double freshBytes = bytes - fromStoredBytes;
+        nextFreeNanos += (long) (freshBytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+
+        return waitNanos;
+    }
+
+    // convenient for test
+    long nowNanos() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.core.Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The block count policy which learns the throughput of each connection count for each host from
+ * the completed tasks, and chooses the connection count which has the highest measured
+ * throughput, it is capped by the max connection count for each host.
+ * <p>
+ * Before anything is measured for the host, the count is determined by the size of the resource.
+ * After that, the count next to the best one which hasn't been measured is tried, so the count
+ * climbs up for the server throttles each connection and stays low for the fast CDN.
+ */
+public class ThroughputBlockCountPolicy implements BlockCountPolicy {
+
+    private static final String TAG = "ThroughputBlockCount";
+
+    // 1 connection: [0, 1MB)
+    private static final long ONE_CONNECTION_UPPER_LIMIT = 1024 * 1024; // 1MiB
+    // 2 connection: [1MB, 5MB)
+    private static final long TWO_CONNECTION_UPPER_LIMIT = 5 * 1024 * 1024; // 5MiB
+    // 3 connection: [5MB, 50MB)
+    private static final long THREE_CONNECTION_UPPER_LIMIT = 50 * 1024 * 1024; // 50MiB
+    // 4 connection: [50MB, 100MB)
+    private static final long FOUR_CONNECTION_UPPER_LIMIT = 100 * 1024 * 1024; // 100MiB
+
+    private static final int DEFAULT_MAX_CONNECTION_PER_HOST = 5;
+    // one more connection isn't worth for the block less than this.
+    private static final long MIN_BLOCK_LENGTH = 512 * 1024; // 512KiB
+    // the task fetched less than this is too short to measure the throughput.
+    private static final long MIN_SAMPLE_LENGTH = 1024 * 1024; // 1MiB
+    // the weight of the newest sample on the moving average.
+    private static final float SAMPLE_WEIGHT = 0.3f;
+    // the more connections have to be faster than this ratio to be chosen.
+    private static final float MIN_GAIN_RATIO = 1.1f;
+    private static final int MAX_HOST_COUNT = 64;
+
+    private final int maxConnectionPerHost;
+    private final Map<String, HostThroughput> hostThroughputMap =
+            new LinkedHashMap<String, HostThroughput>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, HostThroughput> eldest) {
+                    return size() > MAX_HOST_COUNT;
+                }
+            };
+
+    public ThroughputBlockCountPolicy() {
+        this(DEFAULT_MAX_CONNECTION_PER_HOST);
+    }
+
+    /**
+     * @param maxConnectionPerHost the max count of connections for each task to the same host.
+     */
+    public ThroughputBlockCountPolicy(@IntRange(from = 1) int maxConnectionPerHost) {
+        this.maxConnectionPerHost = Math.max(1, maxConnectionPerHost);
+    }
+
+    @Override
+    public int determineBlockCount(@NonNull DownloadTask task, long totalLength) {
+        if (totalLength < ONE_CONNECTION_UPPER_LIMIT) return 1;
+
+        final int maxCount = (int) Math.max(1,
+                Math.min(maxConnectionPerHost, totalLength / MIN_BLOCK_LENGTH));
+        final int lengthBasedCount = Math.min(maxCount, determineBlockCountByLength(totalLength));
+
+        final String host = hostOf(task);
+        if (host == null) return lengthBasedCount;
+
+        final int blockCount;
+        synchronized (hostThroughputMap) {
+            final HostThroughput throughput = hostThroughputMap.get(host);
+            if (throughput == null) return lengthBasedCount;
+            blockCount = throughput.choose(lengthBasedCount, maxCount);
+        }
+
+        Util.d(TAG, "task[" + task.getId() + "] choose " + blockCount + " connections for "
+                + host + " instead of " + lengthBasedCount);
+        return blockCount;
+    }
+
+    @Override
+    public void onTaskFetched(@NonNull DownloadTask task, int connectionCount,
+                              long fetchedLength, long bytesPerSecond) {
+        if (fetchedLength < MIN_SAMPLE_LENGTH || bytesPerSecond <= 0) return;
+        if (connectionCount < 1 || connectionCount > maxConnectionPerHost) return;
+
+        final String host = hostOf(task);
+        if (host == null) return;
+
+        synchronized (hostThroughputMap) {
+            HostThroughput throughput = hostThroughputMap.get(host);
+            if (throughput == null) {
+                throughput = new HostThroughput(maxConnectionPerHost);
+                hostThroughputMap.put(host, throughput);
+            }
+            throughput.onSample(connectionCount, bytesPerSecond);
+        }
+
+        Util.d(TAG, host + " with " + connectionCount + " connections: "
+                + Util.humanReadableBytes(bytesPerSecond, true) + "/s");
+    }
+
+    /**
+     * Get the measured throughput of the {@code host} with {@code connectionCount} connections.
+     *
+     * @return the moving average of bytes per-second, or {@code 0} if it hasn't been measured.
+     */
+    public long getBytesPerSecond(@NonNull String host, int connectionCount) {
+        if (connectionCount < 1 || connectionCount > maxConnectionPerHost) return 0;
+
+        synchronized (hostThroughputMap) {
+            final HostThroughput throughput = hostThroughputMap.get(host);
+            return throughput == null ? 0 : throughput.bytesPerSecond[connectionCount];
+        }
+    }
+
+    public int getMaxConnectionPerHost() {
+        return maxConnectionPerHost;
+    }
+
+    int determineBlockCountByLength(long totalLength) {
+        if (totalLength < ONE_CONNECTION_UPPER_LIMIT) {
+            return 1;
+        }
+
+        if (totalLength < TWO_CONNECTION_UPPER_LIMIT) {
+            return 2;
+        }
+
+        if (totalLength < THREE_CONNECTION_UPPER_LIMIT) {
+            return 3;
+        }
+
+        if (totalLength < FOUR_CONNECTION_UPPER_LIMIT) {
+            return 4;
+        }
+
+        return 5;
+    }
+
+    @Nullable static String hostOf(@NonNull DownloadTask task) {
+        final String redirectLocation = task.getRedirectLocation();
+        final String url = redirectLocation != null ? redirectLocation : task.getUrl();
+        return Util.getHost(url);
+    }
+
+    static class HostThroughput {
+        // index by the connection count, 0 means not measured yet.
+        final long[] bytesPerSecond;
+
+        HostThroughput(int maxConnectionCount) {
+            this.bytesPerSecond = new long[maxConnectionCount + 1];
+        }
+
+        void onSample(int connectionCount, long sampleBytesPerSecond) {
+            final long last = bytesPerSecond[connectionCount];
+            if (last == 0) {
+                bytesPerSecond[connectionCount] = sampleBytesPerSecond;
+            } else {
+                bytesPerSecond[connectionCount] = (long) (last * (1 - SAMPLE_WEIGHT)
+                        + sampleBytesPerSecond * SAMPLE_WEIGHT);
+            }
+        }
+
+        int choose(int lengthBasedCount, int maxCount) {
+            int best = -1;
+            for (int count = 1; count <= maxCount; count++) {
+                final long speed = bytesPerSecond[count];
+                if (speed == 0) continue;
+                // prefer the fewer connections if the more ones aren't obviously faster.
+                if (best < 0 || speed > bytesPerSecond[best] * MIN_GAIN_RATIO) best = count;
+            }
+
+            if (best < 0) return lengthBasedCount;
+
+            // try the neighbours which haven't been measured.
+            if (best + 1 <= maxCount && bytesPerSecond[best + 1] == 0) return best + 1;
+            if (best - 1 >= 1 && bytesPerSecond[best - 1] == 0) return best - 1;
+
+            return best;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.NonNull;
+
+import com.download.core.connection.DownloadConnection;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The connection of the trial which requests the whole resource, it's kept open to fetch the
+ * first block directly instead of connecting again.
+ */
+public class TrialConnection {
+    @NonNull final DownloadConnection connection;
+    @NonNull private final DownloadConnection.Connected connected;
+    @NonNull private final Map<String, List<String>> requestProperties;
+
+    TrialConnection(@NonNull DownloadConnection connection,
+                    @NonNull DownloadConnection.Connected connected,
+                    @NonNull Map<String, List<String>> requestProperties) {
+        this.connection = connection;
+        this.connected = connected;
+        this.requestProperties = requestProperties;
+    }
+
+    @NonNull public DownloadConnection.Connected getConnected() {
+        return connected;
+    }
+
+    /**
+     * Get the request properties of the trial, the request properties of the connection can't be
+     * got after it's connected on some implementations.
+     */
+    @NonNull public Map<String, List<String>> getRequestProperties() {
+        return requestProperties;
+    }
+
+    void release() {
+        connection.release();
+    }
+}
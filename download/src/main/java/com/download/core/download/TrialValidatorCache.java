@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.core.Util;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.cause.ResumeFailedCause;
+import com.download.core.connection.DownloadConnection;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.download.core.Util.CONTENT_LENGTH;
+import static com.download.core.Util.CONTENT_RANGE;
+import static com.download.core.Util.ETAG;
+
+/**
+ * The cache of the results of the {@link ConnectTrial} for each url, so the task for the url
+ * trialed recently connects its blocks directly without the trial round-trips.
+ * <p>
+ * Only the trial of the resource with the certain instance length is cached. The response of each
+ * block connection of the task using the cached result is inspected, if it contradicts the cached
+ * result, the result is discarded and the task is retried with the trial again.
+ */
+public class TrialValidatorCache {
+
+    private static final String TAG = "TrialValidatorCache";
+
+    private static final int DEFAULT_MAX_COUNT = 1024;
+
+    private final long ttlMillis;
+    // url -> result, the least recently used one is evicted.
+    private final LinkedHashMap<String, Result> results;
+
+    /**
+     * @param ttlMillis the milliseconds the result of the trial is valid after it's cached.
+     */
+    public TrialValidatorCache(long ttlMillis) {
+        this(ttlMillis, DEFAULT_MAX_COUNT);
+    }
+
+    public TrialValidatorCache(long ttlMillis, final int maxCount) {
+        this.ttlMillis = ttlMillis;
+        this.results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > maxCount;
+            }
+        };
+    }
+
+    @Nullable synchronized Result get(@NonNull String url) {
+        final Result result = results.get(url);
+        if (result == null) return null;
+
+        if (SystemClock.uptimeMillis() >= result.expireAtMillis) {
+            results.remove(url);
+            return null;
+        }
+        return result;
+    }
+
+    synchronized void put(@NonNull String url, int responseCode, boolean acceptRange,
+                          long instanceLength, @Nullable String etag, @Nullable String filename,
+                          @Nullable String redirectLocation) {
+        if (instanceLength < 0) return;
+        if (responseCode != HttpURLConnection.HTTP_OK
+                && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+            return;
+        }
+
+        results.put(url, new Result(responseCode, acceptRange, instanceLength, etag, filename,
+                redirectLocation, SystemClock.uptimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Provide the result of the {@code url} known from elsewhere, such as the metadata from the
+     * feed of the resources, so even the first task for it skips the trial.
+     *
+     * @param acceptRange whether the backend accepts the range request for the {@code url}.
+     */
+    public void put(@NonNull String url, long instanceLength, boolean acceptRange,
+                    @Nullable String etag) {
+        put(url, acceptRange ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK,
+                acceptRange, instanceLength, etag, null, null);
+    }
+
+    /**
+     * Discard the result of the {@code url}, so the next task for it executes the trial again.
+     */
+    public synchronized void invalidate(@NonNull String url) {
+        if (results.remove(url) != null) Util.d(TAG, "invalidate " + url);
+    }
+
+    public synchronized void clear() {
+        results.clear();
+    }
+
+    /**
+     * Find the contradiction between the block response and the {@code info} assembled from the
+     * cached result.
+     *
+     * @return {@code null} if the response is consistent with the {@code info}.
+     */
+    @Nullable static ResumeFailedCause findContradiction(
+            @NonNull DownloadConnection.Connected connected, int blockIndex,
+            @NonNull BreakpointInfo info) throws IOException {
+        final int responseCode = connected.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK
+                && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+            return ResumeFailedCause.RESPONSE_PRECONDITION_FAILED;
+        }
+
+        final String localEtag = info.getEtag();
+        final String responseEtag = connected.getResponseHeaderField(ETAG);
+        if (!Util.isEmpty(localEtag) && !Util.isEmpty(responseEtag)
+                && !localEtag.equals(responseEtag)) {
+            return ResumeFailedCause.RESPONSE_ETAG_CHANGED;
+        }
+
+        final long instanceLength = info.getTotalLength();
+        final BlockInfo blockInfo = info.getBlock(blockIndex);
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            // the range is ignored, it's only fine for the whole resource.
+            if (blockInfo.getRangeLeft() != 0 || info.getBlockCount() > 1) {
+                return ResumeFailedCause.RESPONSE_PRECONDITION_FAILED;
+            }
+
+            final String contentLength = connected.getResponseHeaderField(CONTENT_LENGTH);
+            if (!Util.isEmpty(contentLength)
+                    && Util.parseContentLength(contentLength) != instanceLength) {
+                return ResumeFailedCause.CONTENT_LENGTH_CHANGED;
+            }
+            return null;
+        }
+
+        final String contentRange = connected.getResponseHeaderField(CONTENT_RANGE);
+        if (contentRange != null) {
+            final int slashIndex = contentRange.lastIndexOf('/');
+            if (slashIndex >= 0) {
+                final String length = contentRange.substring(slashIndex + 1).trim();
+                if (!"*".equals(length) && !String.valueOf(instanceLength).equals(length)) {
+                    return ResumeFailedCause.CONTENT_LENGTH_CHANGED;
+                }
+            }
+        }
+        return null;
+    }
+
+    static class Result {
+        final int responseCode;
+        final boolean acceptRange;
+        final long instanceLength;
+        @Nullable final String etag;
+        @Nullable final String filename;
+        @Nullable final String redirectLocation;
+        final long expireAtMillis;
+
+        Result(int responseCode, boolean acceptRange, long instanceLength, @Nullable String etag,
+               @Nullable String filename, @Nullable String redirectLocation,
+               long expireAtMillis) {
+            this.responseCode = responseCode;
+            this.acceptRange = acceptRange;
+            this.instanceLength = instanceLength;
+            this.etag = etag;
+            this.filename = filename;
+            this.redirectLocation = redirectLocation;
+            this.expireAtMillis = expireAtMillis;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.file;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.core.Util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The output stream which owns a private {@link FileChannel} for each block and writes with the
+ * positional {@link FileChannel#write(ByteBuffer, long)}, so the position of the channel is never
+ * shared and there is no need to seek the shared file pointer before writing.
+ * <p>
+ * If the mapped window size is provided through {@link Factory#setMappedWindowSize(long)}, the
+ * data is put to a {@link MappedByteBuffer} window over the block range instead, and the window
+ * slides forward when it is filled. The window never exceeds the current length of the file, so
+ * it is only effect when the length has been pre-allocated, otherwise the positional writing is
+ * used.
+ */
+public class DownloadFileChannelOutputStream implements DownloadOutputStream,
+        DownloadOutputStream.SeparateSync {
+
+    private static final String TAG = "DownloadFileChannelOutputStream";
+
+    @NonNull private final FileChannel channel;
+    @Nullable private final RandomAccessFile randomAccessFile;
+    @Nullable private final ParcelFileDescriptor pdf;
+    @NonNull private final ByteBuffer buffer;
+    private final long mappedWindowSize;
+
+    // the position of the next byte, include the bytes still on the buffer.
+    private long position;
+
+    @Nullable private MappedByteBuffer mappedWindow;
+    private long mappedWindowStart;
+
+    DownloadFileChannelOutputStream(@NonNull File file, int bufferSize, long mappedWindowSize)
+            throws FileNotFoundException {
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.pdf = null;
+        this.channel = randomAccessFile.getChannel();
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    DownloadFileChannelOutputStream(Context context, Uri uri, int bufferSize)
+            throws FileNotFoundException {
+        final ParcelFileDescriptor pdf = context.getContentResolver().openFileDescriptor(uri, "rw");
+        if (pdf == null) throw new FileNotFoundException("result of " + uri + " is null!");
+        this.pdf = pdf;
+        this.randomAccessFile = null;
+        this.channel = new FileOutputStream(pdf.getFileDescriptor()).getChannel();
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        // the channel from the file descriptor isn't readable, so it can't be mapped.
+        this.mappedWindowSize = 0;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (mappedWindowSize > 0 && ensureMappedWindow()) {
+                final int count = Math.min(len, mappedWindow.remaining());
+                mappedWindow.put(b, off, count);
+                position += count;
+                off += count;
+                len -= count;
+                continue;
+            }
+
+            if (buffer.position() == 0 && len >= buffer.capacity()) {
+                // no need to copy to the buffer for the large chunk.
+                writeFully(ByteBuffer.wrap(b, off, len), position);
+                position += len;
+                return;
+            }
+
+            final int count = Math.min(len, buffer.remaining());
+            buffer.put(b, off, count);
+            position += count;
+            off += count;
+            len -= count;
+
+            if (!buffer.hasRemaining()) flushBuffer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            flushBuffer();
+            mappedWindow = null;
+        }
+
+        channel.close();
+        if (randomAccessFile != null) randomAccessFile.close();
+        if (pdf != null) pdf.close();
+    }
+
+    @Override
+    public void flushAndSync() throws IOException {
+        flush();
+        sync();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        final MappedByteBuffer window;
+        synchronized (this) {
+            flushBuffer();
+            window = mappedWindow;
+        }
+
+        // the force of channel isn't guaranteed to cover the modification on the mapped window.
+        if (window != null) window.force();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        // the dirty pages of the windows which have been slid over are synced here too.
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void seek(long offset) throws IOException {
+        flushBuffer();
+        mappedWindow = null;
+        position = offset;
+    }
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        if (randomAccessFile != null) {
+            DownloadUriOutputStream.preAllocateLength(randomAccessFile.getFD(), newLength);
+        } else if (pdf != null) {
+            DownloadUriOutputStream.preAllocateLength(pdf.getFileDescriptor(), newLength);
+        }
+    }
+
+    private boolean ensureMappedWindow() throws IOException {
+        if (mappedWindow != null && mappedWindow.hasRemaining()
+                && mappedWindowStart + mappedWindow.position() == position) {
+            return true;
+        }
+
+        final long available = channel.size() - position;
+        if (available <= 0) {
+            mappedWindow = null;
+            return false;
+        }
+
+        flushBuffer();
+        final long windowSize = Math.min(mappedWindowSize, available);
+        mappedWindow = channel.map(FileChannel.MapMode.READ_WRITE, position, windowSize);
+        mappedWindowStart = position;
+        Util.d(TAG, "map window [" + position + ", " + (position + windowSize) + ")");
+        return true;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer.position() == 0) return;
+
+        buffer.flip();
+        writeFully(buffer, position - buffer.remaining());
+        buffer.clear();
+    }
+
+    private void writeFully(@NonNull ByteBuffer src, long writePosition) throws IOException {
+        while (src.hasRemaining()) {
+            writePosition += channel.write(src, writePosition);
+        }
+    }
+
+    public static class Factory implements DownloadOutputStream.Factory {
+
+        private long mappedWindowSize;
+
+        /**
+         * Set the size of the {@link MappedByteBuffer} window for each block, the default value
+         * is {@code 0} which means using positional writing without mapping.
+         *
+         * @param mappedWindowSize the bytes of each mapped window.
+         */
+        public Factory setMappedWindowSize(long mappedWindowSize) {
+            this.mappedWindowSize = Math.max(0, mappedWindowSize);
+            return this;
+        }
+
+        @Override
+        public DownloadOutputStream create(Context context, File file, int flushBufferSize)
+                throws FileNotFoundException {
+            return new DownloadFileChannelOutputStream(file, flushBufferSize, mappedWindowSize);
+        }
+
+        @Override
+        public DownloadOutputStream create(Context context, Uri uri, int flushBufferSize)
+                throws FileNotFoundException {
+            if (Util.isUriFileScheme(uri)) {
+                return create(context, new File(uri.getPath()), flushBufferSize);
+            }
+
+            return new DownloadFileChannelOutputStream(context, uri, flushBufferSize);
+        }
+
+        @Override
+        public boolean supportSeek() {
+            return true;
+        }
+    }
+}
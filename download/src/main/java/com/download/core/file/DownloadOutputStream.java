@@ -34,6 +34,20 @@ public interface DownloadOutputStream {
 
     void setLength(long newLength) throws IOException;
 
+    /**
+     * The output stream which can flush its buffered data to the file and sync the file
+     * separately, so the streams of the blocks on the same file only need to be synced once.
+     */
+    interface SeparateSync {
+        void flush() throws IOException;
+
+        /**
+         * Sync the whole file to the storage device, includes the data flushed by the other
+         * streams on the same file.
+         */
+        void sync() throws IOException;
+    }
+
     interface Factory {
         DownloadOutputStream create(Context context, File file, int flushBufferSize)
                 throws FileNotFoundException;
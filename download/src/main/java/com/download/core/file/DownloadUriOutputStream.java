@@ -29,12 +29,14 @@ import com.download.core.Util;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 
-public class DownloadUriOutputStream implements DownloadOutputStream {
+public class DownloadUriOutputStream implements DownloadOutputStream,
+        DownloadOutputStream.SeparateSync {
 
     @NonNull private final FileChannel channel;
     @NonNull final ParcelFileDescriptor pdf;
@@ -79,23 +81,37 @@ public class DownloadUriOutputStream implements DownloadOutputStream {
         pdf.getFileDescriptor().sync();
     }
 
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        pdf.getFileDescriptor().sync();
+    }
+
     @Override
     public void seek(long offset) throws IOException {
         channel.position(offset);
     }
     @Override
     public void setLength(long newLength) {
+        preAllocateLength(pdf.getFileDescriptor(), newLength);
+    }
+
+    static void preAllocateLength(@NonNull FileDescriptor fd, long newLength) {
         final String tag = "DownloadUriOutputStream";
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             try {
-                Os.posix_fallocate(pdf.getFileDescriptor(), 0, newLength);
+                Os.posix_fallocate(fd, 0, newLength);
             } catch (Throwable e) {
                 if (e instanceof ErrnoException) {
                     if (((ErrnoException) e).errno == OsConstants.ENOSYS
                             || ((ErrnoException) e).errno == OsConstants.ENOTSUP) {
                         Util.w(tag, "fallocate() not supported; falling back to ftruncate()");
                         try {
-                            Os.ftruncate(pdf.getFileDescriptor(), newLength);
+                            Os.ftruncate(fd, newLength);
                         } catch (Throwable e1) {
                             Util.w(tag, "It can't pre-allocate length(" + newLength + ") on the sdk"
                                     + " version(" + Build.VERSION.SDK_INT + "), because of " + e1);
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.file;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.core.Util;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared service which runs the flush and sync jobs of all running tasks on a small fixed
+ * pool of workers, instead of one long-running sync thread for each task.
+ * <p>
+ * Each {@link MultiPointOutputStream} only has at most one pending job here, the sync requests
+ * arriving while the job is pending or running are coalesced to it.
+ */
+public class FileSyncService {
+
+    private static final String TAG = "FileSyncService";
+
+    private static final int DEFAULT_WORKER_COUNT = 2;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    @Nullable private volatile SyncLatencyListener syncLatencyListener;
+
+    public FileSyncService() {
+        this(DEFAULT_WORKER_COUNT);
+    }
+
+    /**
+     * @param workerCount the count of the workers to flush and sync data for all tasks, the
+     *                    slow storage won't be benefit from the more parallel sync.
+     */
+    public FileSyncService(@IntRange(from = 1) int workerCount) {
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, workerCount),
+                Util.threadFactory("OkDownload file sync", false));
+        this.executor.setKeepAliveTime(WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Set the listener to receive the cost of each flush and sync for tasks.
+     */
+    public void setSyncLatencyListener(@Nullable SyncLatencyListener syncLatencyListener) {
+        this.syncLatencyListener = syncLatencyListener;
+    }
+
+    void execute(@NonNull Runnable job) {
+        executor.execute(job);
+    }
+
+    ScheduledFuture<?> schedule(@NonNull Runnable job, long delayMillis) {
+        return executor.schedule(job, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void onTaskSynced(@NonNull DownloadTask task, long syncedLength, long costNanos) {
+        Util.d(TAG, "task[" + task.getId() + "] sync " + syncedLength + " bytes cost "
+                + TimeUnit.NANOSECONDS.toMillis(costNanos) + "ms");
+
+        final SyncLatencyListener listener = syncLatencyListener;
+        if (listener != null) listener.onTaskSynced(task, syncedLength, costNanos);
+    }
+
+    public interface SyncLatencyListener {
+        /**
+         * Invoked on the sync worker thread when the data of the {@code task} has been flushed and
+         * synced to the filesystem.
+         *
+         * @param task         the target task.
+         * @param syncedLength the bytes synced this time.
+         * @param costNanos    the nanoseconds cost for the flush and sync.
+         */
+        void onTaskSynced(@NonNull DownloadTask task, long syncedLength, long costNanos);
+    }
+}
@@ -21,7 +21,6 @@ import android.os.StatFs;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.SparseArray;
 
 import com.download.DownloadTask;
 import com.download.OkDownload;
@@ -30,37 +29,44 @@ import com.download.core.breakpoint.BlockInfo;
 import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.breakpoint.DownloadStore;
 import com.download.core.cause.EndCause;
+import com.download.core.exception.InterruptException;
 import com.download.core.exception.PreAllocateException;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class MultiPointOutputStream {
     private static final String TAG = "MultiPointOutputStream";
+    // the cancel may wait for the sync job, so never run it on the bounded sync service.
     private static final ExecutorService FILE_IO_EXECUTOR = new ThreadPoolExecutor(0,
             Integer.MAX_VALUE,
             60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
             Util.threadFactory("OkDownload file io", false));
 
-    final SparseArray<DownloadOutputStream> outputStreamMap = new SparseArray<>();
+    // the fixed per-block slots, created on setRequireStreamBlocks and indexed by block-index.
+    volatile BlockSlot[] slots;
 
-    final SparseArray<AtomicLong> noSyncLengthMap = new SparseArray<>();
     final AtomicLong allNoSyncLength = new AtomicLong();
     final AtomicLong lastSyncTimestamp = new AtomicLong();
-    boolean canceled = false;
+    volatile boolean canceled = false;
 
     private final int flushBufferSize;
     private final int syncBufferSize;
@@ -71,16 +77,35 @@ public class MultiPointOutputStream {
     private final boolean supportSeek;
     private final boolean isPreAllocateLength;
 
-    volatile Future syncFuture;
-    volatile Thread runSyncThread;
-    final SparseArray<Thread> parkedRunBlockThreadMap = new SparseArray<>();
+    static final int SYNC_IDLE = 0;
+    static final int SYNC_RUNNING = 1;
+    static final int SYNC_DELAYED = 2;
+    static final int SYNC_FINISHED = 3;
+
+    // the state of the sync job on the file sync service, there is at most one job pending for
+    // this output stream, and the sync requests are coalesced to it.
+    final AtomicInteger syncState = new AtomicInteger(SYNC_IDLE);
+    volatile boolean syncDirty;
+    @Nullable volatile Future delayedSyncFuture;
+
+    // the done block threads wait on blockSynced for their data having been synced.
+    final ReentrantLock syncLock = new ReentrantLock();
+    final Condition blockSynced = syncLock.newCondition();
+    volatile boolean syncFinished;
+
+    // the block-indexes which become no more stream since the last inspect.
+    final Queue<Integer> newNoMoreStreamBlocks = new ConcurrentLinkedQueue<>();
+    final AtomicInteger noMoreStreamCount = new AtomicInteger();
+    // guards the count of no more stream blocks and the require stream blocks, so once all
+    // required blocks are no more stream, no more block can be required.
+    private final Object requireStreamLock = new Object();
 
     @NonNull private final Runnable syncRunnable;
+    @NonNull private final Runnable delayedSyncRunnable;
+    @NonNull private final FileSyncService fileSyncService;
     private String path;
 
     IOException syncException;
-    @NonNull
-    ArrayList<Integer> noMoreStreamList;
 
 //    @SuppressFBWarnings("IS2_INCONSISTENT_SYNC")
     List<Integer> requireStreamBlocks;
@@ -99,18 +124,26 @@ public class MultiPointOutputStream {
         this.supportSeek = OkDownload.with().outputStreamFactory().supportSeek();
         this.isPreAllocateLength = OkDownload.with().processFileStrategy()
                 .isPreAllocateLength(task);
-        this.noMoreStreamList = new ArrayList<>();
 
         if (syncRunnable == null) {
             this.syncRunnable = new Runnable() {
                 @Override
                 public void run() {
-                    runSyncDelayException();
+                    runSyncJob();
                 }
             };
         } else {
             this.syncRunnable = syncRunnable;
         }
+        this.delayedSyncRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (syncState.compareAndSet(SYNC_DELAYED, SYNC_RUNNING)) {
+                    MultiPointOutputStream.this.syncRunnable.run();
+                }
+            }
+        };
+        this.fileSyncService = OkDownload.with().fileSyncService();
 
         final File file = task.getFile();
         if (file != null) this.path = file.getAbsolutePath();
@@ -122,18 +155,36 @@ public class MultiPointOutputStream {
         this(task, info, store, null);
     }
 
-    public synchronized void write(int blockIndex, byte[] bytes, int length) throws IOException {
+    public void write(int blockIndex, byte[] bytes, int length) throws IOException {
+        write(blockIndex, bytes, 0, length);
+    }
+
+    public void write(int blockIndex, byte[] bytes, int offset, int length) throws IOException {
         // if this task has been canceled, there is no need to write because of the output stream
         // has been closed and there is no need to create a new output stream if this is a first
         // write of this task block
         if (canceled) return;
 
-        outputStream(blockIndex).write(bytes, 0, length);
+        // each block is only written by its own chain thread, so the slot is never contended.
+        final BlockSlot slot = slot(blockIndex);
+        DownloadOutputStream outputStream = slot.outputStream;
+        if (outputStream == null) outputStream = outputStream(blockIndex);
+        try {
+            outputStream.write(bytes, offset, length);
+        } catch (IOException e) {
+            // the stream is closed by the cancel concurrently, just ignore this write.
+            if (canceled) return;
+            throw e;
+        }
 
         // because we add the length value after flush and sync,
         // so the length only possible less than or equal to the real persist length.
-        allNoSyncLength.addAndGet(length);
-        noSyncLengthMap.get(blockIndex).addAndGet(length);
+        final long noSyncLength = allNoSyncLength.addAndGet(length);
+        slot.noSyncLength.addAndGet(length);
+        // only the write which makes the length cross the sync buffer size wakes up the sync.
+        if (noSyncLength >= syncBufferSize && noSyncLength - length < syncBufferSize) {
+            requestSync();
+        }
 
         inspectAndPersist();
     }
@@ -149,15 +200,19 @@ public class MultiPointOutputStream {
 
     public synchronized void cancel() {
         if (requireStreamBlocks == null) return;
-        if (canceled) return;
-        canceled = true;
-        // must ensure sync thread is finished, then can invoke 'ensureSync(true, -1)'
-        // in try block, otherwise, try block will be blocked in 'ensureSync(true, -1)' and
-        // codes in finally block will not be invoked
-        noMoreStreamList.addAll(requireStreamBlocks);
+        synchronized (requireStreamLock) {
+            // no more block can be required after canceled.
+            if (canceled) return;
+            canceled = true;
+        }
+        // all blocks are no more stream, so the sync job will flush the rest data and finish,
+        // and 'ensureSync(true, -1)' won't be blocked forever.
+        for (Integer blockIndex : requireStreamBlocks) {
+            markNoMoreStream(blockIndex);
+        }
         try {
             if (allNoSyncLength.get() <= 0) return;
-            if (syncFuture != null && !syncFuture.isDone()) {
+            if (!syncFinished) {
                 inspectValidPath();
                 OkDownload.with().processFileStrategy().getFileLock().increaseLock(path);
                 try {
@@ -182,34 +237,22 @@ public class MultiPointOutputStream {
         }
     }
 
-    final StreamsState doneState = new StreamsState();
-
     public void done(int blockIndex) throws IOException {
-        noMoreStreamList.add(blockIndex);
+        markNoMoreStream(blockIndex);
 
         try {
             if (syncException != null) throw syncException;
 
-            if (syncFuture != null && !syncFuture.isDone()) {
-                final AtomicLong noSyncLength = noSyncLengthMap.get(blockIndex);
-                if (noSyncLength != null && noSyncLength.get() > 0) {
-                    inspectStreamState(doneState);
-                    final boolean isNoMoreStream = doneState.isNoMoreStream;
-
+            if (!syncFinished) {
+                final BlockSlot slot = slotOrNull(blockIndex);
+                if (slot != null && slot.noSyncLength.get() > 0) {
                     // ensure this block is synced.
-                    ensureSync(isNoMoreStream, blockIndex);
+                    ensureSync(isNoMoreStream(), blockIndex);
                 }
             } else {
-                if (syncFuture == null) {
-                    Util.d(TAG, "OutputStream done but no need to ensure sync, because the "
-                            + "sync job not run yet. task[" + task.getId()
-                            + "] block[" + blockIndex + "]");
-                } else {
-                    Util.d(TAG, "OutputStream done but no need to ensure sync, because the "
-                            + "syncFuture.isDone[" + syncFuture.isDone() + "] task[" + task.getId()
-                            + "] block[" + blockIndex + "]");
-
-                }
+                Util.d(TAG, "OutputStream done but no need to ensure sync, because the "
+                        + "sync job has finished. task[" + task.getId()
+                        + "] block[" + blockIndex + "]");
             }
 
         } finally {
@@ -218,44 +261,25 @@ public class MultiPointOutputStream {
     }
 
     void ensureSync(boolean isNoMoreStream, int blockIndex) {
-        // sync job not run yet.
-        if (syncFuture == null || syncFuture.isDone()) return;
+        if (syncFinished) return;
 
-        if (!isNoMoreStream) {
-            parkedRunBlockThreadMap.put(blockIndex, Thread.currentThread());
-        }
+        final BlockSlot slot = isNoMoreStream ? null : slotOrNull(blockIndex);
+        if (!isNoMoreStream && slot == null) return;
 
-        if (runSyncThread != null) {
-            unparkThread(runSyncThread);
-        } else {
-            // wait for runSyncThread is valid.
-            while (true) {
-                if (isRunSyncThreadValid()) {
-                    unparkThread(runSyncThread);
-                    break;
-                } else {
-                    parkThread(25);
-                }
-            }
-        }
+        requestSync();
 
-        if (isNoMoreStream) {
-            unparkThread(runSyncThread);
-            try {
-                syncFuture.get();
-            } catch (InterruptedException ignored) {
-            } catch (ExecutionException ignored) {
+        syncLock.lock();
+        try {
+            if (isNoMoreStream) {
+                while (!syncFinished) blockSynced.awaitUninterruptibly();
+            } else {
+                while (!slot.synced) blockSynced.awaitUninterruptibly();
             }
-        } else {
-            parkThread();
+        } finally {
+            syncLock.unlock();
         }
     }
 
-    // convenient for test
-    boolean isRunSyncThreadValid() {
-        return runSyncThread != null;
-    }
-
     public void inspectComplete(int blockIndex) throws IOException {
         final BlockInfo blockInfo = info.getBlock(blockIndex);
         if (!Util.isCorrectFull(blockInfo.getCurrentOffset(), blockInfo.getContentLength())) {
@@ -267,89 +291,187 @@ public class MultiPointOutputStream {
 
     void inspectAndPersist() throws IOException {
         if (syncException != null) throw syncException;
-        if (syncFuture == null) {
-            synchronized (syncRunnable) {
-                if (syncFuture == null) {
-                    syncFuture = executeSyncRunnableAsync();
-                }
-            }
-        }
     }
 
     synchronized void close(int blockIndex) throws IOException {
-        final DownloadOutputStream outputStream = outputStreamMap.get(blockIndex);
+        final BlockSlot slot = slotOrNull(blockIndex);
+        if (slot == null) return;
+
+        final DownloadOutputStream outputStream = slot.outputStream;
         if (outputStream != null) {
+            slot.outputStream = null;
             outputStream.close();
-            outputStreamMap.remove(blockIndex);
             Util.d(TAG, "OutputStream close task[" + task.getId() + "] block[" + blockIndex + "]");
         }
     }
 
-    // convenient for test
-    void parkThread(long milliseconds) {
-        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+    @NonNull BlockSlot slot(int blockIndex) throws IOException {
+        final BlockSlot slot = slotOrNull(blockIndex);
+        if (slot == null) {
+            throw new IOException("No stream slot for task[" + task.getId() + "] block["
+                    + blockIndex + "], please set require stream blocks first!");
+        }
+        return slot;
+    }
+
+    @Nullable BlockSlot slotOrNull(int blockIndex) {
+        final BlockSlot[] slots = this.slots;
+        if (slots == null || blockIndex < 0 || blockIndex >= slots.length) return null;
+        return slots[blockIndex];
+    }
+
+    boolean markNoMoreStream(int blockIndex) {
+        final BlockSlot slot = slotOrNull(blockIndex);
+        if (slot == null || !slot.noMoreStream.compareAndSet(false, true)) return false;
+
+        synchronized (requireStreamLock) {
+            noMoreStreamCount.incrementAndGet();
+        }
+        newNoMoreStreamBlocks.offer(blockIndex);
+        requestSync();
+        return true;
+    }
+
+    boolean isNoMoreStream() {
+        synchronized (requireStreamLock) {
+            return requireStreamBlocks != null
+                    && noMoreStreamCount.get() >= requireStreamBlocks.size();
+        }
+    }
+
+    void requestSync() {
+        syncDirty = true;
+        while (true) {
+            final int state = syncState.get();
+            if (state == SYNC_RUNNING || state == SYNC_FINISHED) return;
+
+            if (syncState.compareAndSet(state, SYNC_RUNNING)) {
+                final Future delayed = delayedSyncFuture;
+                if (state == SYNC_DELAYED && delayed != null) delayed.cancel(false);
+                executeSyncJob();
+                return;
+            }
+        }
+    }
+
+    void markBlockSynced(@Nullable BlockSlot slot) {
+        if (slot == null) return;
+
+        syncLock.lock();
+        try {
+            slot.synced = true;
+            blockSynced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
     }
 
-    void parkThread() {
-        LockSupport.park();
+    void finishSync() {
+        syncState.set(SYNC_FINISHED);
+
+        syncLock.lock();
+        try {
+            syncFinished = true;
+            final BlockSlot[] slots = this.slots;
+            if (slots != null) {
+                for (BlockSlot slot : slots) {
+                    slot.synced = true;
+                }
+            }
+            blockSynced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
     }
 
     // convenient for test
-    void unparkThread(Thread thread) {
-        LockSupport.unpark(thread);
+    void executeSyncJob() {
+        fileSyncService.execute(syncRunnable);
     }
 
     // convenient for test
-    Future executeSyncRunnableAsync() {
-        return FILE_IO_EXECUTOR.submit(syncRunnable);
+    Future scheduleSyncJob(long delayMillis) {
+        return fileSyncService.schedule(delayedSyncRunnable, delayMillis);
     }
 
     void inspectStreamState(StreamsState state) {
         state.newNoMoreStreamBlockList.clear();
 
-        @SuppressWarnings("unchecked")
-        final List<Integer> clonedList = (List<Integer>) noMoreStreamList.clone();
-        final Set<Integer> uniqueBlockList = new HashSet<>(clonedList);
-        final int noMoreStreamBlockCount = uniqueBlockList.size();
-        if (noMoreStreamBlockCount != requireStreamBlocks.size()) {
-            Util.d(TAG, "task[" + task.getId() + "] current need fetching block count "
-                    + requireStreamBlocks.size() + " is not equal to no more stream block count "
-                    + noMoreStreamBlockCount);
-            state.isNoMoreStream = false;
-        } else {
+        Integer blockIndex;
+        while ((blockIndex = newNoMoreStreamBlocks.poll()) != null) {
+            state.newNoMoreStreamBlockList.add(blockIndex);
+        }
+
+        state.isNoMoreStream = isNoMoreStream();
+        if (state.isNoMoreStream) {
             Util.d(TAG, "task[" + task.getId() + "] current need fetching block count "
                     + requireStreamBlocks.size() + " is equal to no more stream block count "
-                    + noMoreStreamBlockCount);
-            state.isNoMoreStream = true;
+                    + noMoreStreamCount.get());
         }
+    }
 
-        final SparseArray<DownloadOutputStream> streamMap = outputStreamMap.clone();
-        final int size = streamMap.size();
-        for (int i = 0; i < size; i++) {
-            final int blockIndex = streamMap.keyAt(i);
-            if (noMoreStreamList.contains(blockIndex)
-                    && !state.noMoreStreamBlockList.contains(blockIndex)) {
-                // blockIndex indicate this block is no more stream.
-                // and this is new one
-                state.noMoreStreamBlockList.add(blockIndex);
-                state.newNoMoreStreamBlockList.add(blockIndex);
-            }
+    public void setRequireStreamBlocks(List<Integer> requireStreamBlocks) {
+        // the block split from another block may be required later.
+        this.requireStreamBlocks = new CopyOnWriteArrayList<>(requireStreamBlocks);
+
+        int slotCount = info.getBlockCount();
+        for (Integer blockIndex : requireStreamBlocks) {
+            slotCount = Math.max(slotCount, blockIndex + 1);
         }
+
+        final BlockSlot[] slots = new BlockSlot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new BlockSlot(i);
+        }
+        this.slots = slots;
     }
 
-    public void setRequireStreamBlocks(List<Integer> requireStreamBlocks) {
-        this.requireStreamBlocks = requireStreamBlocks;
+    /**
+     * Require the stream for the block which is split from another block after
+     * {@link #setRequireStreamBlocks(List)}.
+     *
+     * @return {@code false} if all required blocks have been no more stream or this output stream
+     * has been canceled, so the new block can't be required.
+     */
+    public boolean addRequireStreamBlock(int blockIndex) {
+        synchronized (requireStreamLock) {
+            if (canceled || requireStreamBlocks == null) return false;
+            if (noMoreStreamCount.get() >= requireStreamBlocks.size()) return false;
+
+            final BlockSlot[] slots = this.slots;
+            if (blockIndex >= slots.length) {
+                final BlockSlot[] newSlots = Arrays.copyOf(slots, blockIndex + 1);
+                for (int i = slots.length; i < newSlots.length; i++) {
+                    newSlots[i] = new BlockSlot(i);
+                }
+                this.slots = newSlots;
+            }
+
+            requireStreamBlocks.add(blockIndex);
+            return true;
+        }
     }
 
     public void catchBlockConnectException(int blockIndex) {
-        noMoreStreamList.add(blockIndex);
+        markNoMoreStream(blockIndex);
+    }
+
+    static class BlockSlot {
+        final int blockIndex;
+        final AtomicLong noSyncLength = new AtomicLong();
+        final AtomicBoolean noMoreStream = new AtomicBoolean();
+        volatile DownloadOutputStream outputStream;
+        // guarded by syncLock, whether the data of this no more stream block has been synced.
+        boolean synced;
+
+        BlockSlot(int blockIndex) {
+            this.blockIndex = blockIndex;
+        }
     }
 
     static class StreamsState {
         boolean isNoMoreStream;
 
-        List<Integer> noMoreStreamBlockList = new ArrayList<>();
-
         // the new no more stream block list to last inspect.
         List<Integer> newNoMoreStreamBlockList = new ArrayList<>();
 
@@ -360,73 +482,75 @@ public class MultiPointOutputStream {
 
     StreamsState state = new StreamsState();
 
-    void runSyncDelayException() {
-        try {
-            runSync();
-        } catch (IOException e) {
-            syncException = e;
-            Util.w(TAG, "Sync to breakpoint-store for task[" + task.getId() + "] "
-                    + "failed with cause: " + e);
-        }
-    }
-
-    void runSync() throws IOException {
-        Util.d(TAG, "OutputStream start flush looper task[" + task.getId() + "] with "
-                + "syncBufferIntervalMills[" + syncBufferIntervalMills + "] " + "syncBufferSize["
-                + syncBufferSize + "]");
-        runSyncThread = Thread.currentThread();
+    void runSyncJob() {
+        while (true) {
+            syncDirty = false;
 
-        long nextParkMills = syncBufferIntervalMills;
+            final long nextSyncMills;
+            try {
+                nextSyncMills = runSync();
+            } catch (IOException e) {
+                syncException = e;
+                Util.w(TAG, "Sync to breakpoint-store for task[" + task.getId() + "] "
+                        + "failed with cause: " + e);
+                // never leave the done block threads waiting for the sync which won't come.
+                finishSync();
+                return;
+            }
 
-        flushProcess();
+            if (nextSyncMills == NO_MORE_SYNC) {
+                Util.d(TAG, "OutputStream stop sync task[" + task.getId() + "]");
+                finishSync();
+                return;
+            }
 
-        while (true) {
-            parkThread(nextParkMills);
+            if (syncDirty) continue;
 
-            inspectStreamState(state);
+            // the request arrives after the state is changed will schedule a new job, and the
+            // one arrives before will be found by the dirty flag here.
+            if (nextSyncMills > 0) {
+                syncState.set(SYNC_DELAYED);
+                delayedSyncFuture = scheduleSyncJob(nextSyncMills);
+                if (syncDirty && syncState.compareAndSet(SYNC_DELAYED, SYNC_RUNNING)) continue;
+            } else {
+                syncState.set(SYNC_IDLE);
+                if (syncDirty && syncState.compareAndSet(SYNC_IDLE, SYNC_RUNNING)) continue;
+            }
+            return;
+        }
+    }
 
-            // if is no more stream, we will flush all data and quit.
-            if (state.isStreamsEndOrChanged()) {
-                Util.d(TAG, "runSync state change isNoMoreStream[" + state.isNoMoreStream + "]"
-                        + " newNoMoreStreamBlockList[" + state.newNoMoreStreamBlockList + "]");
-                if (allNoSyncLength.get() > 0) {
-                    flushProcess();
-                }
+    static final long NO_MORE_SYNC = -1;
 
-                for (Integer blockIndex : state.newNoMoreStreamBlockList) {
-                    final Thread parkedThread = parkedRunBlockThreadMap.get(blockIndex);
-                    parkedRunBlockThreadMap.remove(blockIndex);
-                    if (parkedThread != null) unparkThread(parkedThread);
-                }
+    /**
+     * @return the milliseconds to run the sync job again, {@code 0} if it only need to run on the
+     * next sync request, or {@link #NO_MORE_SYNC} if all streams are end and the data is synced.
+     */
+    long runSync() throws IOException {
+        inspectStreamState(state);
 
-                if (state.isNoMoreStream) {
-                    final int size = parkedRunBlockThreadMap.size();
-                    for (int i = 0; i < size; i++) {
-                        final Thread parkedThread = parkedRunBlockThreadMap.valueAt(i);
-                        if (parkedThread != null) unparkThread(parkedThread);
-                    }
-                    parkedRunBlockThreadMap.clear();
-                    break;
-                } else {
-                    continue;
-                }
+        if (state.isStreamsEndOrChanged()) {
+            Util.d(TAG, "runSync state change isNoMoreStream[" + state.isNoMoreStream + "]"
+                    + " newNoMoreStreamBlockList[" + state.newNoMoreStreamBlockList + "]");
+            if (allNoSyncLength.get() > 0) {
+                flushProcess();
             }
 
-            if (isNoNeedFlushForLength()) {
-                nextParkMills = syncBufferIntervalMills;
-                continue;
-            }
+            // if is no more stream, we have flushed all data and quit.
+            if (state.isNoMoreStream) return NO_MORE_SYNC;
 
-            nextParkMills = getNextParkMillisecond();
-            if (nextParkMills > 0) {
-                continue;
+            for (Integer blockIndex : state.newNoMoreStreamBlockList) {
+                markBlockSynced(slotOrNull(blockIndex));
             }
-
+        } else if (!isNoNeedFlushForLength() && getNextParkMillisecond() <= 0) {
             flushProcess();
-            nextParkMills = syncBufferIntervalMills;
         }
 
-        Util.d(TAG, "OutputStream stop flush looper task[" + task.getId() + "]");
+        if (isNoNeedFlushForLength()) return 0;
+
+        // the size is still reached, or the flush failed, so retry after the interval.
+        final long nextParkMills = getNextParkMillisecond();
+        return Math.max(1, nextParkMills > 0 ? nextParkMills : syncBufferIntervalMills);
     }
 
     // convenient for test.
@@ -447,28 +571,32 @@ public class MultiPointOutputStream {
 
     void flushProcess() throws IOException {
         boolean success;
-        final int size;
-        synchronized (noSyncLengthMap) {
-            // make sure the length of noSyncLengthMap is equal to outputStreamMap
-            size = noSyncLengthMap.size();
-        }
-
-        final SparseArray<Long> increaseLengthMap = new SparseArray<>(size);
+        final BlockSlot[] slots = this.slots;
+        final long[] increaseLengths = new long[slots.length];
+        final long startNanos = System.nanoTime();
 
         try {
-            for (int i = 0; i < size; i++) {
-                final int blockIndex = outputStreamMap.keyAt(i);
+            DownloadOutputStream.SeparateSync fileSync = null;
+            for (BlockSlot slot : slots) {
+                final DownloadOutputStream outputStream = slot.outputStream;
+                if (outputStream == null) continue;
+
                 // because we get no sync length value before flush and sync,
                 // so the length only possible less than or equal to the real persist
                 // length.
-                final long noSyncLength = noSyncLengthMap.get(blockIndex).get();
+                final long noSyncLength = slot.noSyncLength.get();
                 if (noSyncLength > 0) {
-                    increaseLengthMap.put(blockIndex, noSyncLength);
-                    final DownloadOutputStream outputStream = outputStreamMap
-                            .get(blockIndex);
-                    outputStream.flushAndSync();
+                    increaseLengths[slot.blockIndex] = noSyncLength;
+                    if (outputStream instanceof DownloadOutputStream.SeparateSync) {
+                        fileSync = (DownloadOutputStream.SeparateSync) outputStream;
+                        fileSync.flush();
+                    } else {
+                        outputStream.flushAndSync();
+                    }
                 }
             }
+            // all blocks are on the same file, so sync once is enough for all of them.
+            if (fileSync != null) fileSync.sync();
             success = true;
         } catch (IOException ex) {
             Util.w(TAG, "OutputStream flush and sync data to filesystem failed " + ex);
@@ -476,14 +604,23 @@ public class MultiPointOutputStream {
         }
 
         if (success) {
-            final int increaseLengthSize = increaseLengthMap.size();
+            final DownloadMetrics metrics = OkDownload.with().getMetrics();
+            if (metrics != null) {
+                metrics.recordSince(DownloadMetrics.Metric.FLUSH_AND_SYNC, startNanos);
+            }
+
             long allIncreaseLength = 0;
-            for (int i = 0; i < increaseLengthSize; i++) {
-                final int blockIndex = increaseLengthMap.keyAt(i);
-                final long noSyncLength = increaseLengthMap.valueAt(i);
+            for (int blockIndex = 0; blockIndex < increaseLengths.length; blockIndex++) {
+                final long noSyncLength = increaseLengths[blockIndex];
+                if (noSyncLength <= 0) continue;
+
+                final long storeStartNanos = System.nanoTime();
                 store.onSyncToFilesystemSuccess(info, blockIndex, noSyncLength);
+                if (metrics != null) {
+                    metrics.recordSince(DownloadMetrics.Metric.STORE_WRITE, storeStartNanos);
+                }
                 allIncreaseLength += noSyncLength;
-                noSyncLengthMap.get(blockIndex).addAndGet(-noSyncLength);
+                slots[blockIndex].noSyncLength.addAndGet(-noSyncLength);
                 Util.d(TAG, "OutputStream sync success (" + task.getId() + ") "
                         + "block(" + blockIndex + ") " + " syncLength(" + noSyncLength + ")"
                         + " currentOffset(" + info.getBlock(blockIndex).getCurrentOffset()
@@ -491,15 +628,21 @@ public class MultiPointOutputStream {
             }
             allNoSyncLength.addAndGet(-allIncreaseLength);
             lastSyncTimestamp.set(SystemClock.uptimeMillis());
+            fileSyncService.onTaskSynced(task, allIncreaseLength,
+                    System.nanoTime() - startNanos);
         }
     }
 
     private volatile boolean firstOutputStream = true;
 
     synchronized DownloadOutputStream outputStream(int blockIndex) throws IOException {
-        DownloadOutputStream outputStream = outputStreamMap.get(blockIndex);
+        final BlockSlot slot = slot(blockIndex);
+        DownloadOutputStream outputStream = slot.outputStream;
 
         if (outputStream == null) {
+            // the streams have been closed by cancel, never create new one again.
+            if (canceled) throw InterruptException.SIGNAL;
+
             @NonNull final Uri uri;
             final boolean isFileScheme = Util.isUriFileScheme(task.getUri());
             if (isFileScheme) {
@@ -553,11 +696,7 @@ public class MultiPointOutputStream {
                 }
             }
 
-            synchronized (noSyncLengthMap) {
-                // make sure the length of noSyncLengthMap is equal to outputStreamMap
-                outputStreamMap.put(blockIndex, outputStream);
-                noSyncLengthMap.put(blockIndex, new AtomicLong());
-            }
+            slot.outputStream = outputStream;
 
             firstOutputStream = false;
         }
@@ -94,9 +94,8 @@ public class BreakpointInterceptor implements Interceptor.Connect, Interceptor.F
 
     @Override
     public long interceptFetch(DownloadChain chain) throws IOException {
-        final long contentLength = chain.getResponseContentLength();
         final int blockIndex = chain.getBlockIndex();
-        final boolean isNotChunked = contentLength != CHUNKED_CONTENT_LENGTH;
+        final boolean isNotChunked = chain.getResponseContentLength() != CHUNKED_CONTENT_LENGTH;
 
         long fetchLength = 0;
         long processFetchLength;
@@ -122,7 +121,8 @@ public class BreakpointInterceptor implements Interceptor.Connect, Interceptor.F
             // local persist data check.
             outputStream.inspectComplete(blockIndex);
 
-            // response content length check.
+            // response content length check, it's shrunk if the tail of this block is split.
+            final long contentLength = chain.getResponseContentLength();
             if (fetchLength != contentLength) {
                 throw new IOException("Fetch-length isn't equal to the response content-length, "
                         + fetchLength + "!= " + contentLength);
@@ -17,6 +17,7 @@
 package com.download.core.interceptor;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.download.DownloadTask;
 import com.download.OkDownload;
@@ -27,12 +28,26 @@ import com.download.core.file.MultiPointOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+
+import okio.Buffer;
+import okio.BufferedSource;
 
 public class FetchDataInterceptor implements Interceptor.Fetch {
 
-    private final InputStream inputStream;
+    // the size of the okio segment, the source reads at most one segment from the socket once.
+    private static final int SEGMENT_SIZE = 8192;
+    // the max bytes drained from the source for each fetching.
+    private static final int MAX_SOURCE_FETCH_SIZE = 64 * 1024;
+
+    @Nullable private final InputStream inputStream;
+    @Nullable private final byte[] readBuffer;
+
+    @Nullable private final BufferedSource source;
+    @Nullable private final Buffer sourceBuffer;
+    @Nullable private final OutputStream blockOutputStream;
+    private final int sourceFetchSize;
 
-    private final byte[] readBuffer;
     private final MultiPointOutputStream outputStream;
     private final int blockIndex;
     private final DownloadTask task;
@@ -45,6 +60,31 @@ public class FetchDataInterceptor implements Interceptor.Fetch {
         this.blockIndex = blockIndex;
         this.inputStream = inputStream;
         this.readBuffer = new byte[task.getReadBufferSize()];
+        this.source = null;
+        this.sourceBuffer = null;
+        this.blockOutputStream = null;
+        this.sourceFetchSize = 0;
+        this.outputStream = outputStream;
+
+        this.task = task;
+        this.dispatcher = OkDownload.with().callbackDispatcher();
+    }
+
+    /**
+     * Fetch with the okio {@code source}, the segments are drained from the source and written
+     * to the output stream directly, without the intermediate read buffer.
+     */
+    public FetchDataInterceptor(int blockIndex,
+                                @NonNull BufferedSource source,
+                                @NonNull MultiPointOutputStream outputStream,
+                                DownloadTask task) {
+        this.blockIndex = blockIndex;
+        this.inputStream = null;
+        this.readBuffer = null;
+        this.source = source;
+        this.sourceBuffer = new Buffer();
+        this.blockOutputStream = new BlockOutputStream(outputStream, blockIndex);
+        this.sourceFetchSize = Math.max(task.getReadBufferSize(), MAX_SOURCE_FETCH_SIZE);
         this.outputStream = outputStream;
 
         this.task = task;
@@ -59,13 +99,27 @@ public class FetchDataInterceptor implements Interceptor.Fetch {
 
         OkDownload.with().downloadStrategy().inspectNetworkOnWifi(chain.getTask());
         // fetch
-        int fetchLength = inputStream.read(readBuffer);
+        int fetchLength = source != null ? readSource() : inputStream.read(readBuffer);
         if (fetchLength == -1) {
             return fetchLength;
         }
 
+        // the tail of this block may has been split to another block, so the bytes out of this
+        // block are dropped and this block is end.
+        fetchLength = chain.reserveFetchRange(fetchLength);
+        if (fetchLength <= 0) {
+            if (sourceBuffer != null) sourceBuffer.clear();
+            return -1;
+        }
+
         // write to file
-        outputStream.write(blockIndex, readBuffer, fetchLength);
+        if (sourceBuffer != null) {
+            sourceBuffer.writeTo(blockOutputStream, fetchLength);
+            // the rest is out of the range of this block.
+            sourceBuffer.clear();
+        } else {
+            outputStream.write(blockIndex, readBuffer, fetchLength);
+        }
 
         chain.increaseCallbackBytes(fetchLength);
         if (this.dispatcher.isFetchProcessMoment(task)) {
@@ -74,4 +128,41 @@ public class FetchDataInterceptor implements Interceptor.Fetch {
 
         return fetchLength;
     }
+
+    // drain the segments until the socket has no more data arrived, so it never blocks for more
+    // data once it has fetched some.
+    private int readSource() throws IOException {
+        long readLength = source.read(sourceBuffer, sourceFetchSize);
+        if (readLength == -1) return -1;
+
+        long totalLength = readLength;
+        while (readLength == SEGMENT_SIZE && totalLength < sourceFetchSize) {
+            readLength = source.read(sourceBuffer, sourceFetchSize - totalLength);
+            if (readLength == -1) break;
+            totalLength += readLength;
+        }
+
+        return (int) totalLength;
+    }
+
+    // writes the segments of the source buffer to the block directly.
+    private static class BlockOutputStream extends OutputStream {
+        @NonNull private final MultiPointOutputStream outputStream;
+        private final int blockIndex;
+
+        BlockOutputStream(@NonNull MultiPointOutputStream outputStream, int blockIndex) {
+            this.outputStream = outputStream;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            outputStream.write(blockIndex, b, off, len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+    }
 }
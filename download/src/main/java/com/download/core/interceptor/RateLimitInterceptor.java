@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.interceptor;
+
+import android.support.annotation.NonNull;
+
+import com.download.core.download.DownloadChain;
+import com.download.core.download.RateLimiter;
+import com.download.core.exception.InterruptException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The interceptor wraps each fetching of {@link FetchDataInterceptor}, reserves the bytes fetched
+ * on all budgets this connection shares, and waits for the longest one before the next fetching.
+ */
+public class RateLimitInterceptor implements Interceptor.Fetch {
+
+    // each wait is sliced to this, so the interruption and the budget change are handled in time.
+    private static final long MAX_WAIT_SLICE_MILLIS = 100;
+
+    @NonNull private final RateLimiter[] limiters;
+    @NonNull private final int[] budgetVersions;
+
+    public RateLimitInterceptor(@NonNull RateLimiter... limiters) {
+        this.limiters = limiters;
+        this.budgetVersions = new int[limiters.length];
+    }
+
+    @Override
+    public long interceptFetch(DownloadChain chain) throws IOException {
+        final long fetchLength = chain.processFetch();
+        if (fetchLength > 0) waitForBudget(chain, fetchLength);
+
+        return fetchLength;
+    }
+
+    private void waitForBudget(@NonNull DownloadChain chain, long fetchLength)
+            throws InterruptException {
+        long waitNanos = 0;
+        for (int i = 0; i < limiters.length; i++) {
+            final RateLimiter limiter = limiters[i];
+            budgetVersions[i] = limiter.getBudgetVersion();
+            waitNanos = Math.max(waitNanos, limiter.reserve(fetchLength));
+        }
+        if (waitNanos <= 0) return;
+
+        final long deadlineNanos = System.nanoTime() + waitNanos;
+        while (true) {
+            if (chain.getCache().isInterrupt()) throw InterruptException.SIGNAL;
+            if (isBudgetChanged()) return;
+
+            final long remainNanos = deadlineNanos - System.nanoTime();
+            if (remainNanos <= 0) return;
+
+            try {
+                Thread.sleep(Math.min(MAX_WAIT_SLICE_MILLIS,
+                        Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainNanos))));
+            } catch (InterruptedException e) {
+                throw InterruptException.SIGNAL;
+            }
+        }
+    }
+
+    private boolean isBudgetChanged() {
+        for (int i = 0; i < limiters.length; i++) {
+            if (limiters[i].getBudgetVersion() != budgetVersions[i]) return true;
+        }
+        return false;
+    }
+}
@@ -18,11 +18,13 @@ package com.download.core.interceptor;
 
 import android.support.annotation.NonNull;
 
+import com.download.OkDownload;
 import com.download.core.connection.DownloadConnection;
 import com.download.core.download.DownloadCache;
 import com.download.core.download.DownloadChain;
 import com.download.core.exception.InterruptException;
 import com.download.core.exception.RetryException;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.io.IOException;
 
@@ -40,6 +42,8 @@ public class RetryInterceptor implements Interceptor.Connect, Interceptor.Fetch
                 return chain.processConnect();
             } catch (IOException e) {
                 if (e instanceof RetryException) {
+                    final DownloadMetrics metrics = OkDownload.with().getMetrics();
+                    if (metrics != null) metrics.increase(DownloadMetrics.Counter.RETRY_CONNECT);
                     chain.resetConnectForRetry();
                     continue;
                 }
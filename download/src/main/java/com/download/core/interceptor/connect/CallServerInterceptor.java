@@ -21,7 +21,9 @@ import android.support.annotation.NonNull;
 import com.download.OkDownload;
 import com.download.core.connection.DownloadConnection;
 import com.download.core.download.DownloadChain;
+import com.download.core.download.TrialConnection;
 import com.download.core.interceptor.Interceptor;
+import com.download.core.metrics.DownloadMetrics;
 
 import java.io.IOException;
 
@@ -31,6 +33,16 @@ public class CallServerInterceptor implements Interceptor.Connect {
         OkDownload.with().downloadStrategy().inspectNetworkOnWifi(chain.getTask());
         OkDownload.with().downloadStrategy().inspectNetworkAvailable();
 
-        return chain.getConnectionOrCreate().execute();
+        final TrialConnection trialConnection = chain.getTrialConnection();
+        if (trialConnection != null) return trialConnection.getConnected();
+
+        final DownloadMetrics metrics = OkDownload.with().getMetrics();
+        if (metrics == null) return chain.getConnectionOrCreate().execute();
+
+        final DownloadConnection connection = chain.getConnectionOrCreate();
+        final long startNanos = System.nanoTime();
+        final DownloadConnection.Connected connected = connection.execute();
+        metrics.recordSince(DownloadMetrics.Metric.FIRST_BYTE, startNanos);
+        return connected;
     }
 }
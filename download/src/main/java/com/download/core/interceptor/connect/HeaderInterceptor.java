@@ -26,6 +26,7 @@ import com.download.core.breakpoint.BreakpointInfo;
 import com.download.core.connection.DownloadConnection;
 import com.download.core.download.DownloadChain;
 import com.download.core.download.DownloadStrategy;
+import com.download.core.download.TrialConnection;
 import com.download.core.exception.InterruptException;
 import com.download.core.interceptor.Interceptor;
 
@@ -34,6 +35,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.download.core.Util.CHUNKED_CONTENT_LENGTH;
 import static com.download.core.Util.CONTENT_LENGTH;
 import static com.download.core.Util.CONTENT_RANGE;
 import static com.download.core.Util.IF_MATCH;
@@ -48,33 +50,40 @@ public class HeaderInterceptor implements Interceptor.Connect {
         final BreakpointInfo info = chain.getInfo();
         final DownloadConnection connection = chain.getConnectionOrCreate();
         final DownloadTask task = chain.getTask();
+        // the trial connection has requested from the beginning of this block.
+        final TrialConnection trialConnection = chain.getTrialConnection();
 
-        // add user customize header
-        final Map<String, List<String>> userHeader = task.getHeaderMapFields();
-        if (userHeader != null) Util.addUserRequestHeaderField(userHeader, connection);
-        if (userHeader == null || !userHeader.containsKey(USER_AGENT)) {
-            Util.addDefaultUserAgent(connection);
-        }
-
-        // add range header
         final int blockIndex = chain.getBlockIndex();
         final BlockInfo blockInfo = info.getBlock(blockIndex);
         if (blockInfo == null) {
             throw new IOException("No block-info found on " + blockIndex);
         }
 
-        String range = "bytes=" + blockInfo.getRangeLeft() + "-";
-        range += blockInfo.getRangeRight();
-
-        connection.addHeader(RANGE, range);
-        Util.d(TAG, "AssembleHeaderRange (" + task.getId() + ") block(" + blockIndex + ") "
-                + "downloadFrom(" + blockInfo.getRangeLeft() + ") currentOffset("
-                + blockInfo.getCurrentOffset() + ")");
-
-        // add etag if exist
-        final String etag = info.getEtag();
-        if (!Util.isEmpty(etag)) {
-            connection.addHeader(IF_MATCH, etag);
+        if (trialConnection == null) {
+            // add user customize header
+            final Map<String, List<String>> userHeader = task.getHeaderMapFields();
+            if (userHeader != null) Util.addUserRequestHeaderField(userHeader, connection);
+            if (userHeader == null || !userHeader.containsKey(USER_AGENT)) {
+                Util.addDefaultUserAgent(connection);
+            }
+
+            // add range header
+            String range = "bytes=" + blockInfo.getRangeLeft() + "-";
+            range += blockInfo.getRangeRight();
+
+            connection.addHeader(RANGE, range);
+            Util.d(TAG, "AssembleHeaderRange (" + task.getId() + ") block(" + blockIndex + ") "
+                    + "downloadFrom(" + blockInfo.getRangeLeft() + ") currentOffset("
+                    + blockInfo.getCurrentOffset() + ")");
+
+            // add etag if exist
+            final String etag = info.getEtag();
+            if (!Util.isEmpty(etag)) {
+                connection.addHeader(IF_MATCH, etag);
+            }
+        } else {
+            Util.d(TAG, "Fetch (" + task.getId() + ") block(" + blockIndex + ") on the trial "
+                    + "connection");
         }
 
         if (chain.getCache().isInterrupt()) {
@@ -82,7 +91,9 @@ public class HeaderInterceptor implements Interceptor.Connect {
         }
 
         OkDownload.with().callbackDispatcher().dispatch()
-                .connectStart(task, blockIndex, connection.getRequestProperties());
+                .connectStart(task, blockIndex, trialConnection == null
+                        ? connection.getRequestProperties()
+                        : trialConnection.getRequestProperties());
 
         DownloadConnection.Connected connected = chain.processConnect();
 
@@ -98,6 +109,9 @@ public class HeaderInterceptor implements Interceptor.Connect {
 
         // if precondition failed.
         final DownloadStrategy strategy = OkDownload.with().downloadStrategy();
+        if (chain.getCache().isTrialSkipped()) {
+            strategy.inspectSkippedTrialResponse(connected, blockIndex, task, info);
+        }
         final DownloadStrategy.ResumeAvailableResponseCheck responseCheck =
                 strategy.resumeAvailableResponseCheck(connected, blockIndex, info);
         responseCheck.inspect();
@@ -111,6 +125,13 @@ public class HeaderInterceptor implements Interceptor.Connect {
             contentLength = Util.parseContentLength(contentLengthField);
         }
 
+        if (trialConnection != null && contentLength != CHUNKED_CONTENT_LENGTH) {
+            // the rest of the resource after this block is dropped.
+            chain.setResponseContentLength(Math.min(contentLength,
+                    blockInfo.getContentLength()));
+            return connected;
+        }
+
         chain.setResponseContentLength(contentLength);
         return connected;
     }
@@ -54,7 +54,7 @@ public class Listener4SpeedAssistExtend implements Listener4Assist.AssistExtend,
                                          @NonNull Listener4Assist.Listener4Model model) {
         final Listener4SpeedModel speedModel = (Listener4SpeedModel) model;
 
-        speedModel.blockSpeeds.get(blockIndex).downloading(increaseBytes);
+        speedModel.getOrCreateBlockSpeed(blockIndex).downloading(increaseBytes);
         speedModel.taskSpeed.downloading(increaseBytes);
 
         if (callback != null) {
@@ -71,7 +71,7 @@ public class Listener4SpeedAssistExtend implements Listener4Assist.AssistExtend,
                                     Listener4Assist.Listener4Model model) {
         final Listener4SpeedModel speedModel = (Listener4SpeedModel) model;
 
-        speedModel.blockSpeeds.get(blockIndex).endTask();
+        speedModel.getOrCreateBlockSpeed(blockIndex).endTask();
 
         if (callback != null) {
             callback.blockEnd(task, blockIndex, model.info.getBlock(blockIndex),
@@ -121,6 +121,43 @@ public class Listener4SpeedAssistExtend implements Listener4Assist.AssistExtend,
             super(id);
         }
 
+        /**
+         * Get the estimated milliseconds to finish the task, see
+         * {@link SpeedCalculator#getEtaMillis(long)}.
+         *
+         * @return {@code -1} if it's unknown yet.
+         */
+        public long getTaskEtaMillis() {
+            if (taskSpeed == null || info.isChunked()) return -1;
+            return taskSpeed.getEtaMillis(info.getTotalLength() - currentOffset);
+        }
+
+        /**
+         * Get the estimated milliseconds to finish the block, see
+         * {@link SpeedCalculator#getEtaMillis(long)}.
+         *
+         * @return {@code -1} if it's unknown yet.
+         */
+        public long getBlockEtaMillis(int blockIndex) {
+            if (blockSpeeds == null || blockIndex >= info.getBlockCount()) return -1;
+            final SpeedCalculator blockSpeed = blockSpeeds.get(blockIndex);
+            final Long blockCurrentOffset = blockCurrentOffsetMap.get(blockIndex);
+            if (blockSpeed == null || blockCurrentOffset == null) return -1;
+
+            return blockSpeed.getEtaMillis(
+                    info.getBlock(blockIndex).getContentLength() - blockCurrentOffset);
+        }
+
+        // the block may be split from another block after the info is ready.
+        SpeedCalculator getOrCreateBlockSpeed(int blockIndex) {
+            SpeedCalculator blockSpeed = blockSpeeds.get(blockIndex);
+            if (blockSpeed == null) {
+                blockSpeed = new SpeedCalculator();
+                blockSpeeds.put(blockIndex, blockSpeed);
+            }
+            return blockSpeed;
+        }
+
         @Override
         public void onInfoValid(@NonNull BreakpointInfo info) {
             super.onInfoValid(info);
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.metrics;
+
+import android.support.annotation.NonNull;
+
+import com.download.core.cause.ResumeFailedCause;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The registry of the metrics of the download engine, to find out whether the slow download is
+ * bound by the network, the disk or the queue.
+ * <p>
+ * The metrics are only recorded if it's set to the
+ * {@link com.download.OkDownload#setMetrics(DownloadMetrics)}.
+ */
+public class DownloadMetrics {
+
+    public enum Metric {
+        /**
+         * The microseconds from resolving the host to the connection established, it's only
+         * recorded by the connection factory which provides it, such as the
+         * {@link com.download.core.connection.SharedOkHttp3ConnectionFactory}.
+         */
+        CONNECT("connect_us"),
+        /**
+         * The microseconds of the round-trip of the trial connection.
+         */
+        TRIAL("trial_us"),
+        /**
+         * The microseconds from the request of the block is sent to its response is received.
+         */
+        FIRST_BYTE("first_byte_us"),
+        /**
+         * The bytes per second of the block fetched.
+         */
+        BLOCK_THROUGHPUT("block_throughput_bps"),
+        /**
+         * The microseconds of flushing and syncing the output streams of the task.
+         */
+        FLUSH_AND_SYNC("flush_and_sync_us"),
+        /**
+         * The microseconds of writing the progress synced to the store.
+         */
+        STORE_WRITE("store_write_us"),
+        /**
+         * The microseconds of the task waiting on the dispatcher for running.
+         */
+        QUEUE_WAIT("queue_wait_us");
+
+        @NonNull final String key;
+
+        Metric(@NonNull String key) {
+            this.key = key;
+        }
+    }
+
+    public enum Counter {
+        /**
+         * The connection of the block is retried.
+         */
+        RETRY_CONNECT("retry_connect"),
+        /**
+         * The task is retried from the trial because of the precondition failed.
+         */
+        RETRY_PRECONDITION("retry_precondition"),
+        /**
+         * The trial connection is redirected.
+         */
+        REDIRECT("redirect");
+
+        @NonNull final String key;
+
+        Counter(@NonNull String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final ResumeFailedCause[] RESUME_FAILED_CAUSES = ResumeFailedCause.values();
+
+    private final Histogram[] histograms = new Histogram[METRICS.length];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+    private final AtomicLongArray resumeFailedCounters =
+            new AtomicLongArray(RESUME_FAILED_CAUSES.length);
+
+    public DownloadMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    public void record(@NonNull Metric metric, long value) {
+        histograms[metric.ordinal()].record(value);
+    }
+
+    /**
+     * Record the nanoseconds elapsed since {@code startNanos} in microseconds.
+     */
+    public void recordSince(@NonNull Metric metric, long startNanos) {
+        record(metric, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void increase(@NonNull Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    /**
+     * The task is downloaded from the beginning instead of the breakpoint because of the
+     * {@code cause}.
+     */
+    public void increaseResumeFailed(@NonNull ResumeFailedCause cause) {
+        resumeFailedCounters.incrementAndGet(cause.ordinal());
+    }
+
+    public void reset() {
+        for (Histogram histogram : histograms) histogram.reset();
+        for (int i = 0; i < counters.length(); i++) counters.set(i, 0);
+        for (int i = 0; i < resumeFailedCounters.length(); i++) resumeFailedCounters.set(i, 0);
+    }
+
+    @NonNull public Snapshot snapshot() {
+        final Histogram.Snapshot[] histogramSnapshots = new Histogram.Snapshot[METRICS.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histogramSnapshots[i] = histograms[i].snapshot();
+        }
+        final long[] counterValues = new long[COUNTERS.length];
+        for (int i = 0; i < counterValues.length; i++) {
+            counterValues[i] = counters.get(i);
+        }
+        final long[] resumeFailedValues = new long[RESUME_FAILED_CAUSES.length];
+        for (int i = 0; i < resumeFailedValues.length; i++) {
+            resumeFailedValues[i] = resumeFailedCounters.get(i);
+        }
+        return new Snapshot(histogramSnapshots, counterValues, resumeFailedValues);
+    }
+
+    public static class Snapshot {
+        private final Histogram.Snapshot[] histograms;
+        private final long[] counters;
+        private final long[] resumeFailedCounters;
+
+        Snapshot(Histogram.Snapshot[] histograms, long[] counters, long[] resumeFailedCounters) {
+            this.histograms = histograms;
+            this.counters = counters;
+            this.resumeFailedCounters = resumeFailedCounters;
+        }
+
+        @NonNull public Histogram.Snapshot getHistogram(@NonNull Metric metric) {
+            return histograms[metric.ordinal()];
+        }
+
+        public long getCount(@NonNull Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        public long getResumeFailedCount(@NonNull ResumeFailedCause cause) {
+            return resumeFailedCounters[cause.ordinal()];
+        }
+
+        /**
+         * Export the snapshot to the flat map to be reported, such as
+         * {@code trial_us.p99 -> 35000}, {@code redirect -> 3} and
+         * {@code resume_failed.INFO_DIRTY -> 10}.
+         */
+        @NonNull public Map<String, Long> toMap() {
+            final Map<String, Long> map = new LinkedHashMap<>();
+            for (Metric metric : METRICS) {
+                final Histogram.Snapshot histogram = getHistogram(metric);
+                map.put(metric.key + ".count", histogram.getCount());
+                map.put(metric.key + ".min", histogram.getMin());
+                map.put(metric.key + ".p50", histogram.getValueAtPercentile(50));
+                map.put(metric.key + ".p90", histogram.getValueAtPercentile(90));
+                map.put(metric.key + ".p99", histogram.getValueAtPercentile(99));
+                map.put(metric.key + ".max", histogram.getMax());
+                map.put(metric.key + ".mean", histogram.getMean());
+            }
+            for (Counter counter : COUNTERS) {
+                map.put(counter.key, getCount(counter));
+            }
+            for (ResumeFailedCause cause : RESUME_FAILED_CAUSES) {
+                map.put("resume_failed." + cause.name(), getResumeFailedCount(cause));
+            }
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            for (Metric metric : METRICS) {
+                builder.append(metric.key).append(' ').append(getHistogram(metric)).append('\n');
+            }
+            for (Counter counter : COUNTERS) {
+                builder.append(counter.key).append(' ').append(getCount(counter)).append('\n');
+            }
+            for (ResumeFailedCause cause : RESUME_FAILED_CAUSES) {
+                final long count = getResumeFailedCount(cause);
+                if (count > 0) {
+                    builder.append("resume_failed.").append(cause.name()).append(' ')
+                            .append(count).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.metrics;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The histogram of the non-negative values with the bounded relative error, the same as the
+ * HdrHistogram.
+ * <p>
+ * The values less than {@link #SUB_BUCKET_COUNT} are counted exactly, and each power of two range
+ * above it is divided into {@link #SUB_BUCKET_COUNT} linear buckets, so the value got from the
+ * bucket is at most about 3% larger than the one recorded. The recording is lock-free.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // the larger one is recorded as it.
+    static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(-1);
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        if (value > MAX_VALUE) value = MAX_VALUE;
+
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value < (current = min.get())) {
+            if (min.compareAndSet(current, value)) break;
+        }
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(-1);
+    }
+
+    /**
+     * Get the snapshot of the values recorded, the values recorded at the same time may be
+     * partially included.
+     */
+    @NonNull public Snapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.counts.get(i);
+            total += counts[i];
+        }
+        final long max = this.max.get();
+        final long min = this.min.get();
+        return new Snapshot(counts, total, sum.get(), total == 0 ? 0 : min,
+                total == 0 ? 0 : max);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subIndex = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subIndex;
+    }
+
+    // the largest value counted by the bucket of the index.
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final int subIndex = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subIndex + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Get the value at the {@code percentile}, such as {@code 99} for the p99.
+         *
+         * @return {@code 0} if there isn't any value recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) return 0;
+
+            final double ratio = Math.min(100, Math.max(0, percentile)) / 100;
+            final long rank = Math.max(1, (long) Math.ceil(ratio * count));
+            long accumulated = 0;
+            for (int i = 0; i < counts.length; i++) {
+                accumulated += counts[i];
+                if (accumulated >= rank) {
+                    return Math.max(min, Math.min(max, highestValueOf(i)));
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count[" + count + "] min[" + min + "] p50[" + getValueAtPercentile(50)
+                    + "] p90[" + getValueAtPercentile(90) + "] p99[" + getValueAtPercentile(99)
+                    + "] max[" + max + "] mean[" + getMean() + "]";
+        }
+    }
+}
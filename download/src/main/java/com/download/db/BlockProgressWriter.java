@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import com.download.core.Util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The write-behind writer of the block progress for {@link BreakpointStoreOnSQLite}.
+ * <p>
+ * Only the latest offset of each block is kept before it's written, and all pending blocks are
+ * written in one transaction after {@link #flushDelayMillis} since the first one is pending, or
+ * once the task is ended. The offset is only increased after the data has been synced to the
+ * filesystem, so the progress lost on the crash just makes the task re-download a little.
+ */
+public class BlockProgressWriter implements Handler.Callback {
+
+    private static final String TAG = "BlockProgressWriter";
+
+    private static final int WHAT_FLUSH = 0;
+
+    @NonNull private final BreakpointSQLiteHelper helper;
+    @Nullable private Handler handler;
+
+    // task id -> block index -> the latest current offset.
+    private final SparseArray<Map<Integer, Long>> pendingOffsets = new SparseArray<>();
+    private int pendingCount;
+    private boolean flushScheduled;
+
+    // the written blocks must be in order, so only one flush at the same time.
+    private final Object flushLock = new Object();
+
+    volatile long flushDelayMillis = 1000;
+
+    private long flushCount;
+    private long flushedBlockCount;
+    private long lastFlushLatencyMillis;
+    private long maxFlushLatencyMillis;
+
+    BlockProgressWriter(@NonNull BreakpointSQLiteHelper helper) {
+        this.helper = helper;
+    }
+
+    BlockProgressWriter(@NonNull BreakpointSQLiteHelper helper, @Nullable Handler handler) {
+        this.helper = helper;
+        this.handler = handler;
+    }
+
+    /**
+     * Record the {@code currentOffset} of the block, it's written directly if the
+     * {@link #flushDelayMillis} is {@code 0}.
+     */
+    void offer(int id, int blockIndex, long currentOffset) {
+        final long delayMillis = flushDelayMillis;
+        if (delayMillis <= 0) {
+            synchronized (flushLock) {
+                discardPending(id);
+                helper.updateBlockIncrease(id, blockIndex, currentOffset);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            Map<Integer, Long> blockOffsets = pendingOffsets.get(id);
+            if (blockOffsets == null) {
+                blockOffsets = new HashMap<>();
+                pendingOffsets.put(id, blockOffsets);
+            }
+            if (blockOffsets.put(blockIndex, currentOffset) == null) pendingCount++;
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                getHandler().sendEmptyMessageDelayed(WHAT_FLUSH, delayMillis);
+            }
+        }
+    }
+
+    /**
+     * Write all pending blocks in one transaction.
+     */
+    void flush() {
+        synchronized (flushLock) {
+            final SparseArray<Map<Integer, Long>> offsets;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pendingCount == 0) return;
+
+                offsets = pendingOffsets.clone();
+                pendingOffsets.clear();
+                pendingCount = 0;
+            }
+
+            write(offsets);
+        }
+    }
+
+    /**
+     * Write the pending blocks of the task {@code id} directly.
+     */
+    void flush(int id) {
+        synchronized (flushLock) {
+            final Map<Integer, Long> blockOffsets;
+            synchronized (this) {
+                blockOffsets = pendingOffsets.get(id);
+                if (blockOffsets == null) return;
+
+                pendingOffsets.remove(id);
+                pendingCount -= blockOffsets.size();
+            }
+
+            final SparseArray<Map<Integer, Long>> offsets = new SparseArray<>(1);
+            offsets.put(id, blockOffsets);
+            write(offsets);
+        }
+    }
+
+    /**
+     * Discard the pending blocks of the task {@code id}, it must be called before its info is
+     * rewritten or removed, otherwise the stale offsets may be written after that.
+     */
+    void discard(int id) {
+        synchronized (flushLock) {
+            discardPending(id);
+        }
+    }
+
+    /**
+     * Get the count of the blocks waiting to be written.
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    public synchronized long getFlushedBlockCount() {
+        return flushedBlockCount;
+    }
+
+    /**
+     * Get the milliseconds the last flush takes to write its transaction.
+     */
+    public synchronized long getLastFlushLatencyMillis() {
+        return lastFlushLatencyMillis;
+    }
+
+    public synchronized long getMaxFlushLatencyMillis() {
+        return maxFlushLatencyMillis;
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what == WHAT_FLUSH) {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // the blocks keep the offsets written before, which are still valid.
+                Util.w(TAG, "flush block progress failed " + e);
+            }
+        }
+        return true;
+    }
+
+    private void discardPending(int id) {
+        synchronized (this) {
+            final Map<Integer, Long> blockOffsets = pendingOffsets.get(id);
+            if (blockOffsets == null) return;
+
+            pendingOffsets.remove(id);
+            pendingCount -= blockOffsets.size();
+        }
+    }
+
+    private void write(@NonNull SparseArray<Map<Integer, Long>> offsets) {
+        final long startMillis = SystemClock.uptimeMillis();
+        int blockCount = 0;
+
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final int size = offsets.size();
+            for (int i = 0; i < size; i++) {
+                final int id = offsets.keyAt(i);
+                for (Map.Entry<Integer, Long> entry : offsets.valueAt(i).entrySet()) {
+                    helper.updateBlockIncrease(id, entry.getKey(), entry.getValue());
+                    blockCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        final long latencyMillis = SystemClock.uptimeMillis() - startMillis;
+        synchronized (this) {
+            flushCount++;
+            flushedBlockCount += blockCount;
+            lastFlushLatencyMillis = latencyMillis;
+            maxFlushLatencyMillis = Math.max(maxFlushLatencyMillis, latencyMillis);
+        }
+        Util.d(TAG, "flush " + blockCount + " blocks in " + latencyMillis + "ms");
+    }
+
+    @NonNull private synchronized Handler getHandler() {
+        if (handler == null) {
+            final HandlerThread thread = new HandlerThread("OkDownload BlockProgressWriter");
+            thread.start();
+            handler = new Handler(thread.getLooper(), this);
+        }
+        return handler;
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import com.download.core.Util;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only journal of the breakpoint infos, each change is appended as one checksummed
+ * record, and the records are replayed to restore the infos on startup.
+ * <p>
+ * The journal is started with the {@link #MAGIC} and the {@link #VERSION}, and then the records:
+ * <pre>
+ * | body length (int) | type (byte) | body fields | crc32 of type and body fields (int) |
+ * </pre>
+ * The progress of the block is recorded with its absolute current offset, so replaying a record
+ * twice is harmless. A record is only taken after its checksum is verified, the journal is
+ * truncated to the end of the last valid record on loading, so a record torn by the crash is
+ * dropped rather than breaking the following appends.
+ * <p>
+ * The journal keeps the state it has recorded, and the state is rewritten to a new journal to drop
+ * the obsolete records once the journal grows more than {@link #MIN_COMPACT_LENGTH} and the
+ * length of the last compacted one.
+ */
+class BreakpointJournal {
+
+    private static final String TAG = "BreakpointJournal";
+
+    static final int MAGIC = 0x4F4B424A; // OKBJ
+    static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+
+    static final byte TYPE_INFO = 1;
+    static final byte TYPE_BLOCK_OFFSET = 2;
+    static final byte TYPE_REMOVE_INFO = 3;
+    static final byte TYPE_RESPONSE_FILENAME = 4;
+    static final byte TYPE_FILE_DIRTY = 5;
+    static final byte TYPE_FILE_CLEAR = 6;
+
+    // the body larger than this must be broken.
+    private static final int MAX_BODY_LENGTH = 1024 * 1024;
+    static final long MIN_COMPACT_LENGTH = 1024 * 1024;
+
+    @NonNull private final File file;
+
+    // the state has been recorded on the journal.
+    private final SparseArray<BreakpointInfo> infos = new SparseArray<>();
+    private final Set<Integer> dirtyFileIds = new LinkedHashSet<>();
+    private final HashMap<String, String> responseFilenames = new HashMap<>();
+
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOutput = new DataOutputStream(recordBuffer);
+    private final CRC32 crc32 = new CRC32();
+
+    @Nullable private FileOutputStream output;
+    private long length;
+    private long compactedLength;
+
+    BreakpointJournal(@NonNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replay the journal to restore the recorded state, the broken tail is truncated.
+     */
+    synchronized void load() throws IOException {
+        infos.clear();
+        dirtyFileIds.clear();
+        responseFilenames.clear();
+        closeOutput();
+
+        length = file.exists() ? replay() : 0;
+        if (length == 0) {
+            rewrite();
+        } else {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() > length) {
+                    Util.w(TAG, "drop the broken tail of " + file + " from " + length + " to "
+                            + raf.length());
+                    raf.setLength(length);
+                }
+            } finally {
+                raf.close();
+            }
+            output = new FileOutputStream(file, true);
+        }
+
+        compactedLength = 0;
+        compactIfNeeded();
+    }
+
+    @NonNull synchronized SparseArray<BreakpointInfo> copyInfos() {
+        final SparseArray<BreakpointInfo> copied = new SparseArray<>(infos.size());
+        final int size = infos.size();
+        for (int i = 0; i < size; i++) {
+            final BreakpointInfo info = infos.valueAt(i);
+            copied.put(info.id, copy(info));
+        }
+        return copied;
+    }
+
+    @NonNull synchronized List<Integer> copyDirtyFileIds() {
+        return new ArrayList<>(dirtyFileIds);
+    }
+
+    @NonNull synchronized HashMap<String, String> copyResponseFilenames() {
+        return new HashMap<>(responseFilenames);
+    }
+
+    synchronized void appendInfo(@NonNull BreakpointInfo info) throws IOException {
+        final BreakpointInfo recorded = copy(info);
+        startRecord(TYPE_INFO);
+        writeInfo(recordOutput, recorded);
+        endRecord();
+
+        infos.put(recorded.id, recorded);
+        compactIfNeeded();
+    }
+
+    synchronized void appendBlockOffset(int id, int blockIndex, long currentOffset)
+            throws IOException {
+        if (infos.get(id) == null) return;
+
+        startRecord(TYPE_BLOCK_OFFSET);
+        recordOutput.writeInt(id);
+        recordOutput.writeInt(blockIndex);
+        recordOutput.writeLong(currentOffset);
+        endRecord();
+
+        applyBlockOffset(id, blockIndex, currentOffset);
+        compactIfNeeded();
+    }
+
+    synchronized void appendRemoveInfo(int id) throws IOException {
+        if (infos.get(id) == null) return;
+
+        startRecord(TYPE_REMOVE_INFO);
+        recordOutput.writeInt(id);
+        endRecord();
+
+        infos.remove(id);
+        compactIfNeeded();
+    }
+
+    synchronized void appendResponseFilename(@NonNull String url, @NonNull String filename)
+            throws IOException {
+        if (filename.equals(responseFilenames.get(url))) return;
+
+        startRecord(TYPE_RESPONSE_FILENAME);
+        recordOutput.writeUTF(url);
+        recordOutput.writeUTF(filename);
+        endRecord();
+
+        responseFilenames.put(url, filename);
+        compactIfNeeded();
+    }
+
+    synchronized void appendFileDirty(int id) throws IOException {
+        if (dirtyFileIds.contains(id)) return;
+
+        startRecord(TYPE_FILE_DIRTY);
+        recordOutput.writeInt(id);
+        endRecord();
+
+        dirtyFileIds.add(id);
+        compactIfNeeded();
+    }
+
+    synchronized void appendFileClear(int id) throws IOException {
+        if (!dirtyFileIds.contains(id)) return;
+
+        startRecord(TYPE_FILE_CLEAR);
+        recordOutput.writeInt(id);
+        endRecord();
+
+        dirtyFileIds.remove(id);
+        compactIfNeeded();
+    }
+
+    synchronized void close() {
+        closeOutput();
+    }
+
+    synchronized long length() {
+        return length;
+    }
+
+    // convenient for test
+    synchronized void compact() throws IOException {
+        closeOutput();
+        try {
+            rewrite();
+        } finally {
+            // keep appending to the old one if the new one can't replace it.
+            if (output == null) output = new FileOutputStream(file, true);
+        }
+        compactedLength = length;
+    }
+
+    private void compactIfNeeded() {
+        if (length - compactedLength <= Math.max(MIN_COMPACT_LENGTH, compactedLength)) return;
+
+        final long before = length;
+        try {
+            compact();
+            Util.d(TAG, "compact " + file + " from " + before + " to " + length);
+        } catch (IOException e) {
+            // the records appended are still valid, try again after it grows more.
+            compactedLength = length;
+            Util.w(TAG, "compact " + file + " failed " + e);
+        }
+    }
+
+    private void startRecord(byte type) throws IOException {
+        recordBuffer.reset();
+        // the place holder of the body length.
+        recordOutput.writeInt(0);
+        recordOutput.writeByte(type);
+    }
+
+    private void endRecord() throws IOException {
+        if (output == null) throw new IOException("The journal " + file + " isn't loaded");
+
+        final byte[] record = sealRecord();
+        output.write(record);
+        length += record.length;
+    }
+
+    // fill the body length and append the checksum.
+    @NonNull private byte[] sealRecord() throws IOException {
+        final int bodyLength = recordBuffer.size() - 4;
+
+        crc32.reset();
+        final byte[] unsealed = recordBuffer.toByteArray();
+        crc32.update(unsealed, 4, bodyLength);
+        recordOutput.writeInt((int) crc32.getValue());
+
+        final byte[] record = recordBuffer.toByteArray();
+        record[0] = (byte) (bodyLength >>> 24);
+        record[1] = (byte) (bodyLength >>> 16);
+        record[2] = (byte) (bodyLength >>> 8);
+        record[3] = (byte) bodyLength;
+        return record;
+    }
+
+    // rewrite the journal with the state recorded, the new one replaces the old one only after
+    // it's completely written.
+    private void rewrite() throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final FileOutputStream tmpFileOutput = new FileOutputStream(tmpFile);
+        final DataOutputStream tmpOutput = new DataOutputStream(
+                new BufferedOutputStream(tmpFileOutput));
+        long newLength = HEADER_LENGTH;
+        try {
+            tmpOutput.writeInt(MAGIC);
+            tmpOutput.writeInt(VERSION);
+
+            final int size = infos.size();
+            for (int i = 0; i < size; i++) {
+                startRecord(TYPE_INFO);
+                writeInfo(recordOutput, infos.valueAt(i));
+                newLength += writeSealed(tmpOutput);
+            }
+            for (Map.Entry<String, String> entry : responseFilenames.entrySet()) {
+                startRecord(TYPE_RESPONSE_FILENAME);
+                recordOutput.writeUTF(entry.getKey());
+                recordOutput.writeUTF(entry.getValue());
+                newLength += writeSealed(tmpOutput);
+            }
+            for (Integer id : dirtyFileIds) {
+                startRecord(TYPE_FILE_DIRTY);
+                recordOutput.writeInt(id);
+                newLength += writeSealed(tmpOutput);
+            }
+
+            tmpOutput.flush();
+            tmpFileOutput.getFD().sync();
+        } finally {
+            tmpOutput.close();
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Can't replace " + file + " with " + tmpFile);
+        }
+
+        length = newLength;
+        output = new FileOutputStream(file, true);
+    }
+
+    private int writeSealed(@NonNull OutputStream out) throws IOException {
+        final byte[] record = sealRecord();
+        out.write(record);
+        return record.length;
+    }
+
+    // return the length of the valid part of the journal, 0 for the journal can't be recognized.
+    private long replay() throws IOException {
+        final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            try {
+                if (input.readInt() != MAGIC) {
+                    Util.w(TAG, "unknown journal " + file + ", drop it");
+                    return 0;
+                }
+                final int version = input.readInt();
+                if (version != VERSION) {
+                    Util.w(TAG, "unsupported version " + version + " of " + file + ", drop it");
+                    return 0;
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+
+            long validLength = HEADER_LENGTH;
+            byte[] body = new byte[256];
+            while (true) {
+                final int bodyLength;
+                final int checksum;
+                try {
+                    bodyLength = input.readInt();
+                    if (bodyLength <= 0 || bodyLength > MAX_BODY_LENGTH) break;
+                    if (body.length < bodyLength) body = new byte[bodyLength];
+                    input.readFully(body, 0, bodyLength);
+                    checksum = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc32.reset();
+                crc32.update(body, 0, bodyLength);
+                if ((int) crc32.getValue() != checksum) break;
+
+                try {
+                    applyRecord(new DataInputStream(
+                            new ByteArrayInputStream(body, 0, bodyLength)));
+                } catch (IOException e) {
+                    Util.w(TAG, "can't apply the record at " + validLength + " " + e);
+                    break;
+                }
+                validLength += 4 + bodyLength + 4;
+            }
+
+            return validLength;
+        } finally {
+            input.close();
+        }
+    }
+
+    private void applyRecord(@NonNull DataInputStream record) throws IOException {
+        final byte type = record.readByte();
+        switch (type) {
+            case TYPE_INFO:
+                final BreakpointInfo info = readInfo(record);
+                infos.put(info.id, info);
+                break;
+            case TYPE_BLOCK_OFFSET:
+                applyBlockOffset(record.readInt(), record.readInt(), record.readLong());
+                break;
+            case TYPE_REMOVE_INFO:
+                infos.remove(record.readInt());
+                break;
+            case TYPE_RESPONSE_FILENAME:
+                responseFilenames.put(record.readUTF(), record.readUTF());
+                break;
+            case TYPE_FILE_DIRTY:
+                dirtyFileIds.add(record.readInt());
+                break;
+            case TYPE_FILE_CLEAR:
+                dirtyFileIds.remove(record.readInt());
+                break;
+            default:
+                throw new IOException("unknown record type " + type);
+        }
+    }
+
+    private void applyBlockOffset(int id, int blockIndex, long currentOffset) {
+        final BreakpointInfo info = infos.get(id);
+        if (info == null || blockIndex >= info.getBlockCount()) return;
+
+        final BlockInfo block = info.getBlock(blockIndex);
+        block.increaseCurrentOffset(currentOffset - block.getCurrentOffset());
+    }
+
+    private void closeOutput() {
+        if (output == null) return;
+
+        try {
+            output.close();
+        } catch (IOException e) {
+            Util.w(TAG, "close " + file + " failed " + e);
+        }
+        output = null;
+    }
+
+    private static void writeInfo(@NonNull DataOutputStream out, @NonNull BreakpointInfo info)
+            throws IOException {
+        out.writeInt(info.id);
+        out.writeUTF(info.getUrl());
+        writeNullableUTF(out, info.getEtag());
+        out.writeUTF(info.parentFile.getAbsolutePath());
+        writeNullableUTF(out, info.getFilename());
+        out.writeBoolean(info.isTaskOnlyProvidedParentPath());
+        out.writeBoolean(info.isChunked());
+
+        final int blockCount = info.getBlockCount();
+        out.writeInt(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            final BlockInfo block = info.getBlock(i);
+            out.writeLong(block.getStartOffset());
+            out.writeLong(block.getContentLength());
+            out.writeLong(block.getCurrentOffset());
+        }
+    }
+
+    @NonNull private static BreakpointInfo readInfo(@NonNull DataInputStream in)
+            throws IOException {
+        final int id = in.readInt();
+        final String url = in.readUTF();
+        final String etag = readNullableUTF(in);
+        final String parentPath = in.readUTF();
+        final String filename = readNullableUTF(in);
+        final boolean taskOnlyProvidedParentPath = in.readBoolean();
+        final boolean chunked = in.readBoolean();
+
+        final BreakpointInfo info = new BreakpointInfo(id, url, new File(parentPath), filename,
+                taskOnlyProvidedParentPath);
+        info.setEtag(etag);
+        info.setChunked(chunked);
+
+        final int blockCount = in.readInt();
+        for (int i = 0; i < blockCount; i++) {
+            try {
+                info.addBlock(new BlockInfo(in.readLong(), in.readLong(), in.readLong()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid block " + i + " of " + id);
+            }
+        }
+        return info;
+    }
+
+    private static void writeNullableUTF(@NonNull DataOutputStream out, @Nullable String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    @Nullable private static String readNullableUTF(@NonNull DataInputStream in)
+            throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // the etag isn't copied by BreakpointInfo#copy.
+    @NonNull private static BreakpointInfo copy(@NonNull BreakpointInfo info) {
+        final BreakpointInfo copied = info.copy();
+        copied.setEtag(info.getEtag());
+        return copied;
+    }
+}
@@ -27,6 +27,7 @@ import android.util.SparseArray;
 
 import com.download.core.breakpoint.BlockInfo;
 import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
 import com.download.db.exception.SQLiteException;
 
 import java.io.IOException;
@@ -49,15 +50,17 @@ import static com.download.db.BreakpointSQLiteKey.TASK_ONLY_PARENT_PATH;
 import static com.download.db.BreakpointSQLiteKey.URL;
 
 
-public class BreakpointSQLiteHelper extends SQLiteOpenHelper {
+public class BreakpointSQLiteHelper extends SQLiteOpenHelper
+        implements BreakpointStoreOnCache.BlockLoader {
 
     private static final String NAME = "okdownload-breakpoint.db";
-    private static final int VERSION = 3;
+    private static final int VERSION = 4;
 
     private static final String RESPONSE_FILENAME_TABLE_NAME = "okdownloadResponseFilename";
     private static final String BREAKPOINT_TABLE_NAME = "breakpoint";
     private static final String BLOCK_TABLE_NAME = "block";
     static final String TASK_FILE_DIRTY_TABLE_NAME = "taskFileDirty";
+    private static final String BLOCK_INDEX_NAME = "blockBreakpointIdIndex";
 
     public BreakpointSQLiteHelper(Context context) {
         super(context, NAME, null, VERSION);
@@ -106,6 +109,8 @@ public class BreakpointSQLiteHelper extends SQLiteOpenHelper {
         db.execSQL("CREATE TABLE IF NOT EXISTS "
                 + TASK_FILE_DIRTY_TABLE_NAME + "( "
                 + ID + " INTEGER PRIMARY KEY)");
+
+        createBlockIndex(db);
     }
 
     @Override
@@ -123,6 +128,16 @@ public class BreakpointSQLiteHelper extends SQLiteOpenHelper {
                     + TASK_FILE_DIRTY_TABLE_NAME + "( "
                     + ID + " INTEGER PRIMARY KEY)");
         }
+
+        if (oldVersion <= 3) {
+            createBlockIndex(db);
+        }
+    }
+
+    // the blocks are queried, updated and deleted with the breakpoint id.
+    private static void createBlockIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + BLOCK_INDEX_NAME + " ON "
+                + BLOCK_TABLE_NAME + "(" + HOST_ID + ", " + BLOCK_INDEX + ")");
     }
 
     @Override
@@ -197,6 +212,43 @@ public class BreakpointSQLiteHelper extends SQLiteOpenHelper {
         return breakpointInfoMap;
     }
 
+    /**
+     * Load the infos without their blocks, the blocks are loaded by {@link #loadBlocks} on the
+     * info is first used.
+     */
+    public SparseArray<BreakpointInfo> loadInfosWithoutBlocks() {
+        Cursor cursor = null;
+        final SparseArray<BreakpointInfo> breakpointInfoMap = new SparseArray<>();
+        try {
+            cursor = getWritableDatabase().rawQuery("SELECT * FROM " + BREAKPOINT_TABLE_NAME,
+                    null);
+            while (cursor.moveToNext()) {
+                final BreakpointInfo info = new BreakpointInfoRow(cursor).toInfo();
+                breakpointInfoMap.put(info.id, info);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return breakpointInfoMap;
+    }
+
+    @Override
+    public void loadBlocks(@NonNull BreakpointInfo info) {
+        Cursor cursor = null;
+        try {
+            cursor = getWritableDatabase().rawQuery(
+                    "SELECT * FROM " + BLOCK_TABLE_NAME + " WHERE " + HOST_ID + " = ?"
+                            + " ORDER BY " + BLOCK_INDEX,
+                    new String[]{String.valueOf(info.id)});
+            while (cursor.moveToNext()) {
+                info.addBlock(new BlockInfoRow(cursor).toInfo());
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
     public HashMap<String, String> loadResponseFilenameToMap() {
         Cursor cursor = null;
         final SQLiteDatabase db = getWritableDatabase();
@@ -262,11 +314,15 @@ public class BreakpointSQLiteHelper extends SQLiteOpenHelper {
 
     public void updateBlockIncrease(@NonNull BreakpointInfo info, int blockIndex,
                                     long newCurrentOffset) {
+        updateBlockIncrease(info.id, blockIndex, newCurrentOffset);
+    }
+
+    public void updateBlockIncrease(int breakpointId, int blockIndex, long newCurrentOffset) {
         final ContentValues values = new ContentValues();
         values.put(CURRENT_OFFSET, newCurrentOffset);
         getWritableDatabase().update(BLOCK_TABLE_NAME, values,
                 HOST_ID + " = ? AND " + BLOCK_INDEX + " = ?",
-                new String[]{Integer.toString(info.id), Integer.toString(blockIndex)});
+                new String[]{Integer.toString(breakpointId), Integer.toString(blockIndex)});
     }
 
     public void updateInfo(@NonNull BreakpointInfo info) throws IOException {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.core.Util;
+import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+import com.download.core.breakpoint.DownloadStore;
+import com.download.core.cause.EndCause;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The store persists the breakpoint infos on the append-only {@link BreakpointJournal} instead of
+ * the SQLite database, so the progress of each sync costs one sequential write rather than an
+ * update on the database.
+ * <p>
+ * You can use it through {@link com.download.OkDownload.Builder#downloadStore(DownloadStore)}.
+ */
+public class BreakpointStoreOnJournal implements DownloadStore {
+
+    private static final String TAG = "BreakpointStoreOnJournal";
+    private static final String NAME = "okdownload-breakpoint.journal";
+
+    @NonNull private final BreakpointJournal journal;
+    @NonNull private final BreakpointStoreOnCache onCache;
+
+    BreakpointStoreOnJournal(@NonNull BreakpointJournal journal,
+                             @NonNull BreakpointStoreOnCache onCache) {
+        this.journal = journal;
+        this.onCache = onCache;
+    }
+
+    public BreakpointStoreOnJournal(Context context) {
+        this(new File(context.getApplicationContext().getFilesDir(), NAME));
+    }
+
+    public BreakpointStoreOnJournal(@NonNull File journalFile) {
+        this.journal = new BreakpointJournal(journalFile);
+        try {
+            journal.load();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't load the breakpoint journal " + journalFile, e);
+        }
+        this.onCache = new BreakpointStoreOnCache(journal.copyInfos(),
+                journal.copyDirtyFileIds(),
+                journal.copyResponseFilenames());
+    }
+
+    @Nullable @Override
+    public BreakpointInfo get(int id) {
+        return onCache.get(id);
+    }
+
+    @NonNull @Override
+    public BreakpointInfo createAndInsert(@NonNull DownloadTask task) throws IOException {
+        final BreakpointInfo info = onCache.createAndInsert(task);
+        journal.appendInfo(info);
+        return info;
+    }
+
+    @Override
+    public void onTaskStart(int id) {
+        onCache.onTaskStart(id);
+    }
+
+    @Override
+    public void onSyncToFilesystemSuccess(@NonNull BreakpointInfo info, int blockIndex,
+                                          long increaseLength) throws IOException {
+        onCache.onSyncToFilesystemSuccess(info, blockIndex, increaseLength);
+        final long newCurrentOffset = info.getBlock(blockIndex).getCurrentOffset();
+        journal.appendBlockOffset(info.id, blockIndex, newCurrentOffset);
+    }
+
+    @Override
+    public boolean update(@NonNull BreakpointInfo breakpointInfo) throws IOException {
+        final boolean result = onCache.update(breakpointInfo);
+        if (result) journal.appendInfo(breakpointInfo);
+
+        final String filename = breakpointInfo.getFilename();
+        Util.d(TAG, "update " + breakpointInfo);
+        if (breakpointInfo.isTaskOnlyProvidedParentPath() && filename != null) {
+            journal.appendResponseFilename(breakpointInfo.getUrl(), filename);
+        }
+        return result;
+    }
+
+    @Override
+    public void onTaskEnd(int id, @NonNull EndCause cause, @Nullable Exception exception) {
+        onCache.onTaskEnd(id, cause, exception);
+        if (cause == EndCause.COMPLETED) removeFromJournal(id);
+    }
+
+    @Nullable @Override
+    public BreakpointInfo getAfterCompleted(int id) {
+        return null;
+    }
+
+    @Override
+    public boolean markFileDirty(int id) {
+        if (onCache.markFileDirty(id)) {
+            try {
+                journal.appendFileDirty(id);
+            } catch (IOException e) {
+                Util.w(TAG, "mark file dirty " + id + " failed " + e);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean markFileClear(int id) {
+        if (onCache.markFileClear(id)) {
+            try {
+                journal.appendFileClear(id);
+            } catch (IOException e) {
+                Util.w(TAG, "mark file clear " + id + " failed " + e);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void remove(int id) {
+        onCache.remove(id);
+        removeFromJournal(id);
+    }
+
+    @Override
+    public int findOrCreateId(@NonNull DownloadTask task) {
+        return onCache.findOrCreateId(task);
+    }
+
+    @Nullable @Override
+    public BreakpointInfo findAnotherInfoFromCompare(@NonNull DownloadTask task,
+                                                     @NonNull BreakpointInfo ignored) {
+        return onCache.findAnotherInfoFromCompare(task, ignored);
+    }
+
+    @Override
+    public boolean isOnlyMemoryCache() {
+        return false;
+    }
+
+    @Override
+    public boolean isFileDirty(int id) {
+        return onCache.isFileDirty(id);
+    }
+
+    @Nullable @Override
+    public String getResponseFilename(String url) {
+        return onCache.getResponseFilename(url);
+    }
+
+    void close() {
+        journal.close();
+    }
+
+    private void removeFromJournal(int id) {
+        try {
+            journal.appendRemoveInfo(id);
+        } catch (IOException e) {
+            Util.w(TAG, "remove " + id + " from journal failed " + e);
+        }
+    }
+}
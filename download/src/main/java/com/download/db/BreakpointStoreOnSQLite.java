@@ -21,8 +21,10 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.download.DownloadTask;
+import com.download.OkDownload;
 import com.download.core.Util;
 import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.breakpoint.BreakpointStore;
 import com.download.core.breakpoint.BreakpointStoreOnCache;
 import com.download.core.breakpoint.DownloadStore;
 import com.download.core.cause.EndCause;
@@ -34,17 +36,26 @@ public class BreakpointStoreOnSQLite implements DownloadStore {
     private static final String TAG = "BreakpointStoreOnSQLite";
     protected final BreakpointSQLiteHelper helper;
     protected final BreakpointStoreOnCache onCache;
+    @NonNull protected final BlockProgressWriter progressWriter;
 
     BreakpointStoreOnSQLite(BreakpointSQLiteHelper helper, BreakpointStoreOnCache onCache) {
+        this(helper, onCache, new BlockProgressWriter(helper));
+    }
+
+    BreakpointStoreOnSQLite(BreakpointSQLiteHelper helper, BreakpointStoreOnCache onCache,
+                            @NonNull BlockProgressWriter progressWriter) {
         this.helper = helper;
         this.onCache = onCache;
+        this.progressWriter = progressWriter;
     }
 
     public BreakpointStoreOnSQLite(Context context) {
         this.helper = new BreakpointSQLiteHelper(context.getApplicationContext());
-        this.onCache = new BreakpointStoreOnCache(helper.loadToCache(),
+        this.onCache = new BreakpointStoreOnCache(helper.loadInfosWithoutBlocks(),
                 helper.loadDirtyFileList(),
-                helper.loadResponseFilenameToMap());
+                helper.loadResponseFilenameToMap(),
+                helper);
+        this.progressWriter = new BlockProgressWriter(helper);
     }
 
     @Nullable @Override
@@ -70,12 +81,14 @@ public class BreakpointStoreOnSQLite implements DownloadStore {
                                           long increaseLength) throws IOException {
         onCache.onSyncToFilesystemSuccess(info, blockIndex, increaseLength);
         final long newCurrentOffset = info.getBlock(blockIndex).getCurrentOffset();
-        helper.updateBlockIncrease(info, blockIndex, newCurrentOffset);
+        progressWriter.offer(info.id, blockIndex, newCurrentOffset);
     }
 
     @Override
     public boolean update(@NonNull BreakpointInfo breakpointInfo) throws IOException {
         final boolean result = onCache.update(breakpointInfo);
+        // the info is rewritten with the latest offsets.
+        progressWriter.discard(breakpointInfo.id);
         helper.updateInfo(breakpointInfo);
         final String filename = breakpointInfo.getFilename();
         Util.d(TAG, "update " + breakpointInfo);
@@ -89,7 +102,10 @@ public class BreakpointStoreOnSQLite implements DownloadStore {
     public void onTaskEnd(int id, @NonNull EndCause cause, @Nullable Exception exception) {
         onCache.onTaskEnd(id, cause, exception);
         if (cause == EndCause.COMPLETED) {
+            progressWriter.discard(id);
             helper.removeInfo(id);
+        } else {
+            progressWriter.flush(id);
         }
     }
 
@@ -121,6 +137,7 @@ public class BreakpointStoreOnSQLite implements DownloadStore {
     @Override
     public void remove(int id) {
         onCache.remove(id);
+        progressWriter.discard(id);
         helper.removeInfo(id);
     }
 
@@ -151,9 +168,38 @@ public class BreakpointStoreOnSQLite implements DownloadStore {
     }
 
     void close() {
+        progressWriter.flush();
         helper.close();
     }
 
+    /**
+     * Get the writer of the block progress, which provides the count of the blocks waiting to be
+     * written and the latency of the flushes.
+     */
+    @NonNull public BlockProgressWriter getProgressWriter() {
+        return progressWriter;
+    }
+
+    /**
+     * Set the delay to write the block progress since the first one is pending, all progress
+     * within the delay is written in one transaction, and only the latest offset of each block is
+     * written. {@code 0} means writing each progress directly. The default one is 1000ms.
+     */
+    public static void setProgressFlushDelayMillis(int delayMillis) {
+        final BreakpointStore store = OkDownload.with().breakpointStore();
+        final BreakpointStoreOnSQLite sqlite;
+        if (store instanceof BreakpointStoreOnSQLite) {
+            sqlite = (BreakpointStoreOnSQLite) store;
+        } else if (store instanceof RemitStoreOnSQLite) {
+            sqlite = ((RemitStoreOnSQLite) store).onSQLiteWrapper;
+        } else {
+            throw new IllegalStateException(
+                    "The current store is " + store + " not BreakpointStoreOnSQLite!");
+        }
+
+        sqlite.progressWriter.flushDelayMillis = Math.max(0, delayMillis);
+    }
+
     @NonNull public DownloadStore createRemitSelf() {
         return new RemitStoreOnSQLite(this);
     }
@@ -36,7 +36,7 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
 
     @NonNull private final RemitSyncToDBHelper remitHelper;
 
-    @NonNull private final BreakpointStoreOnSQLite onSQLiteWrapper;
+    @NonNull final BreakpointStoreOnSQLite onSQLiteWrapper;
     @NonNull private final BreakpointSQLiteHelper sqLiteHelper;
     @NonNull private final DownloadStore sqliteCache;
 
@@ -90,7 +90,10 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
 
     @Override
     public boolean update(@NonNull BreakpointInfo info) throws IOException {
-        if (remitHelper.isNotFreeToDatabase(info.getId())) return sqliteCache.update(info);
+        if (remitHelper.isNotFreeToDatabase(info.getId())) {
+            remitHelper.onTotalLengthKnown(info.getId(), info.getTotalLength());
+            return sqliteCache.update(info);
+        }
 
         return onSQLiteWrapper.update(info);
     }
@@ -100,8 +103,10 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
         sqliteCache.onTaskEnd(id, cause, exception);
 
         if (cause == EndCause.COMPLETED) {
+            onSQLiteWrapper.progressWriter.discard(id);
             remitHelper.discard(id);
         } else {
+            onSQLiteWrapper.progressWriter.flush(id);
             remitHelper.endAndEnsureToDB(id);
         }
     }
@@ -125,6 +130,7 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
     public void remove(int id) {
         sqliteCache.remove(id);
 
+        onSQLiteWrapper.progressWriter.discard(id);
         remitHelper.discard(id);
     }
 
@@ -157,11 +163,17 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
     // following accept database operation what is controlled by helper.
     @Override
     public void syncCacheToDB(List<Integer> idList) throws IOException {
+        // the flush of the progress writer holds its lock while it opens the transaction, so
+        // discard the pending blocks before the transaction to take the two in the same order.
+        for (Integer id : idList) {
+            onSQLiteWrapper.progressWriter.discard(id);
+        }
+
         final SQLiteDatabase database = sqLiteHelper.getWritableDatabase();
         database.beginTransaction();
         try {
             for (Integer id : idList) {
-                syncCacheToDB(id);
+                rewriteInfo(id);
             }
             database.setTransactionSuccessful();
         } finally {
@@ -171,16 +183,44 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
 
     @Override
     public void syncCacheToDB(int id) throws IOException {
-        sqLiteHelper.removeInfo(id);
+        onSQLiteWrapper.progressWriter.discard(id);
+        rewriteInfo(id);
+    }
 
+    // the pending blocks of the id must have been discarded.
+    private void rewriteInfo(int id) throws IOException {
+        // get it before removing, its blocks may be not loaded yet.
         final BreakpointInfo info = sqliteCache.get(id);
+
+        sqLiteHelper.removeInfo(id);
+
         if (info == null || info.getFilename() == null || info.getTotalOffset() <= 0) return;
 
         sqLiteHelper.insert(info);
     }
 
+    @Override
+    public void removeInfo(List<Integer> idList) {
+        // discard before the transaction, the same order of the locks as syncCacheToDB.
+        for (Integer id : idList) {
+            onSQLiteWrapper.progressWriter.discard(id);
+        }
+
+        final SQLiteDatabase database = sqLiteHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            for (Integer id : idList) {
+                sqLiteHelper.removeInfo(id);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
     @Override
     public void removeInfo(int id) {
+        onSQLiteWrapper.progressWriter.discard(id);
         sqLiteHelper.removeInfo(id);
     }
 
@@ -194,4 +234,20 @@ public class RemitStoreOnSQLite implements RemitSyncExecutor.RemitAgent, Downloa
         delayMillis = Math.max(0, delayMillis);
         ((RemitStoreOnSQLite) store).remitHelper.delayMillis = delayMillis;
     }
+
+    /**
+     * Set the max total length of the task whose breakpoint is only kept on the cache until the
+     * task ends, so the completed one is never written to the database, and the one isn't
+     * completed is written on it ends. {@code 0} means only the remit delay is applied, which is
+     * the default one.
+     */
+    public static void setRemitLength(long remitLength) {
+        final BreakpointStore store = OkDownload.with().breakpointStore();
+        if (!(store instanceof RemitStoreOnSQLite)) {
+            throw new IllegalStateException(
+                    "The current store is " + store + " not RemitStoreOnSQLite!");
+        }
+
+        ((RemitStoreOnSQLite) store).remitHelper.remitLength = Math.max(0, remitLength);
+    }
 }
@@ -16,31 +16,34 @@
 
 package com.download.db;
 
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.download.core.Util;
-import com.download.core.breakpoint.BreakpointStoreOnCache;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-
-
-public class RemitSyncExecutor implements Handler.Callback {
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The executor syncs the infos remitted on the cache to the database on its own thread.
+ * <p>
+ * The delayed syncs are kept on a {@link TimerWheel}, so scheduling and canceling them are O(1)
+ * and the ids expired together are synced in one transaction. The other operations are executed
+ * in order after the syncs expired at the same time.
+ */
+public class RemitSyncExecutor implements Runnable {
     private static final String TAG = "RemitSyncExecutor";
 
-    static final int WHAT_SYNC_BUNCH_ID = BreakpointStoreOnCache.FIRST_ID - 1;
-    static final int WHAT_REMOVE_FREE_BUNCH_ID = BreakpointStoreOnCache.FIRST_ID - 2;
-    static final int WHAT_REMOVE_FREE_ID = BreakpointStoreOnCache.FIRST_ID - 3;
-    static final int WHAT_REMOVE_INFO = BreakpointStoreOnCache.FIRST_ID - 4;
-
+    static final long TICK_MILLIS = 50;
 
-    @NonNull private final Handler handler;
+    @NonNull private final TimerWheel wheel;
+    @NonNull private final List<Operation> pendingOperations = new ArrayList<>();
+    private boolean shutdown;
 
     @NonNull private final Set<Integer> freeToDBIdList;
 
@@ -48,118 +51,173 @@ public class RemitSyncExecutor implements Handler.Callback {
     @NonNull final RemitAgent agent;
 
     RemitSyncExecutor(@NonNull RemitAgent agent) {
-        this.agent = agent;
-        this.freeToDBIdList = new HashSet<>();
-
-        final HandlerThread thread = new HandlerThread("OkDownload RemitHandoverToDB");
-        thread.start();
+        this(agent, new TimerWheel(TICK_MILLIS, SystemClock.uptimeMillis()),
+                Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>()));
 
-        handler = new Handler(thread.getLooper(), this);
+        Util.threadFactory("OkDownload RemitHandoverToDB", false).newThread(this).start();
     }
 
-    RemitSyncExecutor(@NonNull RemitAgent agent, @Nullable Handler handler,
+    RemitSyncExecutor(@NonNull RemitAgent agent, @NonNull TimerWheel wheel,
                       @NonNull Set<Integer> freeToDBIdList) {
         this.agent = agent;
-        this.handler = handler;
+        this.wheel = wheel;
         this.freeToDBIdList = freeToDBIdList;
     }
 
-    void shutdown() {
-        this.handler.getLooper().quit();
+    synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
     }
 
     boolean isFreeToDatabase(int id) {
         return freeToDBIdList.contains(id);
     }
 
-    public void postSyncInfoDelay(int id, long delayMillis) {
-        handler.sendEmptyMessageDelayed(id, delayMillis);
+    public synchronized void postSyncInfoDelay(int id, long delayMillis) {
+        wheel.schedule(id, delayMillis, SystemClock.uptimeMillis());
+        notifyAll();
     }
 
     public void postSync(int id) {
-        handler.sendEmptyMessage(id);
+        postSyncInfoDelay(id, 0);
     }
 
-    public void postSync(List<Integer> idList) {
-        Message message = handler.obtainMessage(WHAT_SYNC_BUNCH_ID);
-        message.obj = idList;
-        handler.sendMessage(message);
+    public synchronized void postSync(List<Integer> idList) {
+        final long nowMillis = SystemClock.uptimeMillis();
+        for (Integer id : idList) {
+            wheel.schedule(id, 0, nowMillis);
+        }
+        notifyAll();
     }
 
     public void postRemoveInfo(int id) {
-        Message message = handler.obtainMessage(WHAT_REMOVE_INFO);
-        message.arg1 = id;
-        handler.sendMessage(message);
+        post(new Operation(Operation.REMOVE_INFO, id, null));
     }
 
     public void postRemoveFreeIds(List<Integer> idList) {
-        final Message message = handler.obtainMessage(WHAT_REMOVE_FREE_BUNCH_ID);
-        message.obj = idList;
-        handler.sendMessage(message);
+        post(new Operation(Operation.REMOVE_FREE_IDS, 0, idList));
     }
 
     public void postRemoveFreeId(int id) {
-        final Message message = handler.obtainMessage(WHAT_REMOVE_FREE_ID);
-        message.arg1 = id;
-        handler.sendMessage(message);
+        post(new Operation(Operation.REMOVE_FREE_ID, id, null));
     }
 
-    void removePostWithId(int id) {
-        handler.removeMessages(id);
+    synchronized void removePostWithId(int id) {
+        wheel.cancel(id);
     }
 
-    void removePostWithIds(int[] ids) {
+    synchronized void removePostWithIds(int[] ids) {
         for (int id : ids) {
-            handler.removeMessages(id);
+            wheel.cancel(id);
         }
     }
 
-    public boolean handleMessage(Message msg) {
-        List<Integer> idList;
-        int id;
-        switch (msg.what) {
-            case WHAT_REMOVE_INFO:
-                id = msg.arg1;
-                freeToDBIdList.remove(id);
-                this.agent.removeInfo(id);
-                Util.d(TAG, "remove info " + id);
-                break;
-            case WHAT_REMOVE_FREE_BUNCH_ID:
-                // remove bunch free-ids
-                idList = (List<Integer>) msg.obj;
-                freeToDBIdList.removeAll(idList);
-                Util.d(TAG, "remove free bunch ids " + idList);
-                break;
-            case WHAT_REMOVE_FREE_ID:
-                // remove free-id
-                id = msg.arg1;
-                freeToDBIdList.remove(id);
-                Util.d(TAG, "remove free bunch id " + id);
-                break;
-            case WHAT_SYNC_BUNCH_ID:
-                // sync bunch id
-                idList = (List<Integer>) msg.obj;
-                try {
-                    this.agent.syncCacheToDB(idList);
-                    freeToDBIdList.addAll(idList);
-                    Util.d(TAG, "sync bunch info with ids: " + idList);
-                } catch (IOException e) {
-                    Util.w(TAG, "sync info to db failed for ids: " + idList);
+    @Override
+    public void run() {
+        while (true) {
+            final long waitMillis;
+            synchronized (this) {
+                if (shutdown) return;
+
+                if (pendingOperations.isEmpty()) {
+                    waitMillis = wheel.millisToNextTick(SystemClock.uptimeMillis());
+                } else {
+                    waitMillis = 0;
                 }
-                break;
-            default:
-                // sync id
-                id = msg.what;
-                try {
-                    this.agent.syncCacheToDB(id);
-                    freeToDBIdList.add(id);
-                    Util.d(TAG, "sync info with id: " + id);
-                } catch (IOException e) {
-                    Util.w(TAG, "sync cache to db failed for id: " + id);
+
+                if (waitMillis != 0) {
+                    try {
+                        // wait(0) is waiting until notified.
+                        wait(Math.max(0, waitMillis));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
                 }
-                break;
+            }
+
+            executeDue(SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * Sync the infos whose delay has been expired on {@code nowMillis} in one transaction, and
+     * then execute the operations posted.
+     */
+    // convenient for test
+    void executeDue(long nowMillis) {
+        final List<Integer> syncIdList;
+        final List<Operation> operations;
+        synchronized (this) {
+            syncIdList = wheel.advance(nowMillis);
+            operations = new ArrayList<>(pendingOperations);
+            pendingOperations.clear();
+        }
+
+        if (!syncIdList.isEmpty()) {
+            try {
+                this.agent.syncCacheToDB(syncIdList);
+                freeToDBIdList.addAll(syncIdList);
+                Util.d(TAG, "sync bunch info with ids: " + syncIdList);
+            } catch (IOException e) {
+                Util.w(TAG, "sync info to db failed for ids: " + syncIdList);
+            }
+        }
+
+        // the free states are removed in order, and then the infos are removed in one
+        // transaction, the info is never synced again after its free state is removed.
+        final List<Integer> removeInfoIdList = new ArrayList<>();
+        for (Operation operation : operations) {
+            operation.execute(this);
+            if (operation.what == Operation.REMOVE_INFO) removeInfoIdList.add(operation.id);
+        }
+
+        if (!removeInfoIdList.isEmpty()) {
+            this.agent.removeInfo(removeInfoIdList);
+            Util.d(TAG, "remove bunch info with ids: " + removeInfoIdList);
+        }
+    }
+
+    private synchronized void post(@NonNull Operation operation) {
+        pendingOperations.add(operation);
+        notifyAll();
+    }
+
+    private static class Operation {
+        static final int REMOVE_INFO = 0;
+        static final int REMOVE_FREE_IDS = 1;
+        static final int REMOVE_FREE_ID = 2;
+
+        final int what;
+        final int id;
+        @Nullable final List<Integer> idList;
+
+        Operation(int what, int id, @Nullable List<Integer> idList) {
+            this.what = what;
+            this.id = id;
+            this.idList = idList;
+        }
+
+        void execute(@NonNull RemitSyncExecutor executor) {
+            switch (what) {
+                case REMOVE_INFO:
+                    // the info is removed by the executor with the others in one transaction.
+                    executor.freeToDBIdList.remove(id);
+                    break;
+                case REMOVE_FREE_IDS:
+                    // remove bunch free-ids
+                    executor.freeToDBIdList.removeAll(idList);
+                    Util.d(TAG, "remove free bunch ids " + idList);
+                    break;
+                case REMOVE_FREE_ID:
+                    // remove free-id
+                    executor.freeToDBIdList.remove(id);
+                    Util.d(TAG, "remove free bunch id " + id);
+                    break;
+                default:
+                    break;
+            }
         }
-        return true;
     }
 
     interface RemitAgent {
@@ -167,6 +225,8 @@ public class RemitSyncExecutor implements Handler.Callback {
 
         void syncCacheToDB(int id) throws IOException;
 
+        void removeInfo(List<Integer> idList);
+
         void removeInfo(int id);
     }
 }
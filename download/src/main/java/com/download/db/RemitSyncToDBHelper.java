@@ -23,6 +23,8 @@ class RemitSyncToDBHelper {
     private final RemitSyncExecutor executor;
 
     long delayMillis;
+    // the info whose total length is not larger than it is kept on the cache until the task ends.
+    long remitLength;
 
     RemitSyncToDBHelper(@NonNull final RemitSyncExecutor.RemitAgent agent) {
         this(new RemitSyncExecutor(agent));
@@ -48,6 +50,18 @@ class RemitSyncToDBHelper {
         executor.postSyncInfoDelay(id, delayMillis);
     }
 
+    /**
+     * The total length of the task is known, the small one is kept on the cache until it ends,
+     * because it's cheap to download again but its breakpoint costs writes as many as the large
+     * one.
+     */
+    void onTotalLengthKnown(int id, long totalLength) {
+        if (totalLength <= 0 || totalLength > remitLength) return;
+        if (executor.isFreeToDatabase(id)) return;
+
+        executor.removePostWithId(id);
+    }
+
     void endAndEnsureToDB(int id) {
         executor.removePostWithId(id);
 
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The hierarchical timer wheel of the ids, each id has one timer at most.
+ * <p>
+ * There are {@link #LEVELS} wheels of {@link #SLOTS} slots, the slot of the level {@code n} covers
+ * {@code SLOTS^n} ticks. The timer is put on the lowest level which can cover its deadline, and
+ * moved to the lower levels when the wheel turns to its slot, so scheduling and canceling are
+ * O(1), and turning a tick only touches the timers on the slots reached.
+ * <p>
+ * It isn't thread safe and doesn't hold any thread, the owner turns it by {@link #advance(long)}.
+ */
+class TimerWheel {
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    static final int LEVELS = 4;
+    // the timers out of this are kept on the top level and moved again when it's reached.
+    private static final long MAX_SPAN_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    private final Map<Integer, Timer> timers = new HashMap<>();
+    // the timers whose deadline has been reached but haven't been drained.
+    private final Set<Integer> expiredIds = new LinkedHashSet<>();
+
+    // the last tick has been turned.
+    private long currentTick;
+
+    TimerWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tick must be positive");
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedule the timer of {@code id} to be expired after {@code delayMillis}, the previous one
+     * of the same id is replaced.
+     */
+    void schedule(int id, long delayMillis, long nowMillis) {
+        cancel(id);
+
+        // round up, so the timer is never expired earlier than the delay.
+        final long deadlineTick = (nowMillis + Math.max(0, delayMillis) + tickMillis - 1)
+                / tickMillis;
+        final Timer timer = new Timer(id, deadlineTick);
+        timers.put(id, timer);
+        if (delayMillis <= 0) {
+            // drained by the next advance directly, even if the current tick isn't turned.
+            expire(timer);
+        } else {
+            place(timer);
+        }
+    }
+
+    /**
+     * Cancel the timer of {@code id}.
+     *
+     * @return {@code true} if there is a timer of {@code id} which hasn't been drained.
+     */
+    boolean cancel(int id) {
+        final Timer timer = timers.remove(id);
+        if (timer == null) return false;
+
+        if (timer.level < 0) {
+            expiredIds.remove(id);
+        } else {
+            unlink(timer);
+        }
+        return true;
+    }
+
+    boolean contains(int id) {
+        return timers.containsKey(id);
+    }
+
+    boolean isEmpty() {
+        return timers.isEmpty();
+    }
+
+    int size() {
+        return timers.size();
+    }
+
+    /**
+     * Turn the wheel to {@code nowMillis} and drain the ids whose timers have been expired, in the
+     * order of their deadline ticks.
+     */
+    @NonNull List<Integer> advance(long nowMillis) {
+        final long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            if (timers.size() == expiredIds.size()) {
+                // nothing on the wheel.
+                currentTick = targetTick;
+                break;
+            }
+
+            currentTick++;
+            cascade();
+            expireSlot(slots[0], (int) (currentTick & SLOT_MASK));
+        }
+
+        if (expiredIds.isEmpty()) return new ArrayList<>(0);
+
+        final List<Integer> drained = new ArrayList<>(expiredIds);
+        expiredIds.clear();
+        for (Integer id : drained) timers.remove(id);
+        return drained;
+    }
+
+    /**
+     * Get the milliseconds from {@code nowMillis} to the next tick has timers to be expired or
+     * moved, or {@code -1} if there isn't any timer on the wheel.
+     */
+    long millisToNextTick(long nowMillis) {
+        if (!expiredIds.isEmpty()) return 0;
+        if (timers.isEmpty()) return -1;
+
+        // the timers on the higher levels are moved on the boundary of the first level.
+        long nextTick = (currentTick | SLOT_MASK) + 1;
+        for (long tick = currentTick + 1; tick < nextTick; tick++) {
+            if (slots[0][(int) (tick & SLOT_MASK)] != null) {
+                nextTick = tick;
+                break;
+            }
+        }
+
+        return Math.max(0, nextTick * tickMillis - nowMillis);
+    }
+
+    // move the timers on the slots of the higher levels reached by the current tick.
+    private void cascade() {
+        int level = 1;
+        while (level < LEVELS
+                && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+            level++;
+        }
+
+        for (int i = level - 1; i >= 1; i--) {
+            final int slot = (int) ((currentTick >>> (SLOT_BITS * i)) & SLOT_MASK);
+            Timer timer = slots[i][slot];
+            slots[i][slot] = null;
+            while (timer != null) {
+                final Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                place(timer);
+                timer = next;
+            }
+        }
+    }
+
+    private void expireSlot(@NonNull Timer[] wheel, int slot) {
+        Timer timer = wheel[slot];
+        wheel[slot] = null;
+        while (timer != null) {
+            final Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            expire(timer);
+            timer = next;
+        }
+    }
+
+    private void place(@NonNull Timer timer) {
+        final long remainTicks = timer.deadlineTick - currentTick;
+        if (remainTicks <= 0) {
+            expire(timer);
+            return;
+        }
+
+        final long placedTick = remainTicks < MAX_SPAN_TICKS
+                ? timer.deadlineTick : currentTick + MAX_SPAN_TICKS - 1;
+        int level = 0;
+        while (level < LEVELS - 1
+                && placedTick - currentTick >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+
+        final int slot = (int) ((placedTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timer.level = level;
+        timer.slot = slot;
+        final Timer head = slots[level][slot];
+        timer.next = head;
+        if (head != null) head.prev = timer;
+        slots[level][slot] = timer;
+    }
+
+    private void expire(@NonNull Timer timer) {
+        timer.level = -1;
+        expiredIds.add(timer.id);
+    }
+
+    private void unlink(@NonNull Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slots[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    private static class Timer {
+        final int id;
+        final long deadlineTick;
+        // -1 for it has been expired.
+        int level;
+        int slot;
+        @Nullable Timer prev;
+        @Nullable Timer next;
+
+        Timer(int id, long deadlineTick) {
+            this.id = id;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+import com.download.core.cause.EndCause;
+import com.download.core.connection.DownloadConnection;
+import com.download.core.listener.DownloadListener2;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class DownloadContextTest {
+
+    private static final int HOST_COUNT = 30;
+    private static final int TASK_COUNT_PER_HOST = 4;
+    private static final int LANES_PER_HOST = 2;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private OkDownload okDownload;
+
+    @Before
+    public void setup() {
+        // the task ends with the error directly after it's started, there isn't any network.
+        okDownload = TestUtils.initOkDownload(new OkDownload.Builder(RuntimeEnvironment.application)
+                .downloadStore(new BreakpointStoreOnCache())
+                .connectionFactory(new DownloadConnection.Factory() {
+                    @Override
+                    public DownloadConnection create(String url) throws IOException {
+                        throw new IOException("no network on the test: " + url);
+                    }
+                }));
+    }
+
+    @Test
+    public void startOnBatch_lanesBoundedByMaxParallelRunningCount() throws Exception {
+        final int maxParallelRunningCount = okDownload.downloadDispatcher()
+                .getMaxParallelRunningCount();
+        final DownloadContext.Builder builder = new DownloadContext.QueueSet()
+                .setParentPathFile(folder.getRoot())
+                .setAutoCallbackToUIThread(false)
+                .setBatchLanesPerHost(LANES_PER_HOST)
+                .commit();
+        for (int host = 0; host < HOST_COUNT; host++) {
+            for (int i = 0; i < TASK_COUNT_PER_HOST; i++) {
+                builder.bind("https://host" + host + ".example.com/file-" + i);
+            }
+        }
+
+        final RunningListener listener = new RunningListener(HOST_COUNT * TASK_COUNT_PER_HOST);
+        builder.build().startOnBatch(listener);
+
+        assertTrue(listener.ended.await(30, TimeUnit.SECONDS));
+        assertTrue("max running " + listener.maxRunning,
+                listener.maxRunning <= maxParallelRunningCount);
+        assertTrue("max running of a host " + listener.maxHostRunning,
+                listener.maxHostRunning <= LANES_PER_HOST);
+        // the lanes run in parallel.
+        assertTrue("max running " + listener.maxRunning, listener.maxRunning > 1);
+        assertEquals(HOST_COUNT * TASK_COUNT_PER_HOST, listener.startedCount);
+    }
+
+    private static class RunningListener extends DownloadListener2 {
+        final CountDownLatch ended;
+        final Map<String, Integer> hostRunning = new HashMap<>();
+        int running;
+        int maxRunning;
+        int maxHostRunning;
+        int startedCount;
+
+        RunningListener(int taskCount) {
+            ended = new CountDownLatch(taskCount);
+        }
+
+        @Override public void taskStart(@NonNull DownloadTask task) {
+            synchronized (this) {
+                startedCount++;
+                maxRunning = Math.max(maxRunning, ++running);
+                final String host = task.getUrl().substring(0, task.getUrl().lastIndexOf('/'));
+                final Integer count = hostRunning.get(host);
+                final int newCount = count == null ? 1 : count + 1;
+                hostRunning.put(host, newCount);
+                maxHostRunning = Math.max(maxHostRunning, newCount);
+            }
+            // keep it running for a while, so the lanes overlap.
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override public void taskEnd(@NonNull DownloadTask task, @NonNull EndCause cause,
+                                      @Nullable Exception realCause) {
+            synchronized (this) {
+                running--;
+                final String host = task.getUrl().substring(0, task.getUrl().lastIndexOf('/'));
+                hostRunning.put(host, hostRunning.get(host) - 1);
+            }
+            ended.countDown();
+        }
+    }
+}
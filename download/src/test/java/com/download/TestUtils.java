@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download;
+
+import android.support.annotation.NonNull;
+
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+import com.download.core.file.DownloadFileChannelOutputStream;
+
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * The helpers for the unit tests which run the download core on the Robolectric.
+ */
+public class TestUtils {
+
+    /**
+     * Replace the singleton of {@link OkDownload} with the one which keeps the breakpoints on
+     * the memory and writes the files through the {@link java.nio.channels.FileChannel}.
+     */
+    @NonNull public static OkDownload initOkDownload() {
+        return initOkDownload(new OkDownload.Builder(RuntimeEnvironment.application)
+                .downloadStore(new BreakpointStoreOnCache())
+                .outputStreamFactory(new DownloadFileChannelOutputStream.Factory()));
+    }
+
+    @NonNull public static OkDownload initOkDownload(@NonNull OkDownload.Builder builder) {
+        final OkDownload okDownload = builder.build();
+        OkDownload.singleton = okDownload;
+        return okDownload;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.connection;
+
+import com.download.TestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class SharedOkHttp3ConnectionFactoryTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        TestUtils.initOkDownload();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void construct_withClient_sharePoolAndDispatcher() {
+        final OkHttpClient appClient = new OkHttpClient();
+        final SharedOkHttp3ConnectionFactory factory =
+                new SharedOkHttp3ConnectionFactory(appClient);
+
+        assertSame(appClient.connectionPool(), factory.client().connectionPool());
+        assertSame(appClient.dispatcher(), factory.client().dispatcher());
+    }
+
+    @Test
+    public void construct_withoutClient_ownPool() {
+        final SharedOkHttp3ConnectionFactory factory = new SharedOkHttp3ConnectionFactory();
+
+        assertNotSame(new OkHttpClient().connectionPool(), factory.client().connectionPool());
+    }
+
+    @Test
+    public void execute_eventsDelegatedToClientListener() throws IOException {
+        final List<String> events = new ArrayList<>();
+        final OkHttpClient appClient = new OkHttpClient.Builder()
+                .eventListenerFactory(new EventListener.Factory() {
+                    @Override public EventListener create(Call call) {
+                        return new EventListener() {
+                            @Override public void callStart(Call call) {
+                                events.add("callStart");
+                            }
+
+                            @Override public void connectionAcquired(Call call,
+                                                                     Connection connection) {
+                                events.add("connectionAcquired");
+                            }
+
+                            @Override public void callEnd(Call call) {
+                                events.add("callEnd");
+                            }
+                        };
+                    }
+                })
+                .build();
+        final SharedOkHttp3ConnectionFactory factory =
+                new SharedOkHttp3ConnectionFactory(appClient);
+
+        server.enqueue(new MockResponse().setBody("content"));
+        final Response response = factory.client()
+                .newCall(new Request.Builder().url(server.url("/")).build())
+                .execute();
+        assertEquals("content", response.body().string());
+
+        // the statistics are recorded too.
+        assertEquals(1, factory.getConnectedCount());
+        assertEquals(1, factory.getAcquiredCount());
+        assertEquals("callStart", events.get(0));
+        assertEquals("connectionAcquired", events.get(1));
+        assertEquals("callEnd", events.get(events.size() - 1));
+    }
+}
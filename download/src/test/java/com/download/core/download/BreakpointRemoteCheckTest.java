@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.TestUtils;
+import com.download.core.Util;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.cause.EndCause;
+import com.download.core.cause.ResumeFailedCause;
+import com.download.core.exception.ResumeFailedException;
+import com.download.core.listener.DownloadListener2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class BreakpointRemoteCheckTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        TestUtils.initOkDownload();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void check_trialPreconditionFailed_keepEtagAndThrow() throws Exception {
+        // the resource is changed, and the 412 response usually carries no etag.
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(412);
+            }
+        });
+        final DownloadTask task = new DownloadTask
+                .Builder(server.url("/resource").toString(), folder.getRoot())
+                .setFilename("resource")
+                .setAutoCallbackToUIThread(false)
+                .build();
+        task.replaceListener(new DownloadListener2() {
+            @Override public void taskStart(@NonNull DownloadTask task) {
+            }
+
+            @Override public void taskEnd(@NonNull DownloadTask task, @NonNull EndCause cause,
+                                          @Nullable Exception realCause) {
+            }
+        });
+        final BreakpointInfo info = new BreakpointInfo(task.getId(), task.getUrl(),
+                folder.getRoot(), "resource");
+        info.setEtag("\"v1\"");
+        info.addBlock(new BlockInfo(0, 100, 40));
+
+        try {
+            new BreakpointRemoteCheck(task, info).check();
+            fail("the breakpoint is stale, it mustn't be resumed");
+        } catch (ResumeFailedException e) {
+            assertEquals(ResumeFailedCause.RESPONSE_PRECONDITION_FAILED,
+                    e.getResumeFailedCause());
+        }
+
+        final RecordedRequest trial = server.takeRequest();
+        assertEquals("\"v1\"", trial.getHeader(Util.IF_MATCH));
+        // the etag isn't blanked, so the stale blocks are never resumed without the If-Match.
+        assertEquals("\"v1\"", info.getEtag());
+        assertEquals(40, info.getBlock(0).getCurrentOffset());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.download.DownloadTask;
+import com.download.OkDownload;
+import com.download.TestUtils;
+import com.download.core.Util;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+import com.download.core.cause.EndCause;
+import com.download.core.file.DownloadFileChannelOutputStream;
+import com.download.core.listener.DownloadListener2;
+import com.download.core.metrics.DownloadMetrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class DownloadCallTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private BreakpointStoreOnCache store;
+    private DownloadMetrics metrics;
+
+    @Before
+    public void setup() throws IOException {
+        store = new BreakpointStoreOnCache();
+        metrics = new DownloadMetrics();
+        TestUtils.initOkDownload(new OkDownload.Builder(RuntimeEnvironment.application)
+                .downloadStore(store)
+                .outputStreamFactory(new DownloadFileChannelOutputStream.Factory())
+                .metrics(metrics));
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void execute_trialPreconditionFailed_retryWithoutBreakpoint() throws Exception {
+        final byte[] content = new byte[4096];
+        for (int i = 0; i < content.length; i++) content[i] = (byte) (i * 31);
+
+        // the resource is changed to v2, so the request still matching v1 is refused.
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                final String ifMatch = request.getHeader(Util.IF_MATCH);
+                if (ifMatch != null && !ifMatch.equals("\"v2\"")) {
+                    return new MockResponse().setResponseCode(412);
+                }
+                final MockResponse response = new MockResponse().setHeader("ETag", "\"v2\"");
+                if ("HEAD".equals(request.getMethod())) {
+                    return response.setHeader("Content-Length", content.length);
+                }
+                return response.setBody(new Buffer().write(content));
+            }
+        });
+
+        final DownloadTask task = new DownloadTask
+                .Builder(server.url("/resource").toString(), folder.getRoot())
+                .setFilename("resource")
+                .setPreAllocateLength(false)
+                .setAutoCallbackToUIThread(false)
+                .build();
+
+        // the breakpoint of v1 with the stale bytes on the file.
+        final BreakpointInfo info = store.createAndInsert(task);
+        info.setEtag("\"v1\"");
+        info.addBlock(new BlockInfo(0, content.length, 1000));
+        final File file = new File(folder.getRoot(), "resource");
+        final FileOutputStream stale = new FileOutputStream(file);
+        stale.write(new byte[1000]);
+        stale.close();
+
+        final EndCause[] endCause = new EndCause[1];
+        final Exception[] endRealCause = new Exception[1];
+        task.execute(new DownloadListener2() {
+            @Override public void taskStart(@NonNull DownloadTask task) {
+            }
+
+            @Override public void taskEnd(@NonNull DownloadTask task, @NonNull EndCause cause,
+                                          @Nullable Exception realCause) {
+                endCause[0] = cause;
+                endRealCause[0] = realCause;
+            }
+        });
+
+        assertNull(endRealCause[0]);
+        assertEquals(EndCause.COMPLETED, endCause[0]);
+        assertEquals(1, metrics.snapshot().getCount(DownloadMetrics.Counter.RETRY_PRECONDITION));
+        assertArrayEquals(content, readAll(file));
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.core.file;
+
+import com.download.DownloadTask;
+import com.download.OkDownload;
+import com.download.TestUtils;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+import com.download.core.breakpoint.BreakpointStoreOnCache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class MultiPointOutputStreamTest {
+
+    private static final int BLOCK_COUNT = 8;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private BreakpointStoreOnCache store;
+
+    @Before
+    public void setup() {
+        final OkDownload okDownload = TestUtils.initOkDownload();
+        store = (BreakpointStoreOnCache) okDownload.breakpointStore();
+    }
+
+    @Test
+    public void write_concurrentBlocks_byteExact() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            writeConcurrently("stress-" + round, round, 8 * 1024);
+        }
+    }
+
+    @Test
+    public void write_concurrentBlocks_syncOnEachWrite_byteExact() throws Exception {
+        // every write crosses the sync buffer, so the sync job races with all writes.
+        writeConcurrently("sync-each-write", 100, 1);
+    }
+
+    @Test
+    public void addRequireStreamBlock_afterAllNoMoreStream_refused() throws Exception {
+        final DownloadTask task = createTask("refused", 1024);
+        final BreakpointInfo info = createInfo(task, 2, 10);
+        final MultiPointOutputStream outputStream = new MultiPointOutputStream(task, info, store);
+        outputStream.setRequireStreamBlocks(blockIndexes(2));
+
+        assertTrue(outputStream.addRequireStreamBlock(2));
+        outputStream.done(0);
+        outputStream.done(1);
+        outputStream.done(2);
+
+        assertFalse(outputStream.addRequireStreamBlock(3));
+    }
+
+    private void writeConcurrently(String filename, long seed, int syncBufferSize)
+            throws Exception {
+        final DownloadTask task = createTask(filename, syncBufferSize);
+        final BreakpointInfo info = createInfo(task, BLOCK_COUNT, 96 * 1024);
+        final MultiPointOutputStream outputStream = new MultiPointOutputStream(task, info, store);
+        outputStream.setRequireStreamBlocks(blockIndexes(BLOCK_COUNT));
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            final int blockIndex = i;
+            final BlockInfo blockInfo = info.getBlock(blockIndex);
+            final Random random = new Random(seed * 31 + blockIndex);
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        writeBlock(outputStream, blockIndex, blockInfo, random);
+                        outputStream.done(blockIndex);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        startLatch.countDown();
+        for (Thread thread : threads) thread.join();
+        assertNull(String.valueOf(failure.get()), failure.get());
+
+        // the progress of each block is exactly what its thread has written.
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            final BlockInfo blockInfo = info.getBlock(i);
+            assertEquals("block " + i, blockInfo.getContentLength(),
+                    blockInfo.getCurrentOffset());
+            assertEquals(0, outputStream.slot(i).noSyncLength.get());
+        }
+        assertEquals(0, outputStream.allNoSyncLength.get());
+        assertEquals(info.getTotalLength(), info.getTotalOffset());
+
+        assertFileContent(task.getFile(), info.getTotalLength());
+    }
+
+    // write the block from its start in the chunks with the random length.
+    private static void writeBlock(MultiPointOutputStream outputStream, int blockIndex,
+                                   BlockInfo blockInfo, Random random) throws IOException {
+        final byte[] buffer = new byte[4096];
+        long position = blockInfo.getStartOffset();
+        final long end = blockInfo.getStartOffset() + blockInfo.getContentLength();
+        while (position < end) {
+            final int length = (int) Math.min(end - position, 1 + random.nextInt(buffer.length));
+            for (int i = 0; i < length; i++) {
+                buffer[i] = contentAt(position + i);
+            }
+            outputStream.write(blockIndex, buffer, length);
+            position += length;
+            if (random.nextInt(16) == 0) Thread.yield();
+        }
+    }
+
+    private static void assertFileContent(File file, long length) throws IOException {
+        assertEquals(length, file.length());
+
+        final byte[] actual = new byte[(int) length];
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.readFully(actual);
+        } finally {
+            input.close();
+        }
+
+        for (int i = 0; i < actual.length; i++) {
+            if (actual[i] != contentAt(i)) {
+                throw new AssertionError("content mismatch at " + i + ": " + actual[i]
+                        + " != " + contentAt(i));
+            }
+        }
+    }
+
+    private static byte contentAt(long position) {
+        return (byte) (position * 31 + (position >>> 9));
+    }
+
+    private DownloadTask createTask(String filename, int syncBufferSize) {
+        return new DownloadTask.Builder("https://example.com/" + filename, folder.getRoot())
+                .setFilename(filename)
+                .setPreAllocateLength(false)
+                .setSyncBufferSize(syncBufferSize)
+                .setSyncBufferIntervalMillis(1)
+                .build();
+    }
+
+    // the blocks with the different lengths, so they end at the different time.
+    private BreakpointInfo createInfo(DownloadTask task, int blockCount, int blockLength) {
+        final BreakpointInfo info = store.createAndInsert(task);
+        long start = 0;
+        for (int i = 0; i < blockCount; i++) {
+            final long length = blockLength + i * 997;
+            info.addBlock(new BlockInfo(start, length));
+            start += length;
+        }
+        return info;
+    }
+
+    private static List<Integer> blockIndexes(int count) {
+        final List<Integer> blockIndexes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) blockIndexes.add(i);
+        return blockIndexes;
+    }
+}
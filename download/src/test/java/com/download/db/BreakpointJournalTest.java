@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import android.util.SparseArray;
+
+import com.download.DownloadTask;
+import com.download.TestUtils;
+import com.download.core.breakpoint.BlockInfo;
+import com.download.core.breakpoint.BreakpointInfo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Crash the journal by truncating or corrupting it at the random offsets, and check the replayed
+ * state is the one of the last record before the broken offset on the reference model, and the
+ * journal keeps working after that.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class BreakpointJournalTest {
+
+    private static final int MAX_ID = 6;
+    private static final String EMPTY_STATE = describe(new TreeMap<Integer, BreakpointInfo>(),
+            new TreeSet<Integer>(), new TreeMap<String, String>());
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private BreakpointJournal journal;
+
+    // the reference model.
+    private final TreeMap<Integer, BreakpointInfo> infos = new TreeMap<>();
+    private final TreeSet<Integer> dirtyFileIds = new TreeSet<>();
+    private final TreeMap<String, String> responseFilenames = new TreeMap<>();
+
+    // the length of the journal after each append, and the state of the model at that time.
+    private final List<Long> lengths = new ArrayList<>();
+    private final List<String> states = new ArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        file = new File(folder.getRoot(), "breakpoint.journal");
+        journal = new BreakpointJournal(file);
+        journal.load();
+        snapshot();
+    }
+
+    @Test
+    public void load_truncateAtRandomOffset_replayToLastCompleteRecord() throws IOException {
+        final Random random = new Random(0);
+        for (int round = 0; round < 200; round++) {
+            appendRandomly(random, 1 + random.nextInt(30));
+
+            final long offset = random.nextInt((int) file.length() + 1);
+            journal.close();
+            truncate(offset);
+
+            reloadAndCheck(offset);
+        }
+    }
+
+    @Test
+    public void load_corruptAtRandomOffset_replayToRecordBeforeCorruption() throws IOException {
+        final Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            appendRandomly(random, 1 + random.nextInt(30));
+
+            final long offset = random.nextInt((int) file.length());
+            journal.close();
+            corrupt(offset, (byte) (1 + random.nextInt(255)));
+
+            reloadAndCheck(offset);
+        }
+    }
+
+    @Test
+    public void load_crashAfterCompact_replayCompactedState() throws IOException {
+        final Random random = new Random(2);
+        for (int round = 0; round < 100; round++) {
+            appendRandomly(random, 1 + random.nextInt(30));
+            journal.compact();
+            // the records before the compaction are all rewritten to the new journal.
+            lengths.clear();
+            states.clear();
+            snapshot();
+            appendRandomly(random, 1 + random.nextInt(30));
+
+            final long compactedLength = lengths.get(0);
+            final long offset = compactedLength
+                    + random.nextInt((int) (file.length() - compactedLength) + 1);
+            journal.close();
+            if (offset < file.length() && random.nextBoolean()) {
+                corrupt(offset, (byte) (1 + random.nextInt(255)));
+            } else {
+                truncate(offset);
+            }
+            reloadAndCheck(offset);
+        }
+    }
+
+    @Test
+    public void load_cleanClose_replayAll() throws IOException {
+        appendRandomly(new Random(3), 500);
+        journal.close();
+
+        reloadAndCheck(file.length());
+        assertEquals(states.get(states.size() - 1), describeJournal());
+    }
+
+    @Test
+    public void storeOnJournal_tornTail_restoreLastSyncedOffset() throws IOException {
+        TestUtils.initOkDownload();
+        final DownloadTask task = new DownloadTask
+                .Builder("https://example.com/torn", folder.getRoot())
+                .setFilename("torn")
+                .build();
+
+        BreakpointStoreOnJournal store = new BreakpointStoreOnJournal(file);
+        final BreakpointInfo info = store.createAndInsert(task);
+        info.addBlock(new BlockInfo(0, 1000));
+        store.update(info);
+        store.onSyncToFilesystemSuccess(info, 0, 100);
+        final long syncedLength = file.length();
+        store.onSyncToFilesystemSuccess(info, 0, 50);
+        store.close();
+        // the last sync is torn by the crash.
+        truncate(syncedLength + (file.length() - syncedLength) / 2);
+
+        store = new BreakpointStoreOnJournal(file);
+        BreakpointInfo restored = store.get(info.id);
+        assertNotNull(restored);
+        assertEquals(100, restored.getBlock(0).getCurrentOffset());
+        assertEquals(syncedLength, file.length());
+
+        // keep appending after the torn tail is dropped.
+        store.onSyncToFilesystemSuccess(restored, 0, 20);
+        store.close();
+
+        store = new BreakpointStoreOnJournal(file);
+        restored = store.get(info.id);
+        assertNotNull(restored);
+        assertEquals(120, restored.getBlock(0).getCurrentOffset());
+        store.close();
+    }
+
+    private void reloadAndCheck(long brokenOffset) throws IOException {
+        int last = -1;
+        for (int i = 0; i < lengths.size(); i++) {
+            if (lengths.get(i) <= brokenOffset) last = i;
+        }
+        final String expected = last < 0 ? EMPTY_STATE : states.get(last);
+
+        journal = new BreakpointJournal(file);
+        journal.load();
+        assertEquals("broken at " + brokenOffset, expected, describeJournal());
+        if (last >= 0) {
+            assertEquals(lengths.get(last).longValue(), journal.length());
+            assertEquals(journal.length(), file.length());
+        }
+
+        // the records after the broken offset are gone, continue with the replayed state.
+        resetModel();
+        while (lengths.size() > last + 1) {
+            lengths.remove(lengths.size() - 1);
+            states.remove(states.size() - 1);
+        }
+        // the unrecognized journal is rewritten as the empty one.
+        if (last < 0) snapshot();
+
+        // the journal keeps working after the reload.
+        appendRandomly(new Random(brokenOffset), 5);
+        journal.close();
+        journal = new BreakpointJournal(file);
+        journal.load();
+        assertEquals(states.get(states.size() - 1), describeJournal());
+    }
+
+    private void appendRandomly(Random random, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final int id = 1 + random.nextInt(MAX_ID);
+            final int op = random.nextInt(10);
+            if (op < 2) {
+                final BreakpointInfo info = randomInfo(random, id);
+                journal.appendInfo(info);
+                infos.put(id, info.copy());
+                infos.get(id).setEtag(info.getEtag());
+            } else if (op < 6) {
+                final BreakpointInfo info = infos.get(id);
+                final int blockIndex = random.nextInt(3);
+                final long currentOffset = random.nextInt(100000);
+                journal.appendBlockOffset(id, blockIndex, currentOffset);
+                if (info != null && blockIndex < info.getBlockCount()) {
+                    final BlockInfo block = info.getBlock(blockIndex);
+                    block.increaseCurrentOffset(currentOffset - block.getCurrentOffset());
+                }
+            } else if (op < 7) {
+                journal.appendRemoveInfo(id);
+                infos.remove(id);
+            } else if (op < 8) {
+                final String url = "https://example.com/" + id;
+                final String filename = "file-" + random.nextInt(4);
+                journal.appendResponseFilename(url, filename);
+                responseFilenames.put(url, filename);
+            } else if (op < 9) {
+                journal.appendFileDirty(id);
+                dirtyFileIds.add(id);
+            } else {
+                journal.appendFileClear(id);
+                dirtyFileIds.remove(id);
+            }
+            snapshot();
+        }
+    }
+
+    private BreakpointInfo randomInfo(Random random, int id) {
+        final boolean onlyParent = random.nextBoolean();
+        final BreakpointInfo info = new BreakpointInfo(id, "https://example.com/" + id,
+                folder.getRoot(), onlyParent ? null : "file-" + id, onlyParent);
+        info.setEtag(random.nextBoolean() ? null : "etag-" + random.nextInt(100));
+        info.setChunked(random.nextInt(4) == 0);
+        final int blockCount = 1 + random.nextInt(3);
+        long start = 0;
+        for (int i = 0; i < blockCount; i++) {
+            final long contentLength = 1 + random.nextInt(100000);
+            info.addBlock(new BlockInfo(start, contentLength, random.nextInt(
+                    (int) contentLength)));
+            start += contentLength;
+        }
+        return info;
+    }
+
+    private void snapshot() {
+        lengths.add(journal.length());
+        states.add(describe(infos, dirtyFileIds, responseFilenames));
+    }
+
+    private void resetModel() {
+        infos.clear();
+        final SparseArray<BreakpointInfo> replayed = journal.copyInfos();
+        for (int i = 0; i < replayed.size(); i++) {
+            infos.put(replayed.keyAt(i), replayed.valueAt(i));
+        }
+        dirtyFileIds.clear();
+        dirtyFileIds.addAll(journal.copyDirtyFileIds());
+        responseFilenames.clear();
+        responseFilenames.putAll(journal.copyResponseFilenames());
+    }
+
+    private String describeJournal() {
+        final TreeMap<Integer, BreakpointInfo> replayed = new TreeMap<>();
+        final SparseArray<BreakpointInfo> copied = journal.copyInfos();
+        for (int i = 0; i < copied.size(); i++) {
+            replayed.put(copied.keyAt(i), copied.valueAt(i));
+        }
+        return describe(replayed, new TreeSet<>(journal.copyDirtyFileIds()),
+                new TreeMap<>(journal.copyResponseFilenames()));
+    }
+
+    private static String describe(Map<Integer, BreakpointInfo> infos,
+                                   Collection<Integer> dirtyFileIds,
+                                   Map<String, String> responseFilenames) {
+        final StringBuilder builder = new StringBuilder();
+        for (BreakpointInfo info : infos.values()) {
+            builder.append(info.id).append('|').append(info.getUrl())
+                    .append('|').append(info.getEtag())
+                    .append('|').append(info.parentFile.getAbsolutePath())
+                    .append('|').append(info.getFilename())
+                    .append('|').append(info.isTaskOnlyProvidedParentPath())
+                    .append('|').append(info.isChunked());
+            for (int i = 0; i < info.getBlockCount(); i++) {
+                final BlockInfo block = info.getBlock(i);
+                builder.append('|').append(block.getStartOffset())
+                        .append(',').append(block.getContentLength())
+                        .append(',').append(block.getCurrentOffset());
+            }
+            builder.append('\n');
+        }
+        builder.append("dirty ").append(dirtyFileIds).append('\n');
+        builder.append("filenames ").append(responseFilenames);
+        return builder.toString();
+    }
+
+    private void truncate(long length) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void corrupt(long offset, byte mask) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offset);
+            final int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ mask);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class RemitSyncExecutorTest {
+
+    private RecordAgent agent;
+    private Set<Integer> freeToDBIdList;
+    private RemitSyncExecutor executor;
+    private long now;
+
+    @Before
+    public void setup() {
+        now = SystemClock.uptimeMillis();
+        agent = new RecordAgent();
+        freeToDBIdList = new HashSet<>();
+        executor = new RemitSyncExecutor(agent,
+                new TimerWheel(RemitSyncExecutor.TICK_MILLIS, now), freeToDBIdList);
+    }
+
+    @Test
+    public void postSyncInfoDelay_syncAfterDelay() {
+        executor.postSyncInfoDelay(1, 300);
+
+        executor.executeDue(now + 299);
+        assertEquals(Collections.emptyList(), agent.records);
+        assertFalse(executor.isFreeToDatabase(1));
+
+        executor.executeDue(now + 300);
+        assertEquals(Collections.singletonList("sync [1]"), agent.records);
+        assertTrue(executor.isFreeToDatabase(1));
+    }
+
+    @Test
+    public void postSync_syncedInOneBatch() {
+        executor.postSync(Arrays.asList(1, 2, 3));
+        executor.postSyncInfoDelay(4, 100);
+        executor.postSyncInfoDelay(5, 100);
+
+        executor.executeDue(now);
+        executor.executeDue(now + 100);
+
+        assertEquals(Arrays.asList("sync [1, 2, 3]", "sync [4, 5]"), agent.records);
+    }
+
+    @Test
+    public void removePostWithId_neverSynced() {
+        executor.postSyncInfoDelay(1, 100);
+        executor.postSyncInfoDelay(2, 100);
+        executor.postSyncInfoDelay(3, 100);
+        executor.removePostWithId(1);
+        executor.removePostWithIds(new int[]{3});
+
+        executor.executeDue(now + 1000);
+
+        assertEquals(Collections.singletonList("sync [2]"), agent.records);
+    }
+
+    @Test
+    public void executeDue_syncThenRemove() {
+        executor.postSyncInfoDelay(1, 100);
+        executor.postSync(2);
+        executor.postRemoveInfo(1);
+        executor.postRemoveInfo(2);
+
+        executor.executeDue(now + 100);
+
+        // the infos synced are removed after that, so they are never left on the database.
+        assertEquals(Arrays.asList("sync [1, 2]", "remove [1, 2]"), agent.records);
+        assertFalse(executor.isFreeToDatabase(1));
+        assertFalse(executor.isFreeToDatabase(2));
+    }
+
+    @Test
+    public void executeDue_removeFreeIdsAfterSync() {
+        executor.postSync(Arrays.asList(1, 2, 3));
+        executor.postRemoveFreeIds(Arrays.asList(1, 2));
+        executor.postRemoveFreeId(3);
+
+        executor.executeDue(now);
+
+        assertEquals(Collections.singletonList("sync [1, 2, 3]"), agent.records);
+        assertTrue(freeToDBIdList.isEmpty());
+    }
+
+    @Test
+    public void executeDue_syncFailed_notFree() {
+        agent.syncFailed = true;
+        executor.postSync(1);
+        executor.postRemoveInfo(2);
+
+        executor.executeDue(now);
+
+        assertFalse(executor.isFreeToDatabase(1));
+        // the operations are still executed.
+        assertEquals(Collections.singletonList("remove [2]"), agent.records);
+    }
+
+    private static class RecordAgent implements RemitSyncExecutor.RemitAgent {
+        final List<String> records = new ArrayList<>();
+        boolean syncFailed;
+
+        @Override public void syncCacheToDB(List<Integer> idList) throws IOException {
+            if (syncFailed) throw new IOException("sync failed");
+            // the order in a batch is the one of the deadlines, which is tested on the wheel.
+            final List<Integer> sorted = new ArrayList<>(idList);
+            Collections.sort(sorted);
+            records.add("sync " + sorted);
+        }
+
+        @Override public void syncCacheToDB(int id) throws IOException {
+            syncCacheToDB(Collections.singletonList(id));
+        }
+
+        @Override public void removeInfo(List<Integer> idList) {
+            records.add("remove " + idList);
+        }
+
+        @Override public void removeInfo(int id) {
+            removeInfo(Collections.singletonList(id));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017 LingoChamp Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.download.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    public void schedule_expiredOnDeadline() {
+        final TimerWheel wheel = new TimerWheel(TICK, 1000);
+        wheel.schedule(1, 35, 1000);
+
+        assertTrue(wheel.contains(1));
+        assertEquals(Collections.emptyList(), wheel.advance(1030));
+        // the deadline is rounded up to the tick.
+        assertEquals(Collections.emptyList(), wheel.advance(1039));
+        assertEquals(Collections.singletonList(1), wheel.advance(1040));
+        assertFalse(wheel.contains(1));
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void schedule_sameId_replacePrevious() {
+        final TimerWheel wheel = new TimerWheel(TICK, 0);
+        wheel.schedule(1, 100, 0);
+        wheel.schedule(1, 500, 0);
+
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.emptyList(), wheel.advance(100));
+        assertEquals(Collections.singletonList(1), wheel.advance(500));
+    }
+
+    @Test
+    public void schedule_zeroDelay_drainedWithoutTurning() {
+        final TimerWheel wheel = new TimerWheel(TICK, 1005);
+        wheel.schedule(1, 0, 1005);
+        wheel.schedule(2, -1, 1005);
+
+        assertEquals(0, wheel.millisToNextTick(1005));
+        assertEquals(Arrays.asList(1, 2), wheel.advance(1005));
+        assertTrue(wheel.isEmpty());
+        assertEquals(-1, wheel.millisToNextTick(1005));
+    }
+
+    @Test
+    public void cancel() {
+        final TimerWheel wheel = new TimerWheel(TICK, 0);
+        wheel.schedule(1, 100, 0);
+        wheel.schedule(2, 100, 0);
+        wheel.schedule(3, 0, 0);
+
+        assertTrue(wheel.cancel(1));
+        assertTrue(wheel.cancel(3));
+        assertFalse(wheel.cancel(1));
+        assertFalse(wheel.cancel(4));
+
+        assertEquals(Collections.singletonList(2), wheel.advance(100));
+        assertFalse(wheel.cancel(2));
+    }
+
+    @Test
+    public void advance_drainInDeadlineOrder() {
+        final TimerWheel wheel = new TimerWheel(TICK, 0);
+        wheel.schedule(1, 5000, 0);
+        wheel.schedule(2, 20, 0);
+        wheel.schedule(3, 700, 0);
+        wheel.schedule(4, 50000, 0);
+
+        assertEquals(Arrays.asList(2, 3, 1, 4), wheel.advance(100000));
+    }
+
+    @Test
+    public void millisToNextTick() {
+        final TimerWheel wheel = new TimerWheel(TICK, 0);
+        assertEquals(-1, wheel.millisToNextTick(0));
+
+        wheel.schedule(1, 25, 0);
+        assertEquals(30, wheel.millisToNextTick(0));
+        assertEquals(23, wheel.millisToNextTick(7));
+
+        // the timer on the higher level is moved on the boundary of the first level.
+        wheel.cancel(1);
+        wheel.schedule(1, 100000, 0);
+        assertEquals(TimerWheel.SLOTS * TICK, wheel.millisToNextTick(0));
+    }
+
+    @Test
+    public void schedule_delayOutOfSpan_expiredOnDeadline() {
+        final long spanTicks = 1L << 24;
+        final TimerWheel wheel = new TimerWheel(1, 0);
+        wheel.schedule(1, spanTicks + 5000, 0);
+        wheel.schedule(2, spanTicks * 2 + 3, 0);
+        wheel.schedule(3, spanTicks - 1, 0);
+
+        assertEquals(Collections.singletonList(3), wheel.advance(spanTicks - 1));
+        assertEquals(Collections.emptyList(), wheel.advance(spanTicks + 4999));
+        assertEquals(Collections.singletonList(1), wheel.advance(spanTicks + 5000));
+        assertEquals(Collections.emptyList(), wheel.advance(spanTicks * 2 + 2));
+        assertEquals(Collections.singletonList(2), wheel.advance(spanTicks * 2 + 3));
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void advance_randomly_sameAsReference() {
+        final Random random = new Random(0);
+        final TimerWheel wheel = new TimerWheel(TICK, 0);
+        // the reference of the deadline tick of each id.
+        final Map<Integer, Long> deadlines = new HashMap<>();
+        long now = 0;
+
+        for (int round = 0; round < 20000; round++) {
+            final int id = random.nextInt(200);
+            final int op = random.nextInt(10);
+            if (op < 5) {
+                final long delay = randomDelay(random);
+                wheel.schedule(id, delay, now);
+                deadlines.put(id, delay <= 0 ? Long.MIN_VALUE : (now + delay + TICK - 1) / TICK);
+            } else if (op < 7) {
+                assertEquals(deadlines.remove(id) != null, wheel.cancel(id));
+            } else {
+                now += randomDelay(random);
+                final List<Integer> drained = wheel.advance(now);
+
+                final List<Integer> expected = new ArrayList<>();
+                for (Map.Entry<Integer, Long> entry : deadlines.entrySet()) {
+                    if (entry.getValue() <= now / TICK) expected.add(entry.getKey());
+                }
+                assertEquals(new HashSet<>(expected), new HashSet<>(drained));
+                assertEquals(expected.size(), drained.size());
+
+                long lastDeadline = Long.MIN_VALUE;
+                for (Integer drainedId : drained) {
+                    final long deadline = deadlines.remove(drainedId);
+                    assertTrue("drained out of order " + drained, deadline >= lastDeadline);
+                    lastDeadline = deadline;
+                }
+            }
+            assertEquals(deadlines.size(), wheel.size());
+        }
+    }
+
+    private static long randomDelay(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return 0;
+            case 1:
+                return random.nextInt(TimerWheel.SLOTS * (int) TICK);
+            case 2:
+                return random.nextInt(TimerWheel.SLOTS * TimerWheel.SLOTS * (int) TICK);
+            default:
+                return random.nextInt(TimerWheel.SLOTS * TimerWheel.SLOTS * TimerWheel.SLOTS
+                        * (int) TICK);
+        }
+    }
+}